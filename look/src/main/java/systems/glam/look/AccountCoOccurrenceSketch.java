@@ -0,0 +1,324 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.core.tx.Transaction;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static software.sava.core.accounts.lookup.AddressLookupTable.LOOKUP_TABLE_MAX_ADDRESSES;
+
+public final class AccountCoOccurrenceSketch implements Runnable {
+
+  private static final System.Logger logger = System.getLogger(AccountCoOccurrenceSketch.class.getName());
+
+  // Indexing an account saves its 32 byte key minus the 1 byte index.
+  static final int BYTES_SAVED_PER_ACCOUNT = PublicKey.PUBLIC_KEY_LENGTH - 1;
+  // Table key plus the writable and readonly index array lengths.
+  static final int BYTES_PER_TABLE_REFERENCE = PublicKey.PUBLIC_KEY_LENGTH + 2;
+
+  private static final ProposedTable[] NO_PROPOSALS = new ProposedTable[0];
+
+  private record Observation(PublicKey[] accounts, AddressLookupTable[] tables) {
+  }
+
+  private static final class Tally {
+
+    private long occurrences;
+    private long uncovered;
+
+    private Tally(final long occurrences, final long uncovered) {
+      this.occurrences = occurrences;
+      this.uncovered = uncovered;
+    }
+  }
+
+  private static final Comparator<Map.Entry<PublicKey, Tally>> BY_UNCOVERED_REVERSED = (a, b) -> {
+    final int compare = Long.compare(b.getValue().uncovered, a.getValue().uncovered);
+    return compare == 0 ? Long.compare(b.getValue().occurrences, a.getValue().occurrences) : compare;
+  };
+
+  private final BlockingQueue<Observation> observations;
+  private final int maxTrackedAccounts;
+  private final int sketchWidth;
+  private final int sketchDepth;
+  private final int[] pairCounts;
+  private final int[] accountCounts;
+  private final Map<PublicKey, Tally> tracked;
+  private final int maxProposedTables;
+  private final int minCoOccurrence;
+  private final Duration refreshDelay;
+  private volatile ProposedTable[] proposals;
+
+  AccountCoOccurrenceSketch(final int maxQueuedObservations,
+                            final int maxTrackedAccounts,
+                            final int sketchWidth,
+                            final int sketchDepth,
+                            final int maxProposedTables,
+                            final int minCoOccurrence,
+                            final Duration refreshDelay) {
+    this.observations = new ArrayBlockingQueue<>(maxQueuedObservations);
+    this.maxTrackedAccounts = maxTrackedAccounts;
+    this.sketchWidth = Integer.highestOneBit(Math.max(1_024, sketchWidth));
+    this.sketchDepth = sketchDepth;
+    this.pairCounts = new int[this.sketchWidth * sketchDepth];
+    this.accountCounts = new int[this.sketchWidth * sketchDepth];
+    this.tracked = HashMap.newHashMap(maxTrackedAccounts << 1);
+    this.maxProposedTables = maxProposedTables;
+    this.minCoOccurrence = minCoOccurrence;
+    this.refreshDelay = refreshDelay;
+    this.proposals = NO_PROPOSALS;
+  }
+
+  static AccountCoOccurrenceSketch createSketch(final LookupTableServiceConfig.ProposalConfig proposalConfig) {
+    return new AccountCoOccurrenceSketch(
+        proposalConfig.maxQueuedObservations(),
+        proposalConfig.maxTrackedAccounts(),
+        proposalConfig.sketchWidth(),
+        proposalConfig.sketchDepth(),
+        proposalConfig.maxProposedTables(),
+        proposalConfig.minCoOccurrence(),
+        proposalConfig.refreshDelay()
+    );
+  }
+
+  /**
+   * Never blocks the caller, observations are dropped while the queue is full.
+   */
+  void observe(final PublicKey[] accounts, final AddressLookupTable[] tables) {
+    if (accounts.length > 1) {
+      observations.offer(new Observation(accounts, tables));
+    }
+  }
+
+  public ProposedTable[] proposals() {
+    return proposals;
+  }
+
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static long pairKey(final PublicKey a, final PublicKey b) {
+    final int ha = a.hashCode();
+    final int hb = b.hashCode();
+    return ha < hb
+        ? ((long) hb << 32) | (ha & 0xFFFFFFFFL)
+        : ((long) ha << 32) | (hb & 0xFFFFFFFFL);
+  }
+
+  private int cell(final int row, final long key) {
+    return (row * sketchWidth) + (int) (mix(key + (row * 0x9E3779B97F4A7C15L)) & (sketchWidth - 1));
+  }
+
+  private int increment(final int[] counts, final long key) {
+    int min = Integer.MAX_VALUE;
+    for (int row = 0, cell, count; row < sketchDepth; ++row) {
+      cell = cell(row, key);
+      count = counts[cell];
+      if (count < Integer.MAX_VALUE) {
+        counts[cell] = ++count;
+      }
+      if (count < min) {
+        min = count;
+      }
+    }
+    return min;
+  }
+
+  private int estimate(final int[] counts, final long key) {
+    int min = Integer.MAX_VALUE;
+    for (int row = 0, count; row < sketchDepth; ++row) {
+      count = counts[cell(row, key)];
+      if (count < min) {
+        min = count;
+      }
+    }
+    return min;
+  }
+
+  private int pairEstimate(final PublicKey a, final PublicKey b) {
+    return estimate(pairCounts, pairKey(a, b));
+  }
+
+  private void apply(final Observation observation) {
+    final var accounts = observation.accounts;
+    final var tables = observation.tables;
+    for (int i = 0; i < accounts.length; ++i) {
+      final var account = accounts[i];
+      boolean covered = false;
+      if (tables != null) {
+        for (final var table : tables) {
+          if (table.containKey(account)) {
+            covered = true;
+            break;
+          }
+        }
+      }
+      final int estimate = increment(accountCounts, account.hashCode());
+      var tally = tracked.get(account);
+      if (tally == null) {
+        tracked.put(account, new Tally(estimate, covered ? 0 : 1));
+      } else {
+        ++tally.occurrences;
+        if (!covered) {
+          ++tally.uncovered;
+        }
+      }
+      for (int j = i + 1; j < accounts.length; ++j) {
+        increment(pairCounts, pairKey(account, accounts[j]));
+      }
+    }
+    if (tracked.size() > (maxTrackedAccounts << 1) - Transaction.MAX_ACCOUNTS) {
+      pruneTracked();
+    }
+  }
+
+  private void pruneTracked() {
+    final var entries = tracked.entrySet().stream()
+        .sorted(BY_UNCOVERED_REVERSED)
+        .skip(maxTrackedAccounts)
+        .map(Map.Entry::getKey)
+        .toList();
+    for (final var account : entries) {
+      tracked.remove(account);
+    }
+  }
+
+  private void decay() {
+    for (int i = 0; i < pairCounts.length; ++i) {
+      pairCounts[i] >>= 1;
+      accountCounts[i] >>= 1;
+    }
+    final var iterator = tracked.values().iterator();
+    while (iterator.hasNext()) {
+      final var tally = iterator.next();
+      tally.occurrences >>= 1;
+      tally.uncovered >>= 1;
+      if (tally.occurrences == 0) {
+        iterator.remove();
+      }
+    }
+  }
+
+  ProposedTable[] computeProposals() {
+    final var candidates = tracked.entrySet().stream()
+        .filter(entry -> entry.getValue().uncovered >= minCoOccurrence)
+        .sorted(BY_UNCOVERED_REVERSED)
+        .limit((long) maxProposedTables * LOOKUP_TABLE_MAX_ADDRESSES * 2)
+        .toList();
+    final int numCandidates = candidates.size();
+    if (numCandidates < 2) {
+      return NO_PROPOSALS;
+    }
+    final var keys = new PublicKey[numCandidates];
+    final long[] uncovered = new long[numCandidates];
+    for (int i = 0; i < numCandidates; ++i) {
+      final var entry = candidates.get(i);
+      keys[i] = entry.getKey();
+      uncovered[i] = entry.getValue().uncovered;
+    }
+
+    final boolean[] assigned = new boolean[numCandidates];
+    final long[] affinity = new long[numCandidates];
+    final var proposals = new ArrayList<ProposedTable>(maxProposedTables);
+    for (int seed = 0; seed < numCandidates && proposals.size() < maxProposedTables; ++seed) {
+      if (assigned[seed]) {
+        continue;
+      }
+      final var members = new ArrayList<PublicKey>(LOOKUP_TABLE_MAX_ADDRESSES);
+      final int[] memberIndexes = new int[LOOKUP_TABLE_MAX_ADDRESSES];
+      members.add(keys[seed]);
+      memberIndexes[0] = seed;
+      assigned[seed] = true;
+      Arrays.fill(affinity, 0);
+      for (int c = 0; c < numCandidates; ++c) {
+        if (!assigned[c]) {
+          affinity[c] = pairEstimate(keys[seed], keys[c]);
+        }
+      }
+
+      while (members.size() < LOOKUP_TABLE_MAX_ADDRESSES) {
+        int best = -1;
+        for (int c = 0; c < numCandidates; ++c) {
+          if (!assigned[c] && affinity[c] >= minCoOccurrence
+              && (best < 0 || affinity[c] > affinity[best] || (affinity[c] == affinity[best] && uncovered[c] > uncovered[best]))) {
+            best = c;
+          }
+        }
+        if (best < 0) {
+          break;
+        }
+        memberIndexes[members.size()] = best;
+        members.add(keys[best]);
+        assigned[best] = true;
+        for (int c = 0; c < numCandidates; ++c) {
+          if (!assigned[c]) {
+            affinity[c] += pairEstimate(keys[best], keys[c]);
+          }
+        }
+      }
+
+      final int numMembers = members.size();
+      if (numMembers < 2) {
+        assigned[seed] = false;
+        continue;
+      }
+      long uncoveredOccurrences = 0;
+      long maxOccurrences = 0;
+      for (int m = 0; m < numMembers; ++m) {
+        final long count = uncovered[memberIndexes[m]];
+        uncoveredOccurrences += count;
+        maxOccurrences = Math.max(maxOccurrences, count);
+      }
+      final long projectedSavings = (uncoveredOccurrences * BYTES_SAVED_PER_ACCOUNT) - (maxOccurrences * BYTES_PER_TABLE_REFERENCE);
+      if (projectedSavings > 0) {
+        proposals.add(new ProposedTable(members.toArray(PublicKey[]::new), uncoveredOccurrences, projectedSavings));
+      }
+    }
+    return proposals.stream()
+        .sorted((a, b) -> Long.compare(b.projectedSavings(), a.projectedSavings()))
+        .toArray(ProposedTable[]::new);
+  }
+
+  @Override
+  public void run() {
+    final long refreshNanos = refreshDelay.toNanos();
+    try {
+      for (long nextRefresh = System.nanoTime() + refreshNanos, remaining; ; ) {
+        remaining = nextRefresh - System.nanoTime();
+        if (remaining <= 0) {
+          final long start = System.currentTimeMillis();
+          this.proposals = computeProposals();
+          decay();
+          logger.log(INFO, String.format(
+              "[proposedTables=%d] [trackedAccounts=%d] [duration=%dms]",
+              proposals.length, tracked.size(), System.currentTimeMillis() - start
+          ));
+          nextRefresh = System.nanoTime() + refreshNanos;
+          continue;
+        }
+        final var observation = observations.poll(remaining, NANOSECONDS);
+        if (observation != null) {
+          apply(observation);
+        }
+      }
+    } catch (final InterruptedException e) {
+      // return;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.lookup.AddressLookupTable;
+
+import java.util.Arrays;
+
+import static software.sava.core.accounts.PublicKey.PUBLIC_KEY_LENGTH;
+
+// The account keys of a set of tables, each given an id ranked by how many tables reference the account, so that the
+// most common accounts take a single varint byte. Keys are packed into a single array and found through an
+// open-addressing table of ids, so that neither keys nor ids are boxed per account.
+final class AccountDictionary {
+
+  private static final int INITIAL_CAPACITY = 1 << 12;
+
+  private byte[] keys;
+  private int[] counts;
+  private int[] slots;
+  private int size;
+
+  private AccountDictionary() {
+    this.keys = new byte[INITIAL_CAPACITY * PUBLIC_KEY_LENGTH];
+    this.counts = new int[INITIAL_CAPACITY];
+    this.slots = new int[INITIAL_CAPACITY << 1];
+  }
+
+  static AccountDictionary createDictionary(final AddressLookupTable[]... tableSets) {
+    final var dictionary = new AccountDictionary();
+    for (final var tables : tableSets) {
+      for (final var table : tables) {
+        LazyLookupTable.forEachUniqueAccount(table, dictionary::add);
+      }
+    }
+    dictionary.rank();
+    return dictionary;
+  }
+
+  private static int hash(final byte[] key, final int offset) {
+    return (int) TableCorpusPruner.accountHash(key, offset);
+  }
+
+  // Slots hold id + 1, so that zero marks an empty slot.
+  private int slot(final byte[] key, final int offset) {
+    final int mask = slots.length - 1;
+    for (int slot = hash(key, offset) & mask; ; slot = (slot + 1) & mask) {
+      final int id = slots[slot] - 1;
+      if (id < 0) {
+        return slot;
+      }
+      final int keyOffset = id * PUBLIC_KEY_LENGTH;
+      if (Arrays.equals(keys, keyOffset, keyOffset + PUBLIC_KEY_LENGTH, key, offset, offset + PUBLIC_KEY_LENGTH)) {
+        return slot;
+      }
+    }
+  }
+
+  private void add(final byte[] key, final int offset) {
+    final int slot = slot(key, offset);
+    final int id = slots[slot] - 1;
+    if (id >= 0) {
+      ++counts[id];
+      return;
+    }
+    if (size == counts.length) {
+      counts = Arrays.copyOf(counts, size << 1);
+      keys = Arrays.copyOf(keys, (size << 1) * PUBLIC_KEY_LENGTH);
+    }
+    System.arraycopy(key, offset, keys, size * PUBLIC_KEY_LENGTH, PUBLIC_KEY_LENGTH);
+    counts[size] = 1;
+    slots[slot] = ++size;
+    // Kept at most half full.
+    if (size << 1 > slots.length) {
+      rehash(slots.length << 1);
+    }
+  }
+
+  private void rehash(final int capacity) {
+    slots = new int[capacity];
+    for (int id = 0; id < size; ++id) {
+      slots[slot(keys, id * PUBLIC_KEY_LENGTH)] = id + 1;
+    }
+  }
+
+  // Renumbers the ids by descending reference count, ties keeping the order the accounts were first seen.
+  private void rank() {
+    final long[] byCount = new long[size];
+    for (int id = 0; id < size; ++id) {
+      byCount[id] = ((long) (Integer.MAX_VALUE - counts[id]) << 32) | id;
+    }
+    Arrays.parallelSort(byCount);
+    final int[] rank = new int[size];
+    final byte[] rankedKeys = new byte[size * PUBLIC_KEY_LENGTH];
+    for (int r = 0; r < size; ++r) {
+      final int id = (int) byCount[r];
+      rank[id] = r;
+      System.arraycopy(keys, id * PUBLIC_KEY_LENGTH, rankedKeys, r * PUBLIC_KEY_LENGTH, PUBLIC_KEY_LENGTH);
+    }
+    for (int slot = 0; slot < slots.length; ++slot) {
+      if (slots[slot] != 0) {
+        slots[slot] = rank[slots[slot] - 1] + 1;
+      }
+    }
+    this.keys = rankedKeys;
+    this.counts = null;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return The keys in id order, {@link #size()} * 32 bytes.
+   */
+  byte[] keys() {
+    return keys;
+  }
+
+  /**
+   * @return The id of an account key, or -1 if it is not in the dictionary.
+   */
+  int id(final byte[] key, final int offset) {
+    return slots[slot(key, offset)] - 1;
+  }
+}
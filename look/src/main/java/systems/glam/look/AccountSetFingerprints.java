@@ -0,0 +1,141 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.core.encoding.ByteUtil;
+
+// Detects tables with the same set of unique accounts via an order independent 128 bit fingerprint: the sum of two
+// independent 64 bit hashes of each unique account. Fingerprints are kept in striped open addressing tables along with
+// the first table seen, and account sets are only compared when fingerprints match.
+final class AccountSetFingerprints {
+
+  private static final int NUM_STRIPES = 64;
+  private static final int INITIAL_STRIPE_CAPACITY = 1 << 10;
+  private static final long SEED_HIGH = 0x9E3779B97F4A7C15L;
+  private static final long SEED_LOW = 0xC2B2AE3D27D4EB4FL;
+
+  private final Stripe[] stripes;
+
+  AccountSetFingerprints() {
+    this.stripes = new Stripe[NUM_STRIPES];
+    for (int i = 0; i < NUM_STRIPES; ++i) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  private static long hash(final byte[] key, final int offset, final long seed) {
+    long h = mix(ByteUtil.getInt64LE(key, offset) ^ seed);
+    h = mix(h + ByteUtil.getInt64LE(key, offset + Long.BYTES));
+    h = mix(h + ByteUtil.getInt64LE(key, offset + (Long.BYTES << 1)));
+    return mix(h + ByteUtil.getInt64LE(key, offset + (3 * Long.BYTES)));
+  }
+
+  static long hashHigh(final byte[] key, final int offset) {
+    return hash(key, offset, SEED_HIGH);
+  }
+
+  static long hashLow(final byte[] key, final int offset) {
+    return hash(key, offset, SEED_LOW);
+  }
+
+  private static boolean sameAccounts(final AddressLookupTable a, final AddressLookupTable b) {
+    if (a.numUniqueAccounts() != b.numUniqueAccounts()) {
+      return false;
+    }
+    for (final var account : b.uniqueAccounts()) {
+      if (!a.containKey(account)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return false if a different table with the same set of unique accounts has already been added.
+   */
+  boolean add(final AddressLookupTable table) {
+    long high = 0;
+    long low = 0;
+    if (table instanceof LazyLookupTable lazyTable) {
+      high = lazyTable.fingerprintHigh();
+      low = lazyTable.fingerprintLow();
+    } else {
+      for (final PublicKey account : table.uniqueAccounts()) {
+        final byte[] key = account.toByteArray();
+        high += hashHigh(key, 0);
+        low += hashLow(key, 0);
+      }
+    }
+    return stripes[(int) (low >>> 58)].add(high, low, table);
+  }
+
+  void clear() {
+    for (final var stripe : stripes) {
+      stripe.clear();
+    }
+  }
+
+  private static final class Stripe {
+
+    private long[] highs;
+    private long[] lows;
+    private AddressLookupTable[] tables;
+    private int size;
+
+    private Stripe() {
+      clear();
+    }
+
+    private synchronized void clear() {
+      this.highs = new long[INITIAL_STRIPE_CAPACITY];
+      this.lows = new long[INITIAL_STRIPE_CAPACITY];
+      this.tables = new AddressLookupTable[INITIAL_STRIPE_CAPACITY];
+      this.size = 0;
+    }
+
+    private void grow() {
+      final var highs = this.highs;
+      final var lows = this.lows;
+      final var tables = this.tables;
+      final int capacity = tables.length << 1;
+      this.highs = new long[capacity];
+      this.lows = new long[capacity];
+      this.tables = new AddressLookupTable[capacity];
+      for (int i = 0, mask = capacity - 1; i < tables.length; ++i) {
+        if (tables[i] != null) {
+          int slot = (int) highs[i] & mask;
+          while (this.tables[slot] != null) {
+            slot = (slot + 1) & mask;
+          }
+          this.highs[slot] = highs[i];
+          this.lows[slot] = lows[i];
+          this.tables[slot] = tables[i];
+        }
+      }
+    }
+
+    private synchronized boolean add(final long high, final long low, final AddressLookupTable table) {
+      final int mask = tables.length - 1;
+      int slot = (int) high & mask;
+      for (AddressLookupTable existing; (existing = tables[slot]) != null; slot = (slot + 1) & mask) {
+        if (highs[slot] == high && lows[slot] == low && sameAccounts(existing, table)) {
+          // A table seen again, such as by the retry of an abandoned attempt, is not a duplicate of itself.
+          return existing.address().equals(table.address());
+        }
+      }
+      highs[slot] = high;
+      lows[slot] = low;
+      tables[slot] = table;
+      if (++size > (tables.length >> 1)) {
+        grow();
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import static systems.glam.look.TableCorpusPruner.INDEX_MASK;
+
+// Postings from account to the indexes of the published tables which contain it.
+// An index built from a corpus which mostly shares its table instances with the previous one also maps the previous
+// table indexes to the new ones, so that sessions only need to rescore the inserted tables.
+final class AccountTableIndex {
+
+  static final AccountTableIndex EMPTY = new AccountTableIndex(0, new AddressLookupTable[0], new long[0], -1, null, null);
+
+  private final long generation;
+  private final AddressLookupTable[] tables;
+  private final long[] postings;
+  private final long previousGeneration;
+  private final int[] remap;
+  private final int[] inserted;
+
+  private AccountTableIndex(final long generation,
+                            final AddressLookupTable[] tables,
+                            final long[] postings,
+                            final long previousGeneration,
+                            final int[] remap,
+                            final int[] inserted) {
+    this.generation = generation;
+    this.tables = tables;
+    this.postings = postings;
+    this.previousGeneration = previousGeneration;
+    this.remap = remap;
+    this.inserted = inserted;
+  }
+
+  static AccountTableIndex createIndex(final AddressLookupTable[] tables, final AccountTableIndex previous) {
+    final long generation = previous.generation + 1;
+    if (tables.length == 0) {
+      return new AccountTableIndex(generation, tables, new long[0], -1, null, null);
+    }
+    final var postings = TableCorpusPruner.accountPostings(tables);
+    if (previous.tables.length == 0) {
+      return new AccountTableIndex(generation, tables, postings, -1, null, null);
+    }
+
+    // Table instances are matched by identity, through their identity hash code in the high bits and index in the low.
+    final long[] byIdentity = new long[tables.length];
+    for (int i = 0; i < tables.length; ++i) {
+      byIdentity[i] = ((long) System.identityHashCode(tables[i]) << 32) | i;
+    }
+    Arrays.parallelSort(byIdentity);
+    final int[] remap = new int[previous.tables.length];
+    final boolean[] retained = new boolean[tables.length];
+    int numRetained = 0;
+    for (int i = 0; i < remap.length; ++i) {
+      final var table = previous.tables[i];
+      final long identity = (long) System.identityHashCode(table) << 32;
+      remap[i] = -1;
+      for (int p = firstIdentity(byIdentity, identity);
+           p < byIdentity.length && (byIdentity[p] & 0xFFFF_FFFF_0000_0000L) == identity; ++p) {
+        final int index = (int) byIdentity[p];
+        if (tables[index] == table) {
+          remap[i] = index;
+          retained[index] = true;
+          ++numRetained;
+          break;
+        }
+      }
+    }
+    final int numInserted = tables.length - numRetained;
+    // Rescoring each inserted table against the session accounts only pays off while few tables changed.
+    if (numInserted > tables.length >> 1) {
+      return new AccountTableIndex(generation, tables, postings, -1, null, null);
+    }
+    final int[] inserted = new int[numInserted];
+    for (int i = 0, j = 0; i < retained.length; ++i) {
+      if (!retained[i]) {
+        inserted[j++] = i;
+      }
+    }
+    return new AccountTableIndex(generation, tables, postings, previous.generation, remap, inserted);
+  }
+
+  private static int firstIdentity(final long[] byIdentity, final long identity) {
+    final int p = Arrays.binarySearch(byIdentity, identity);
+    return p < 0 ? -p - 1 : p;
+  }
+
+  /**
+   * @return true if scores against the previous index can be carried over with {@link #remap()}.
+   */
+  boolean remaps(final AccountTableIndex previous) {
+    return remap != null && previousGeneration == previous.generation;
+  }
+
+  /**
+   * @return The new index of each table of the previous index, or -1 if it is no longer published.
+   */
+  int[] remap() {
+    return remap;
+  }
+
+  /**
+   * @return The indexes of the tables which were not in the previous index.
+   */
+  int[] inserted() {
+    return inserted;
+  }
+
+  AddressLookupTable table(final int index) {
+    return tables[index];
+  }
+
+  void forEachTable(final PublicKey account, final IntConsumer consumer) {
+    final long key = TableCorpusPruner.postingKey(account.toByteArray(), 0);
+    for (int p = TableCorpusPruner.firstPosting(postings, key), end = TableCorpusPruner.endPosting(postings, key), i;
+         p < end; ++p) {
+      i = (int) (postings[p] & INDEX_MASK);
+      if (tables[i].containKey(account)) {
+        consumer.accept(i);
+      }
+    }
+  }
+}
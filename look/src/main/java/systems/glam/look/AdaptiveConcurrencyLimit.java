@@ -0,0 +1,61 @@
+package systems.glam.look;
+
+import java.time.Duration;
+
+// Additive increase, multiplicative decrease of the number of in-flight partition calls. The limit grows by about one
+// call per window of calls completing within the target latency, and halves on an error or timeout, at most once per
+// target latency as calls already in flight were started under the previous limit. Slow calls only hold the limit, as
+// the latency of a partition mostly follows its number of tables rather than congestion.
+final class AdaptiveConcurrencyLimit {
+
+  private final int maxLimit;
+  private final long targetLatencyMillis;
+  private double limit;
+  private int inFlight;
+  private long lastDecrease;
+
+  AdaptiveConcurrencyLimit(final int initialLimit, final int maxLimit, final Duration targetLatency) {
+    this.maxLimit = Math.max(1, maxLimit);
+    this.targetLatencyMillis = targetLatency.toMillis();
+    this.limit = Math.clamp(initialLimit, 1, this.maxLimit);
+  }
+
+  static AdaptiveConcurrencyLimit createLimit(final LookupTableServiceConfig.RemoteLoadConfig loadConfig,
+                                              final int numEndpoints) {
+    final int maxConcurrentRequests = loadConfig.maxConcurrentRequests();
+    return new AdaptiveConcurrencyLimit(
+        maxConcurrentRequests,
+        maxConcurrentRequests * Math.max(1, numEndpoints),
+        loadConfig.targetCallLatency()
+    );
+  }
+
+  synchronized void acquire() throws InterruptedException {
+    while (inFlight >= (int) limit) {
+      wait();
+    }
+    ++inFlight;
+  }
+
+  synchronized void release() {
+    --inFlight;
+    notifyAll();
+  }
+
+  synchronized void recordCall(final long latencyMillis, final boolean failed) {
+    if (failed) {
+      final long now = System.currentTimeMillis();
+      if (now - lastDecrease > targetLatencyMillis) {
+        limit = Math.max(1, limit / 2);
+        lastDecrease = now;
+      }
+    } else if (latencyMillis <= targetLatencyMillis) {
+      limit = Math.min(maxLimit, limit + (1 / limit));
+    }
+    notifyAll();
+  }
+
+  synchronized int limit() {
+    return (int) limit;
+  }
+}
@@ -0,0 +1,338 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static java.lang.System.Logger.Level.WARNING;
+
+// Streams the tables of each partition twice. The first pass counts table sizes and account occurrences, keyed by a
+// 64 bit hash of each account in a primitive open addressing table, and keeps the most occurring accounts in a bounded
+// min heap. The second pass only resolves the accounts of the top hashes. Memory is bounded by the number of unique
+// accounts rather than the number of tables, and no table has to be retained between partitions.
+public final class CorpusAnalytics {
+
+  private static final System.Logger logger = System.getLogger(CorpusAnalytics.class.getName());
+
+  @FunctionalInterface
+  public interface PartitionSource {
+
+    /**
+     * @return The tables of the partition, or null if there are none.
+     * @throws IOException if the partition cannot be read, it is then skipped and counted in the summary.
+     */
+    AddressLookupTable[] tables(final int partition) throws IOException;
+  }
+
+  private final int[] partitionLengths;
+  private final boolean[] skippedPartitions;
+  private int numSkippedPartitions;
+  private final TableAccountsHistogram tableHistogram;
+  private final AccountCounts accountCounts;
+  private long numTables;
+  private long[] topAccountHashes;
+  private int[] topAccountCounts;
+  private PublicKey[] topAccounts;
+
+  private CorpusAnalytics(final int numPartitions) {
+    this.partitionLengths = new int[numPartitions];
+    this.skippedPartitions = new boolean[numPartitions];
+    this.tableHistogram = new TableAccountsHistogram();
+    this.accountCounts = new AccountCounts(1 << 20);
+  }
+
+  public static CorpusAnalytics analyze(final int numPartitions,
+                                        final int numTopAccounts,
+                                        final PartitionSource partitions) {
+    final var analytics = new CorpusAnalytics(numPartitions);
+    for (int partition = 0; partition < numPartitions; ++partition) {
+      final var tables = analytics.readPartition(partitions, partition);
+      if (tables != null) {
+        analytics.countPartition(partition, tables);
+      }
+    }
+    analytics.selectTopAccounts(numTopAccounts);
+    if (analytics.topAccountHashes.length > 0) {
+      final var topIndex = new AccountCounts(analytics.topAccountHashes.length << 1);
+      for (int i = 0; i < analytics.topAccountHashes.length; ++i) {
+        topIndex.add(analytics.topAccountHashes[i], i + 1);
+      }
+      int numUnresolved = analytics.topAccountHashes.length;
+      for (int partition = 0; partition < numPartitions && numUnresolved > 0; ++partition) {
+        final var tables = analytics.readPartition(partitions, partition);
+        if (tables != null) {
+          numUnresolved -= analytics.resolvePartition(tables, topIndex);
+        }
+      }
+    }
+    return analytics;
+  }
+
+  private AddressLookupTable[] readPartition(final PartitionSource partitions, final int partition) {
+    if (skippedPartitions[partition]) {
+      return null;
+    }
+    try {
+      return partitions.tables(partition);
+    } catch (final IOException e) {
+      logger.log(WARNING, "Skipping unreadable partition " + partition, e);
+      skippedPartitions[partition] = true;
+      ++numSkippedPartitions;
+      return null;
+    }
+  }
+
+  private static long accountHash(final PublicKey account) {
+    return AccountSetFingerprints.hashLow(account.toByteArray(), 0);
+  }
+
+  private void countPartition(final int partition, final AddressLookupTable[] tables) {
+    partitionLengths[partition] += tables.length;
+    numTables += tables.length;
+    for (final var table : tables) {
+      tableHistogram.record(table);
+      if (table instanceof LazyLookupTable lazyTable) {
+        for (int i = 0, numUnique = lazyTable.numUniqueAccounts(); i < numUnique; ++i) {
+          accountCounts.add(lazyTable.accountHash(lazyTable.uniqueAccountIndex(i)), 1);
+        }
+      } else {
+        for (final var account : table.uniqueAccounts()) {
+          accountCounts.add(accountHash(account), 1);
+        }
+      }
+    }
+  }
+
+  private void selectTopAccounts(final int numTopAccounts) {
+    // Min heap of count << 32 | slot, so the root is the least occurring of the current top accounts.
+    final long[] heap = new long[Math.clamp(numTopAccounts, 0, accountCounts.size)];
+    int heapSize = 0;
+    final var hashes = accountCounts.hashes;
+    final var counts = accountCounts.counts;
+    for (int slot = 0; slot < hashes.length && heap.length > 0; ++slot) {
+      if (hashes[slot] != 0) {
+        final long entry = ((long) counts[slot] << 32) | slot;
+        if (heapSize < heap.length) {
+          heap[heapSize] = entry;
+          siftUp(heap, heapSize++);
+        } else if (entry > heap[0]) {
+          heap[0] = entry;
+          siftDown(heap, heapSize);
+        }
+      }
+    }
+    Arrays.sort(heap);
+    this.topAccountHashes = new long[heap.length];
+    this.topAccountCounts = new int[heap.length];
+    this.topAccounts = new PublicKey[heap.length];
+    for (int i = 0, j = heap.length - 1; j >= 0; ++i, --j) {
+      final int slot = (int) heap[j];
+      topAccountHashes[i] = hashes[slot];
+      topAccountCounts[i] = counts[slot];
+    }
+  }
+
+  private static void siftUp(final long[] heap, int i) {
+    final long entry = heap[i];
+    for (int parent; i > 0 && heap[parent = (i - 1) >> 1] > entry; i = parent) {
+      heap[i] = heap[parent];
+    }
+    heap[i] = entry;
+  }
+
+  private static void siftDown(final long[] heap, final int size) {
+    final long entry = heap[0];
+    int i = 0;
+    for (int child; (child = (i << 1) + 1) < size; i = child) {
+      if (child + 1 < size && heap[child + 1] < heap[child]) {
+        ++child;
+      }
+      if (heap[child] >= entry) {
+        break;
+      }
+      heap[i] = heap[child];
+    }
+    heap[i] = entry;
+  }
+
+  private int resolve(final AccountCounts topIndex, final long hash, final AddressLookupTable table, final int index) {
+    final int rank = topIndex.get(hash) - 1;
+    if (rank >= 0 && topAccounts[rank] == null) {
+      topAccounts[rank] = table.account(index);
+      return 1;
+    }
+    return 0;
+  }
+
+  private int resolvePartition(final AddressLookupTable[] tables, final AccountCounts topIndex) {
+    int numResolved = 0;
+    for (final var table : tables) {
+      if (table instanceof LazyLookupTable lazyTable) {
+        for (int i = 0, numUnique = lazyTable.numUniqueAccounts(); i < numUnique; ++i) {
+          final int index = lazyTable.uniqueAccountIndex(i);
+          numResolved += resolve(topIndex, lazyTable.accountHash(index), lazyTable, index);
+        }
+      } else {
+        for (final var account : table.uniqueAccounts()) {
+          final int rank = topIndex.get(accountHash(account)) - 1;
+          if (rank >= 0 && topAccounts[rank] == null) {
+            topAccounts[rank] = account;
+            ++numResolved;
+          }
+        }
+      }
+    }
+    return numResolved;
+  }
+
+  public int[] partitionLengths() {
+    return partitionLengths.clone();
+  }
+
+  public long numTables() {
+    return numTables;
+  }
+
+  public int numUniqueAccounts() {
+    return accountCounts.size;
+  }
+
+  public int numSkippedPartitions() {
+    return numSkippedPartitions;
+  }
+
+  public void writePartitionLengthsCSV(final Appendable out, final boolean sorted) throws IOException {
+    final int[] lengths = partitionLengths();
+    if (sorted) {
+      Arrays.sort(lengths);
+    }
+    out.append("numTables\n");
+    for (final int length : lengths) {
+      out.append(Integer.toString(length)).append('\n');
+    }
+  }
+
+  public void writeTopAccountsCSV(final Appendable out) throws IOException {
+    out.append("address,numTables\n");
+    for (int i = 0; i < topAccounts.length; ++i) {
+      out.append(String.valueOf(topAccounts[i])).append(',').append(Integer.toString(topAccountCounts[i])).append('\n');
+    }
+  }
+
+  public void writeSummaryCSV(final Appendable out) throws IOException {
+    final var summary = tableHistogram.summarize(numTables, 0);
+    final var efficiencyStats = summary.efficiencyStats();
+    final var numAccountsStats = summary.numAccountsStats();
+    final var numUniqueAccountStats = summary.numUniqueAccountsStats();
+
+    // Occurrences are bounded by the number of tables, so their median is taken from a histogram of the counts.
+    final var counts = accountCounts.counts;
+    int maxOccurrence = 0;
+    long sumOccurrences = 0;
+    for (final int count : counts) {
+      maxOccurrence = Math.max(maxOccurrence, count);
+      sumOccurrences += count;
+    }
+    final long[] occurrences = new long[maxOccurrence + 1];
+    for (int slot = 0; slot < counts.length; ++slot) {
+      if (accountCounts.hashes[slot] != 0) {
+        ++occurrences[counts[slot]];
+      }
+    }
+    final int numUniqueAccounts = accountCounts.size;
+    final long medianRank = (numUniqueAccounts & 1) == 1 ? numUniqueAccounts / 2 : (numUniqueAccounts / 2) - 1;
+    int medianOccurrences = 0;
+    for (long seen = 0; medianOccurrences < occurrences.length; ++medianOccurrences) {
+      seen += occurrences[medianOccurrences];
+      if (seen > medianRank) {
+        break;
+      }
+    }
+
+    out.append(String.format("""
+            numTables,numWithDuplicates,minEfficiency,avgEfficiency,medianEfficiency,averageAccountsPerTable,medianAccountsPerTable,summedNumAccountsPerTable,averageUniqueAccountsPerTable,medianUniqueAccountsPerTable,summedDistinctAccountsPerTable,numUniqueAccounts,averageAccountOccurrence,medianAccountOccurrence,maxAccountOccurrence,numSkippedPartitions
+            %d,%d,%.1f,%.3f,%.3f,%.1f,%d,%d,%.1f,%d,%d,%d,%.1f,%d,%d,%d
+            """,
+        numTables, summary.numWithDuplicateAccounts(),
+        efficiencyStats.getMin(), efficiencyStats.getAverage(), summary.medianEfficiency(),
+        numAccountsStats.getAverage(), summary.medianNumAccounts(), numAccountsStats.getSum(),
+        numUniqueAccountStats.getAverage(), summary.medianNumUniqueAccounts(), numUniqueAccountStats.getSum(),
+        numUniqueAccounts, numUniqueAccounts == 0 ? 0 : sumOccurrences / (double) numUniqueAccounts,
+        numUniqueAccounts == 0 ? 0 : medianOccurrences, maxOccurrence, numSkippedPartitions
+    ));
+  }
+
+  // Open addressing from account hash to count. Zero marks an empty slot, so a zero hash is remapped. Two distinct
+  // accounts sharing a 64 bit hash would be counted together, which is negligible for a corpus of millions of accounts.
+  private static final class AccountCounts {
+
+    private long[] hashes;
+    private int[] counts;
+    private int size;
+
+    private AccountCounts(final int expectedSize) {
+      final int capacity = Integer.highestOneBit(Math.max(16, expectedSize) - 1) << 1;
+      this.hashes = new long[capacity];
+      this.counts = new int[capacity];
+    }
+
+    private static int slot(final long hash, final int mask) {
+      return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void add(long hash, final int delta) {
+      if (hash == 0) {
+        hash = 1;
+      }
+      final int mask = hashes.length - 1;
+      int slot = slot(hash, mask);
+      for (long existing; (existing = hashes[slot]) != 0; slot = (slot + 1) & mask) {
+        if (existing == hash) {
+          counts[slot] += delta;
+          return;
+        }
+      }
+      hashes[slot] = hash;
+      counts[slot] = delta;
+      if (++size > (hashes.length >> 2) * 3) {
+        grow();
+      }
+    }
+
+    private int get(long hash) {
+      if (hash == 0) {
+        hash = 1;
+      }
+      final int mask = hashes.length - 1;
+      for (int slot = slot(hash, mask); ; slot = (slot + 1) & mask) {
+        final long existing = hashes[slot];
+        if (existing == hash) {
+          return counts[slot];
+        } else if (existing == 0) {
+          return 0;
+        }
+      }
+    }
+
+    private void grow() {
+      final var hashes = this.hashes;
+      final var counts = this.counts;
+      final int capacity = hashes.length << 1;
+      this.hashes = new long[capacity];
+      this.counts = new int[capacity];
+      for (int i = 0, mask = capacity - 1; i < hashes.length; ++i) {
+        final long hash = hashes[i];
+        if (hash != 0) {
+          int slot = slot(hash, mask);
+          while (this.hashes[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          this.hashes[slot] = hash;
+          this.counts[slot] = counts[i];
+        }
+      }
+    }
+  }
+}
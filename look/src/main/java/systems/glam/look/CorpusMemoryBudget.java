@@ -0,0 +1,256 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.lookup.AddressLookupTable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import static java.lang.System.Logger.Level.WARNING;
+
+// Bounds the estimated heap footprint of the corpus by evicting the tables with the lowest utility per byte,
+// where utility grows with how often a table has been selected, its efficiency and its number of unique accounts.
+public final class CorpusMemoryBudget {
+
+  private static final System.Logger logger = System.getLogger(CorpusMemoryBudget.class.getName());
+
+  // Rough per object costs of the table, its decoded account keys and its reverse lookup entries.
+  private static final int TABLE_OVERHEAD_BYTES = 128;
+  private static final int ACCOUNT_BYTES = 64;
+  private static final int REVERSE_LOOKUP_BYTES = 48;
+
+  private final long maxBytes;
+  private volatile long retainedTables;
+  private volatile long retainedBytes;
+  private volatile long evictedTables;
+  private volatile long evictedBytes;
+  // Enforced per partition while a load applies them, against a running total of the bytes admitted so far.
+  private final LongAdder loadEvictedTables;
+  private final LongAdder loadEvictedBytes;
+  private int[] loadShares;
+  private long totalLoadShares;
+  private long pendingLoadShares;
+  private long loadedBytes;
+
+  CorpusMemoryBudget(final long maxBytes) {
+    this.maxBytes = maxBytes;
+    this.loadEvictedTables = new LongAdder();
+    this.loadEvictedBytes = new LongAdder();
+  }
+
+  static CorpusMemoryBudget createBudget(final LookupTableServiceConfig.RemoteLoadConfig loadConfig) {
+    return new CorpusMemoryBudget((long) loadConfig.maxCorpusMegabytes() << 20);
+  }
+
+  static long estimateBytes(final AddressLookupTable table) {
+    if (table instanceof LazyLookupTable lazyTable) {
+      // Only the raw account data and packed account keys are held until the table is chosen.
+      return TABLE_OVERHEAD_BYTES + lazyTable.dataLength() + ((long) table.numUniqueAccounts() * Long.BYTES);
+    }
+    return TABLE_OVERHEAD_BYTES
+        + table.length()
+        + ((long) table.numAccounts() * ACCOUNT_BYTES)
+        + ((long) table.numUniqueAccounts() * REVERSE_LOOKUP_BYTES);
+  }
+
+  // Selections are counted on each corpus table, only corpus tables are subject to the budget.
+  void recordSelections(final AddressLookupTable[] tables) {
+    if (maxBytes > 0 && tables != null) {
+      for (final var table : tables) {
+        if (table instanceof LazyLookupTable lazyTable) {
+          lazyTable.recordSelection();
+        }
+      }
+    }
+  }
+
+  private static int selections(final AddressLookupTable table) {
+    return table instanceof LazyLookupTable lazyTable ? lazyTable.selections() : 0;
+  }
+
+  private double utilityPerByte(final AddressLookupTable table, final long bytes) {
+    final int numUniqueAccounts = table.numUniqueAccounts();
+    final double efficiency = numUniqueAccounts / (double) table.numAccounts();
+    return (1 + selections(table)) * efficiency * numUniqueAccounts / bytes;
+  }
+
+  // Halve selection counts so that utility follows recent traffic across reloads.
+  private static void decaySelections(final AddressLookupTable[] tables) {
+    Arrays.stream(tables).parallel().forEach(table -> {
+      if (table instanceof LazyLookupTable lazyTable) {
+        lazyTable.decaySelections();
+      }
+    });
+  }
+
+  /**
+   * Starts a load. Each partition reserves a share of the budget, proportional to its expected number of tables, until
+   * it is admitted, so that the partitions applied first cannot starve the rest.
+   *
+   * @param expectedTables The expected number of tables per partition, such as returned by the previous load.
+   */
+  synchronized void startLoad(final int[] expectedTables) {
+    final long total = Arrays.stream(expectedTables).asLongStream().sum();
+    if (total == 0) {
+      // Without previous sizes every partition gets an equal share.
+      this.loadShares = new int[expectedTables.length];
+      Arrays.fill(loadShares, 1);
+      this.totalLoadShares = expectedTables.length;
+    } else {
+      this.loadShares = expectedTables.clone();
+      this.totalLoadShares = total;
+    }
+    this.pendingLoadShares = totalLoadShares;
+    this.loadedBytes = 0;
+    loadEvictedTables.reset();
+    loadEvictedBytes.reset();
+  }
+
+  private synchronized long releaseShare(final int partition) {
+    if (loadShares == null) {
+      return Long.MAX_VALUE;
+    }
+    final int share = loadShares[partition];
+    loadShares[partition] = 0;
+    pendingLoadShares -= share;
+    final long reservedBytes = (long) (maxBytes * (pendingLoadShares / (double) totalLoadShares));
+    return Math.max(0, maxBytes - reservedBytes - loadedBytes);
+  }
+
+  private synchronized void addLoadedBytes(final long bytes) {
+    loadedBytes += bytes;
+  }
+
+  /**
+   * Enforces the budget on a partition as it is applied during a load, so that the tables held never grow far beyond
+   * it. The partition may use its own share plus whatever the partitions admitted before it left unused.
+   *
+   * @return The tables of the partition which fit within its allowance, in their original order.
+   */
+  AddressLookupTable[] admit(final int partition, final AddressLookupTable[] tables) {
+    if (maxBytes <= 0 || tables == null || tables.length == 0) {
+      return tables;
+    }
+    final long[] bytes = Arrays.stream(tables).mapToLong(CorpusMemoryBudget::estimateBytes).toArray();
+    final long totalBytes = Arrays.stream(bytes).sum();
+    final long allowedBytes = releaseShare(partition);
+    if (totalBytes <= allowedBytes) {
+      addLoadedBytes(totalBytes);
+      return tables;
+    }
+
+    final boolean[] retain = new boolean[tables.length];
+    final long retainedBytes = retainByUtility(tables, bytes, allowedBytes, retain);
+    addLoadedBytes(retainedBytes);
+    final var retained = retained(tables, retain);
+    loadEvictedTables.add(tables.length - retained.length);
+    loadEvictedBytes.add(totalBytes - retainedBytes);
+    return retained;
+  }
+
+  // Marks the tables with the highest utility per byte which fit within maxBytes, returning their total bytes.
+  private long retainByUtility(final AddressLookupTable[] tables,
+                               final long[] bytes,
+                               final long maxBytes,
+                               final boolean[] retain) {
+    final double[] utility = IntStream.range(0, tables.length).parallel()
+        .mapToDouble(i -> utilityPerByte(tables[i], bytes[i]))
+        .toArray();
+    final int[] byUtility = IntStream.range(0, tables.length).boxed()
+        .sorted((a, b) -> Double.compare(utility[b], utility[a]))
+        .mapToInt(Integer::intValue)
+        .toArray();
+    long retainedBytes = 0;
+    for (final int i : byUtility) {
+      if (retainedBytes + bytes[i] <= maxBytes) {
+        retainedBytes += bytes[i];
+        retain[i] = true;
+      }
+    }
+    return retainedBytes;
+  }
+
+  private static AddressLookupTable[] retained(final AddressLookupTable[] tables, final boolean[] retain) {
+    int numRetained = 0;
+    for (final boolean r : retain) {
+      if (r) {
+        ++numRetained;
+      }
+    }
+    final var retained = new AddressLookupTable[numRetained];
+    for (int i = 0, r = 0; i < tables.length; ++i) {
+      if (retain[i]) {
+        retained[r++] = tables[i];
+      }
+    }
+    return retained;
+  }
+
+  /**
+   * Applies the budget to the full corpus, and ends any load started by {@link #startLoad(int[])}, counting the tables
+   * it evicted from partitions as they were applied.
+   *
+   * @return The tables which fit within the budget, in their original order.
+   */
+  AddressLookupTable[] evict(final AddressLookupTable[] tables) {
+    final long[] bytes = Arrays.stream(tables).parallel().mapToLong(CorpusMemoryBudget::estimateBytes).toArray();
+    final long totalBytes = Arrays.stream(bytes).sum();
+    final long loadEvictedTables;
+    final long loadEvictedBytes;
+    synchronized (this) {
+      this.loadShares = null;
+      loadEvictedTables = this.loadEvictedTables.sumThenReset();
+      loadEvictedBytes = this.loadEvictedBytes.sumThenReset();
+    }
+    if (maxBytes <= 0 || totalBytes <= maxBytes) {
+      this.retainedTables = tables.length;
+      this.retainedBytes = totalBytes;
+      this.evictedTables = loadEvictedTables;
+      this.evictedBytes = loadEvictedBytes;
+      if (loadEvictedTables > 0) {
+        decaySelections(tables);
+        logEviction();
+      }
+      return tables;
+    }
+
+    final boolean[] retain = new boolean[tables.length];
+    final long retainedBytes = retainByUtility(tables, bytes, maxBytes, retain);
+    final var retained = retained(tables, retain);
+    decaySelections(tables);
+
+    this.retainedTables = retained.length;
+    this.retainedBytes = retainedBytes;
+    this.evictedTables = loadEvictedTables + tables.length - retained.length;
+    this.evictedBytes = loadEvictedBytes + totalBytes - retainedBytes;
+    logEviction();
+    return retained;
+  }
+
+  private void logEviction() {
+    logger.log(WARNING, String.format(
+        "Evicted %d tables, ~%dMB, to fit the corpus memory budget of %dMB.",
+        evictedTables, evictedBytes >> 20, maxBytes >> 20
+    ));
+  }
+
+  public long maxBytes() {
+    return maxBytes;
+  }
+
+  public long retainedTables() {
+    return retainedTables;
+  }
+
+  public long retainedBytes() {
+    return retainedBytes;
+  }
+
+  public long evictedTables() {
+    return evictedTables;
+  }
+
+  public long evictedBytes() {
+    return evictedBytes;
+  }
+}
@@ -0,0 +1,252 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.core.encoding.ByteUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.zip.CRC32C;
+import java.util.stream.IntStream;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT_UNALIGNED;
+import static java.lang.foreign.ValueLayout.JAVA_LONG_UNALIGNED;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+import static software.sava.core.accounts.PublicKey.PUBLIC_KEY_LENGTH;
+
+// A single file holding every partition of a completed remote load, its secondary tables and the order of the joined
+// and pruned corpus, so that booting needs neither a sort, a prune nor 2 * 257 file reads. The prune settings are
+// recorded, and a snapshot pruned with different ones is rejected, so that boot falls back to the partition files and
+// prunes the corpus with the current settings.
+//
+// [magic][version][loadTimestamp][numPartitions][numSections][pruneDominatedTables][nearDuplicateJaccard]
+// [directory][directoryChecksum][sections]
+// The directory holds the [offset][length][checksum] of each section. The first section is the account dictionary
+// shared by all partitions, followed by the partitions and secondary partitions encoded against it, and lastly the
+// corpus order as indexes into the concatenated partitions.
+record CorpusSnapshot(long loadTimestamp,
+                      AddressLookupTable[][] partitions,
+                      AddressLookupTable[][] secondaryPartitions,
+                      AddressLookupTable[] sortedTables) {
+
+  static final String FILE_NAME = "snapshot.dat";
+
+  private static final int MAGIC = 0xA17C_5A50;
+  private static final int VERSION = 2;
+  private static final int PRUNE_SETTINGS_OFFSET = (Integer.BYTES << 2) + Long.BYTES;
+  private static final int HEADER_LENGTH = PRUNE_SETTINGS_OFFSET + Integer.BYTES + Long.BYTES;
+  private static final int DIRECTORY_ENTRY_LENGTH = Long.BYTES + Long.BYTES + Integer.BYTES;
+  private static final ValueLayout.OfInt INT_LE = JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+  private static final ValueLayout.OfLong LONG_LE = JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+  private static int numSections(final int numPartitions) {
+    return (numPartitions << 1) + 2;
+  }
+
+  static Path resolveSnapshotFile(final Path altCacheDirectory) {
+    return altCacheDirectory.resolve(FILE_NAME);
+  }
+
+  // Exposes its buffer so that a section is written and checksummed without copying it.
+  private static final class SectionBuffer extends ByteArrayOutputStream {
+
+    private SectionBuffer() {
+      super(1 << 16);
+    }
+
+    private ByteBuffer buffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
+
+  private static int checksum(final byte[] data, final int offset, final int length) {
+    final var crc = new CRC32C();
+    crc.update(data, offset, length);
+    return (int) crc.getValue();
+  }
+
+  private static int checksum(final MemorySegment segment) {
+    final var crc = new CRC32C();
+    crc.update(segment.asByteBuffer());
+    return (int) crc.getValue();
+  }
+
+  private static void encodeOrder(final ByteArrayOutputStream out,
+                                  final AddressLookupTable[][] partitions,
+                                  final AddressLookupTable[] sortedTables) {
+    final var indexes = new IdentityHashMap<AddressLookupTable, Integer>(sortedTables.length);
+    int index = 0;
+    for (final var tables : partitions) {
+      for (final var table : tables) {
+        indexes.put(table, index++);
+      }
+    }
+    final byte[] tableIndexBytes = new byte[Integer.BYTES];
+    for (final var table : sortedTables) {
+      final var tableIndex = indexes.get(table);
+      if (tableIndex == null) {
+        throw new IllegalArgumentException("Sorted tables must all be contained by the partitions.");
+      }
+      ByteUtil.putInt32LE(tableIndexBytes, 0, tableIndex);
+      out.writeBytes(tableIndexBytes);
+    }
+  }
+
+  static void write(final Path snapshotFile,
+                    final long loadTimestamp,
+                    final AddressLookupTable[][] partitions,
+                    final AddressLookupTable[][] secondaryPartitions,
+                    final AddressLookupTable[] sortedTables,
+                    final TableCorpusPruner corpusPruner) throws IOException {
+    final int numPartitions = partitions.length;
+    final int numSections = numSections(numPartitions);
+    final var tableSets = Arrays.copyOf(partitions, numPartitions << 1);
+    System.arraycopy(secondaryPartitions, 0, tableSets, numPartitions, numPartitions);
+    final var dictionary = AccountDictionary.createDictionary(tableSets);
+
+    final int directoryEnd = HEADER_LENGTH + (numSections * DIRECTORY_ENTRY_LENGTH);
+    final byte[] header = new byte[directoryEnd + Integer.BYTES];
+    ByteUtil.putInt32LE(header, 0, MAGIC);
+    ByteUtil.putInt32LE(header, Integer.BYTES, VERSION);
+    ByteUtil.putInt64LE(header, Integer.BYTES << 1, loadTimestamp);
+    ByteUtil.putInt32LE(header, (Integer.BYTES << 1) + Long.BYTES, numPartitions);
+    ByteUtil.putInt32LE(header, (Integer.BYTES * 3) + Long.BYTES, numSections);
+    ByteUtil.putInt32LE(header, PRUNE_SETTINGS_OFFSET, corpusPruner.pruneDominatedTables() ? 1 : 0);
+    ByteUtil.putInt64LE(header, PRUNE_SETTINGS_OFFSET + Integer.BYTES,
+        Double.doubleToLongBits(corpusPruner.nearDuplicateJaccard()));
+
+    // Sections are encoded one at a time and streamed after the space reserved for the header, which is written last
+    // once the directory of section offsets, lengths and checksums is known.
+    final var tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+    try (final var fileChannel = FileChannel.open(tempFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+      final var section = new SectionBuffer();
+      long offset = header.length;
+      fileChannel.position(offset);
+      for (int i = 0, entry = HEADER_LENGTH; i < numSections; ++i, entry += DIRECTORY_ENTRY_LENGTH) {
+        final ByteBuffer buffer;
+        if (i == 0) {
+          buffer = ByteBuffer.wrap(dictionary.keys(), 0, dictionary.size() * PUBLIC_KEY_LENGTH);
+        } else {
+          section.reset();
+          if (i < numSections - 1) {
+            TableCacheFile.encodeTables(section, tableSets[i - 1], dictionary);
+          } else {
+            encodeOrder(section, partitions, sortedTables);
+          }
+          buffer = section.buffer();
+        }
+        final int length = buffer.remaining();
+        final var crc = new CRC32C();
+        crc.update(buffer.duplicate());
+        writeFully(fileChannel, buffer);
+        ByteUtil.putInt64LE(header, entry, offset);
+        ByteUtil.putInt64LE(header, entry + Long.BYTES, length);
+        ByteUtil.putInt32LE(header, entry + (Long.BYTES << 1), (int) crc.getValue());
+        offset += length;
+      }
+      ByteUtil.putInt32LE(header, directoryEnd, checksum(header, 0, directoryEnd));
+      fileChannel.position(0);
+      writeFully(fileChannel, ByteBuffer.wrap(header));
+      fileChannel.force(false);
+    }
+    Files.move(tempFile, snapshotFile, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+
+  private static void writeFully(final FileChannel fileChannel, final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      fileChannel.write(buffer);
+    }
+  }
+
+  /**
+   * @return null if there is no snapshot.
+   * @throws IOException if the snapshot is corrupted, or was written for a different number of partitions or with
+   *                     different prune settings.
+   */
+  static CorpusSnapshot read(final Path snapshotFile,
+                             final int expectedPartitions,
+                             final TableCorpusPruner corpusPruner) throws IOException {
+    if (Files.notExists(snapshotFile)) {
+      return null;
+    }
+    // Unmapped once unreachable, checksums need byte buffer views which closeable shared arenas do not support.
+    try (final var fileChannel = FileChannel.open(snapshotFile, READ)) {
+      final long size = fileChannel.size();
+      if (size < HEADER_LENGTH) {
+        throw new IOException("Truncated lookup table snapshot " + snapshotFile);
+      }
+      final var segment = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size, Arena.ofAuto());
+      try {
+        return read(segment, expectedPartitions, corpusPruner);
+      } catch (final IndexOutOfBoundsException | IllegalArgumentException e) {
+        throw new IOException("Unusable lookup table snapshot " + snapshotFile, e);
+      }
+    }
+  }
+
+  private static CorpusSnapshot read(final MemorySegment segment,
+                                     final int expectedPartitions,
+                                     final TableCorpusPruner corpusPruner) {
+    if (segment.get(INT_LE, 0) != MAGIC || segment.get(INT_LE, Integer.BYTES) != VERSION) {
+      throw new IllegalArgumentException("Unsupported snapshot version.");
+    }
+    final long loadTimestamp = segment.get(LONG_LE, Integer.BYTES << 1);
+    final int numPartitions = segment.get(INT_LE, (Integer.BYTES << 1) + Long.BYTES);
+    final int numSections = segment.get(INT_LE, (Integer.BYTES * 3) + Long.BYTES);
+    if (numPartitions != expectedPartitions || numSections != numSections(numPartitions)) {
+      throw new IllegalArgumentException("Snapshot was written for a different number of partitions.");
+    }
+    final long directoryEnd = HEADER_LENGTH + ((long) numSections * DIRECTORY_ENTRY_LENGTH);
+    if (checksum(segment.asSlice(0, directoryEnd)) != segment.get(INT_LE, directoryEnd)) {
+      throw new IllegalArgumentException("Snapshot directory checksum mismatch.");
+    }
+    final boolean pruneDominatedTables = segment.get(INT_LE, PRUNE_SETTINGS_OFFSET) != 0;
+    final long nearDuplicateJaccard = segment.get(LONG_LE, PRUNE_SETTINGS_OFFSET + Integer.BYTES);
+    if (pruneDominatedTables != corpusPruner.pruneDominatedTables()
+        || nearDuplicateJaccard != Double.doubleToLongBits(corpusPruner.nearDuplicateJaccard())) {
+      throw new IllegalArgumentException("Snapshot was pruned with different settings.");
+    }
+
+    final var sections = IntStream.range(0, numSections).parallel().mapToObj(i -> {
+      final long entry = HEADER_LENGTH + ((long) i * DIRECTORY_ENTRY_LENGTH);
+      final var section = segment.asSlice(segment.get(LONG_LE, entry), segment.get(LONG_LE, entry + Long.BYTES));
+      if (checksum(section) != segment.get(INT_LE, entry + (Long.BYTES << 1))) {
+        throw new IllegalArgumentException("Snapshot section " + i + " checksum mismatch.");
+      }
+      return section;
+    }).toArray(MemorySegment[]::new);
+
+    final byte[] dictionary = sections[0].toArray(JAVA_BYTE);
+    final var tables = IntStream.range(1, numSections - 1).parallel()
+        .mapToObj(i -> TableCacheFile.decodeTables(sections[i], dictionary))
+        .toArray(AddressLookupTable[][]::new);
+    final var partitions = new AddressLookupTable[numPartitions][];
+    final var secondaryPartitions = new AddressLookupTable[numPartitions][];
+    System.arraycopy(tables, 0, partitions, 0, numPartitions);
+    System.arraycopy(tables, numPartitions, secondaryPartitions, 0, numPartitions);
+
+    final var joined = new AddressLookupTable[IntStream.range(0, numPartitions).map(i -> partitions[i].length).sum()];
+    for (int i = 0, offset = 0; i < numPartitions; offset += partitions[i].length, ++i) {
+      System.arraycopy(partitions[i], 0, joined, offset, partitions[i].length);
+    }
+    final var order = sections[numSections - 1];
+    final int numTables = (int) (order.byteSize() / Integer.BYTES);
+    final var sortedTables = new AddressLookupTable[numTables];
+    for (int i = 0; i < numTables; ++i) {
+      sortedTables[i] = joined[order.get(INT_LE, (long) i * Integer.BYTES)];
+    }
+    return new CorpusSnapshot(loadTimestamp, partitions, secondaryPartitions, sortedTables);
+  }
+}
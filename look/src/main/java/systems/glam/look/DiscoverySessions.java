@@ -0,0 +1,325 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.core.tx.Transaction;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// Discovery state of incrementally built transactions, so that each update only rescores the tables containing
+// the accounts which were added or removed.
+public final class DiscoverySessions implements Runnable {
+
+  private static final System.Logger logger = System.getLogger(DiscoverySessions.class.getName());
+
+  // Scores by table index, in an open-addressing table of primitive keys and values, as a session over popular accounts
+  // may score a large share of the corpus. Tables whose score drops to zero are removed.
+  private static final class TableScores {
+
+    private static final int INITIAL_CAPACITY = 1 << 8;
+
+    // Keys are table index + 1, so that zero marks an empty slot.
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    private TableScores() {
+      this.keys = new int[INITIAL_CAPACITY];
+      this.values = new int[INITIAL_CAPACITY];
+    }
+
+    private static int hash(final int key) {
+      final int h = key * 0x9E3779B9;
+      return h ^ (h >>> 16);
+    }
+
+    private int slot(final int key) {
+      final int mask = keys.length - 1;
+      int slot = hash(key) & mask;
+      while (keys[slot] != 0 && keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private void increment(final int index) {
+      final int key = index + 1;
+      final int slot = slot(key);
+      if (keys[slot] == 0) {
+        keys[slot] = key;
+        values[slot] = 1;
+        if (++size << 1 > keys.length) {
+          rehash(keys.length << 1);
+        }
+      } else {
+        ++values[slot];
+      }
+    }
+
+    private void put(final int index, final int value) {
+      final int key = index + 1;
+      final int slot = slot(key);
+      if (keys[slot] == 0) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size << 1 > keys.length) {
+          rehash(keys.length << 1);
+        }
+      } else {
+        values[slot] = value;
+      }
+    }
+
+    private void decrement(final int index) {
+      final int slot = slot(index + 1);
+      if (keys[slot] != 0 && --values[slot] == 0) {
+        remove(slot);
+      }
+    }
+
+    // Shifts back the entries following the removed one, so that lookups never need tombstones.
+    private void remove(int slot) {
+      final int mask = keys.length - 1;
+      keys[slot] = 0;
+      --size;
+      for (int next = (slot + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+        final int home = hash(keys[next]) & mask;
+        if (((next - home) & mask) >= ((next - slot) & mask)) {
+          keys[slot] = keys[next];
+          values[slot] = values[next];
+          keys[next] = 0;
+          slot = next;
+        }
+      }
+    }
+
+    private void rehash(final int capacity) {
+      final int[] keys = this.keys;
+      final int[] values = this.values;
+      this.keys = new int[capacity];
+      this.values = new int[capacity];
+      for (int i = 0; i < keys.length; ++i) {
+        if (keys[i] != 0) {
+          final int slot = slot(keys[i]);
+          this.keys[slot] = keys[i];
+          this.values[slot] = values[i];
+        }
+      }
+    }
+
+    // Moves the scores to the new table indexes, dropping those of tables which are no longer published.
+    private void remap(final int[] remap) {
+      final int[] keys = this.keys;
+      final int[] values = this.values;
+      this.keys = new int[keys.length];
+      this.values = new int[keys.length];
+      size = 0;
+      for (int i = 0; i < keys.length; ++i) {
+        if (keys[i] != 0) {
+          final int index = remap[keys[i] - 1];
+          if (index >= 0) {
+            put(index, values[i]);
+          }
+        }
+      }
+    }
+
+    private void clear() {
+      if (keys.length > INITIAL_CAPACITY) {
+        this.keys = new int[INITIAL_CAPACITY];
+        this.values = new int[INITIAL_CAPACITY];
+      } else {
+        Arrays.fill(keys, 0);
+      }
+      size = 0;
+    }
+  }
+
+  final class Session {
+
+    private final Set<PublicKey> accounts;
+    private final TableScores scores;
+    private AccountTableIndex index;
+    private AddressLookupTable[] tables;
+    private volatile long lastAccessNanos;
+
+    private Session() {
+      this.accounts = HashSet.newHashSet(Transaction.MAX_ACCOUNTS);
+      this.scores = new TableScores();
+      this.index = accountTableIndex;
+      this.lastAccessNanos = System.nanoTime();
+    }
+
+    private void add(final PublicKey account) {
+      index.forEachTable(account, scores::increment);
+    }
+
+    private void remove(final PublicKey account) {
+      index.forEachTable(account, scores::decrement);
+    }
+
+    /**
+     * @return true if the accounts, or the corpus, changed since the tables were last chosen.
+     */
+    boolean update(final Collection<PublicKey> added, final Collection<PublicKey> removed) {
+      // Validated before anything is applied, so that a rejected update leaves the session as it was.
+      final var nextAccounts = new HashSet<>(accounts);
+      nextAccounts.removeAll(removed);
+      nextAccounts.addAll(added);
+      checkNumAccounts(nextAccounts.size());
+      boolean changed = tables == null;
+      final var index = accountTableIndex;
+      if (index != this.index) {
+        final boolean remaps = index.remaps(this.index);
+        this.index = index;
+        if (remaps) {
+          // Only tables were updated since the last publish, carry over the scores and score the inserted tables.
+          scores.remap(index.remap());
+          for (final int inserted : index.inserted()) {
+            final var table = index.table(inserted);
+            int score = 0;
+            for (final var account : accounts) {
+              if (table.containKey(account)) {
+                ++score;
+              }
+            }
+            if (score > 0) {
+              scores.put(inserted, score);
+            }
+          }
+        } else {
+          // The corpus was re-published, rescore the current accounts against the new one.
+          scores.clear();
+          accounts.forEach(this::add);
+        }
+        changed = true;
+      }
+      for (final var account : removed) {
+        if (accounts.remove(account)) {
+          remove(account);
+          changed = true;
+        }
+      }
+      for (final var account : added) {
+        if (accounts.add(account)) {
+          add(account);
+          changed = true;
+        }
+      }
+      return changed;
+    }
+
+    PublicKey[] accounts() {
+      return accounts.toArray(PublicKey[]::new);
+    }
+
+    /**
+     * @return Tables referencing at least two of the session accounts, sorted by score.
+     */
+    AddressLookupTable[] scoredTables(final int limit) {
+      final var scoredTables = new ArrayList<ScoredTable>();
+      final int[] keys = scores.keys;
+      final int[] values = scores.values;
+      for (int i = 0; i < keys.length; ++i) {
+        if (keys[i] != 0 && values[i] > 1) {
+          scoredTables.add(new ScoredTable(values[i], index.table(keys[i] - 1)));
+        }
+      }
+      return scoredTables.stream()
+          .sorted()
+          .limit(limit)
+          .map(ScoredTable::table)
+          .toArray(AddressLookupTable[]::new);
+    }
+
+    AddressLookupTable[] tables() {
+      return tables;
+    }
+
+    void tables(final AddressLookupTable[] tables) {
+      this.tables = tables;
+    }
+  }
+
+  private final int maxSessions;
+  private final Duration idleTimeout;
+  private final Map<String, Session> sessions;
+  private volatile AccountTableIndex accountTableIndex;
+
+  DiscoverySessions(final int maxSessions, final Duration idleTimeout) {
+    this.maxSessions = maxSessions;
+    this.idleTimeout = idleTimeout;
+    this.sessions = new ConcurrentHashMap<>();
+    this.accountTableIndex = AccountTableIndex.EMPTY;
+  }
+
+  static DiscoverySessions createSessions(final LookupTableServiceConfig.SessionConfig sessionConfig) {
+    return new DiscoverySessions(sessionConfig.maxSessions(), sessionConfig.idleTimeout());
+  }
+
+  public static boolean isValidSessionId(final String sessionId) {
+    return sessionId != null && !sessionId.isBlank() && sessionId.length() <= 64;
+  }
+
+  public static void checkNumAccounts(final int numAccounts) {
+    if (numAccounts > Transaction.MAX_ACCOUNTS) {
+      throw new IllegalArgumentException("Session exceeds the maximum number of transaction accounts.");
+    }
+  }
+
+  void indexTables(final AddressLookupTable[] tables) {
+    if (maxSessions > 0) {
+      this.accountTableIndex = AccountTableIndex.createIndex(tables, accountTableIndex);
+    }
+  }
+
+  String createSession() {
+    if (maxSessions <= 0) {
+      throw new IllegalStateException("Discovery sessions are disabled.");
+    } else if (sessions.size() >= maxSessions) {
+      throw new IllegalStateException("Maximum number of discovery sessions has been reached.");
+    }
+    final var sessionId = UUID.randomUUID().toString();
+    sessions.put(sessionId, new Session());
+    return sessionId;
+  }
+
+  Session session(final String sessionId) {
+    final var session = sessions.get(sessionId);
+    if (session != null) {
+      session.lastAccessNanos = System.nanoTime();
+    }
+    return session;
+  }
+
+  public boolean closeSession(final String sessionId) {
+    return sessions.remove(sessionId) != null;
+  }
+
+  @Override
+  public void run() {
+    if (maxSessions <= 0) {
+      return;
+    }
+    final long idleNanos = idleTimeout.toNanos();
+    try {
+      for (final long delayMillis = Math.max(1, idleTimeout.toMillis() >> 1); ; ) {
+        MILLISECONDS.sleep(delayMillis);
+        final long now = System.nanoTime();
+        final int numSessions = sessions.size();
+        sessions.values().removeIf(session -> now - session.lastAccessNanos > idleNanos);
+        final int expired = numSessions - sessions.size();
+        if (expired > 0) {
+          logger.log(INFO, String.format("[expiredSessions=%d] [activeSessions=%d]", expired, sessions.size()));
+        }
+      }
+    } catch (final InterruptedException e) {
+      // return;
+    }
+  }
+}
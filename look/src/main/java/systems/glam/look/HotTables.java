@@ -0,0 +1,222 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.rpc.json.http.client.SolanaRpcClient;
+import software.sava.rpc.json.http.response.AccountInfo;
+import software.sava.services.core.remote.call.Call;
+import software.sava.services.core.remote.load_balance.LoadBalancer;
+import software.sava.services.core.request_capacity.context.CallContext;
+import software.sava.services.solana.remote.call.CallWeights;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// Tracks the corpus tables recently returned by queries, and re-fetches only those between full loads with batched
+// getMultipleAccounts calls. Tables whose account data changed, or which were closed, are applied as table updates.
+final class HotTables {
+
+  private static final System.Logger logger = System.getLogger(HotTables.class.getName());
+
+  private record HotTable(AddressLookupTable table, long lastReturned) {
+  }
+
+  private static final Comparator<HotTable> MOST_RECENT = (a, b) -> Long.compare(b.lastReturned, a.lastReturned);
+
+  private final LoadBalancer<SolanaRpcClient> rpcClients;
+  private final CallContext callContext;
+  private final int maxTables;
+  private final long recentWindowMillis;
+  private final Duration refreshDelay;
+  private final ConcurrentHashMap<PublicKey, HotTable> tables;
+
+  HotTables(final LoadBalancer<SolanaRpcClient> rpcClients,
+            final CallContext callContext,
+            final int maxTables,
+            final Duration recentWindow,
+            final Duration refreshDelay) {
+    this.rpcClients = rpcClients;
+    this.callContext = callContext;
+    this.maxTables = maxTables;
+    this.recentWindowMillis = recentWindow.toMillis();
+    this.refreshDelay = refreshDelay;
+    this.tables = new ConcurrentHashMap<>();
+  }
+
+  static HotTables createHotTables(final LoadBalancer<SolanaRpcClient> rpcClients,
+                                   final CallWeights callWeights,
+                                   final LookupTableServiceConfig.HotTableConfig hotTableConfig) {
+    return new HotTables(
+        rpcClients,
+        CallContext.createContext(callWeights.getMultipleAccounts(), 0, false),
+        hotTableConfig.maxTables(),
+        hotTableConfig.recentWindow(),
+        hotTableConfig.refreshDelay()
+    );
+  }
+
+  // Only corpus tables are tracked, tenant overlay tables are refreshed with their overlay.
+  void observe(final AddressLookupTable[] selected) {
+    if (maxTables > 0 && selected != null) {
+      final long now = System.currentTimeMillis();
+      for (final var table : selected) {
+        if (table instanceof LazyLookupTable) {
+          tables.put(table.address(), new HotTable(table, now));
+        }
+      }
+    }
+  }
+
+  // Tracks the instances of a newly published corpus, so that refreshes compare against the current table data rather
+  // than the instance last returned, and drops tables which are no longer in the corpus.
+  void retainPublished(final AddressLookupTable[] corpus) {
+    if (maxTables <= 0 || tables.isEmpty()) {
+      return;
+    }
+    final var published = new ConcurrentHashMap<PublicKey, AddressLookupTable>();
+    Arrays.stream(corpus).parallel().forEach(table -> {
+      if (tables.containsKey(table.address())) {
+        published.put(table.address(), table);
+      }
+    });
+    tables.keySet().removeIf(address -> !published.containsKey(address));
+    tables.replaceAll((address, hotTable) -> {
+      final var table = published.get(address);
+      return table == null || table == hotTable.table ? hotTable : new HotTable(table, hotTable.lastReturned);
+    });
+  }
+
+  // Drops tables which have not been returned within the recent window, and all but the most recently returned
+  // maxTables.
+  private HotTable[] selectTables() {
+    final long expired = System.currentTimeMillis() - recentWindowMillis;
+    tables.values().removeIf(hotTable -> hotTable.lastReturned < expired);
+    final var hotTables = tables.values().toArray(HotTable[]::new);
+    if (hotTables.length <= maxTables) {
+      return hotTables;
+    }
+    Arrays.sort(hotTables, MOST_RECENT);
+    for (int i = maxTables; i < hotTables.length; ++i) {
+      tables.remove(hotTables[i].table.address(), hotTables[i]);
+    }
+    return Arrays.copyOf(hotTables, maxTables);
+  }
+
+  private List<AccountInfo<byte[]>> getAccounts(final List<PublicKey> batch, final String callName) {
+    return Call.createCourteousCall(
+        rpcClients, rpcClient -> rpcClient.getAccounts(batch),
+        callContext,
+        callName
+    ).get();
+  }
+
+  /**
+   * Fetches tables by address, such as tables which left their partition since the previous load. Closed tables and
+   * tables which fail to decode are skipped.
+   */
+  List<AddressLookupTable> fetchTables(final List<PublicKey> addresses) {
+    final var tables = new ArrayList<AddressLookupTable>(addresses.size());
+    for (int from = 0, to; from < addresses.size(); from = to) {
+      to = Math.min(addresses.size(), from + SolanaRpcClient.MAX_MULTIPLE_ACCOUNTS);
+      for (final var accountInfo : getAccounts(addresses.subList(from, to), "rpcClient::getTables")) {
+        if (accountInfo != null && accountInfo.data() != null && !TableUpdates.isClosed(accountInfo.data())) {
+          final var table = TableUpdates.decode(accountInfo.pubKey(), accountInfo.data());
+          if (table != null) {
+            tables.add(table);
+          }
+        }
+      }
+    }
+    return tables;
+  }
+
+  private void fetchChanges(final HotTable[] hotTables, final Map<PublicKey, AddressLookupTable> changes) {
+    for (int from = 0, to; from < hotTables.length; from = to) {
+      to = Math.min(hotTables.length, from + SolanaRpcClient.MAX_MULTIPLE_ACCOUNTS);
+      final var batch = Arrays.stream(hotTables, from, to).map(hotTable -> hotTable.table.address()).toList();
+      final var accountInfos = getAccounts(batch, "rpcClient::getHotTables");
+      final var accountData = HashMap.<PublicKey, byte[]>newHashMap(batch.size());
+      for (final var accountInfo : accountInfos) {
+        if (accountInfo != null && accountInfo.data() != null) {
+          accountData.put(accountInfo.pubKey(), accountInfo.data());
+        }
+      }
+      // Missing accounts are only reported as closed if the response is aligned with the requested addresses.
+      final boolean aligned = accountInfos.size() == batch.size();
+      for (int i = from; i < to; ++i) {
+        final var hotTable = hotTables[i];
+        final var address = hotTable.table.address();
+        final byte[] data = accountData.get(address);
+        if (data == null) {
+          if (aligned) {
+            changes.put(address, null);
+          }
+        } else if (TableUpdates.isClosed(data)) {
+          changes.put(address, null);
+        } else if (!(hotTable.table instanceof LazyLookupTable lazyTable) || !lazyTable.hasData(data)) {
+          final var table = TableUpdates.decode(address, data);
+          if (table != null) {
+            changes.put(address, table);
+          }
+        }
+      }
+    }
+  }
+
+  private void refresh(final Consumer<Map<PublicKey, AddressLookupTable>> applyChanges) {
+    final long start = System.currentTimeMillis();
+    final var hotTables = selectTables();
+    if (hotTables.length == 0) {
+      return;
+    }
+    final var changes = new HashMap<PublicKey, AddressLookupTable>();
+    fetchChanges(hotTables, changes);
+    if (!changes.isEmpty()) {
+      applyChanges.accept(changes);
+      for (final var change : changes.entrySet()) {
+        final var table = change.getValue();
+        if (table == null || !table.isActive()) {
+          tables.remove(change.getKey());
+        } else {
+          tables.computeIfPresent(change.getKey(), (_, hotTable) -> new HotTable(table, hotTable.lastReturned));
+        }
+      }
+    }
+    logger.log(INFO, String.format(
+        "[refreshedHotTables=%d] [changedTables=%d] [duration=%dms]",
+        hotTables.length, changes.size(), System.currentTimeMillis() - start
+    ));
+  }
+
+  /**
+   * @param applyChanges Applies a batch of changed tables, mapped to null if the table was closed.
+   */
+  void run(final Consumer<Map<PublicKey, AddressLookupTable>> applyChanges) {
+    if (maxTables <= 0) {
+      return;
+    }
+    try {
+      for (final long delayMillis = refreshDelay.toMillis(); ; ) {
+        MILLISECONDS.sleep(delayMillis);
+        try {
+          refresh(applyChanges);
+        } catch (final RuntimeException ex) {
+          logger.log(WARNING, "Failed to refresh recently returned lookup tables.", ex);
+        }
+      }
+    } catch (final InterruptedException e) {
+      // return;
+    }
+  }
+}
@@ -0,0 +1,322 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.core.accounts.sysvar.Clock;
+import software.sava.core.encoding.ByteUtil;
+import software.sava.services.solana.alt.CachedAddressLookupTable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import static software.sava.core.accounts.PublicKey.PUBLIC_KEY_LENGTH;
+
+// Keeps the raw on-chain account data of a table plus a sorted array of its unique accounts, each packed as a 56 bit
+// key prefix and its 8 bit index into the data, which is all scoring needs. The fully decoded table, used to build
+// responses and transactions, is only materialized once the table is chosen, and then retained.
+final class LazyLookupTable implements AddressLookupTable {
+
+  static final BiFunction<PublicKey, byte[], AddressLookupTable> FACTORY = LazyLookupTable::createTable;
+
+  private static final long PREFIX_MASK = ~0xFFL;
+  private static final VarHandle SELECTIONS;
+
+  static {
+    try {
+      SELECTIONS = MethodHandles.lookup().findVarHandle(LazyLookupTable.class, "selections", int.class);
+    } catch (final ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  // Receives an account key as the 32 bytes of key starting at offset.
+  @FunctionalInterface
+  interface AccountKeyConsumer {
+
+    void accept(final byte[] key, final int offset);
+  }
+
+  private final PublicKey address;
+  private final byte[] data;
+  private final long[] accountKeys;
+  private final long fingerprintHigh;
+  private final long fingerprintLow;
+  private volatile AddressLookupTable materialized;
+  private volatile String encoded;
+  // How often queries selected the table, kept with the table itself so that it follows unchanged tables across
+  // reloads without sharing a counter with any other table.
+  private volatile int selections;
+
+  private LazyLookupTable(final PublicKey address,
+                          final byte[] data,
+                          final long[] accountKeys,
+                          final long fingerprintHigh,
+                          final long fingerprintLow) {
+    this.address = address;
+    this.data = data;
+    this.accountKeys = accountKeys;
+    this.fingerprintHigh = fingerprintHigh;
+    this.fingerprintLow = fingerprintLow;
+  }
+
+  private static int accountOffset(final int index) {
+    return LOOKUP_TABLE_META_SIZE + (index * PUBLIC_KEY_LENGTH);
+  }
+
+  private static long keyPrefix(final byte[] key, final int offset) {
+    return ByteUtil.getInt64LE(key, offset) & PREFIX_MASK;
+  }
+
+  private boolean accountEquals(final int index, final byte[] key, final int keyOffset) {
+    final int offset = accountOffset(index);
+    return Arrays.equals(data, offset, offset + PUBLIC_KEY_LENGTH, key, keyOffset, keyOffset + PUBLIC_KEY_LENGTH);
+  }
+
+  static AddressLookupTable createTable(final PublicKey address, final byte[] data) {
+    final int accountsLength = data.length - LOOKUP_TABLE_META_SIZE;
+    if (accountsLength < 0 || accountsLength % PUBLIC_KEY_LENGTH != 0) {
+      throw new IllegalArgumentException("Invalid lookup table account data length " + data.length);
+    }
+    final int numAccounts = accountsLength / PUBLIC_KEY_LENGTH;
+    if (numAccounts > LOOKUP_TABLE_MAX_ADDRESSES) {
+      throw new IllegalArgumentException("Invalid number of table accounts " + numAccounts);
+    }
+    final long[] keys = new long[numAccounts];
+    for (int i = 0; i < numAccounts; ++i) {
+      keys[i] = keyPrefix(data, accountOffset(i)) | i;
+    }
+    Arrays.sort(keys);
+
+    // Drop repeated accounts, keeping their first index. Equal prefixes of distinct accounts are kept.
+    int numUnique = 0;
+    long fingerprintHigh = 0;
+    long fingerprintLow = 0;
+    for (int i = 0; i < numAccounts; ++i) {
+      final long key = keys[i];
+      final int offset = accountOffset((int) (key & 0xFF));
+      boolean duplicate = false;
+      for (int j = numUnique - 1; j >= 0 && (keys[j] & PREFIX_MASK) == (key & PREFIX_MASK); --j) {
+        final int other = accountOffset((int) (keys[j] & 0xFF));
+        if (Arrays.equals(data, offset, offset + PUBLIC_KEY_LENGTH, data, other, other + PUBLIC_KEY_LENGTH)) {
+          duplicate = true;
+          break;
+        }
+      }
+      if (!duplicate) {
+        keys[numUnique++] = key;
+        fingerprintHigh += AccountSetFingerprints.hashHigh(data, offset);
+        fingerprintLow += AccountSetFingerprints.hashLow(data, offset);
+      }
+    }
+    return new LazyLookupTable(
+        address,
+        data,
+        numUnique == numAccounts ? keys : Arrays.copyOf(keys, numUnique),
+        fingerprintHigh,
+        fingerprintLow
+    );
+  }
+
+  private int find(final byte[] key, final int offset) {
+    final long prefix = keyPrefix(key, offset);
+    int i = Arrays.binarySearch(accountKeys, prefix);
+    if (i < 0) {
+      i = -i - 1;
+    }
+    for (long entry; i < accountKeys.length && ((entry = accountKeys[i]) & PREFIX_MASK) == prefix; ++i) {
+      final int index = (int) (entry & 0xFF);
+      if (accountEquals(index, key, offset)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @see AccountSetFingerprints
+   */
+  long fingerprintHigh() {
+    return fingerprintHigh;
+  }
+
+  long fingerprintLow() {
+    return fingerprintLow;
+  }
+
+  /**
+   * Visits the unique accounts of a table as raw key bytes. Lazy tables are read straight from their account data,
+   * so index builders do not allocate a key per account.
+   */
+  static void forEachUniqueAccount(final AddressLookupTable table, final AccountKeyConsumer consumer) {
+    if (table instanceof LazyLookupTable lazyTable) {
+      final byte[] data = lazyTable.data;
+      for (final long key : lazyTable.accountKeys) {
+        consumer.accept(data, accountOffset((int) (key & 0xFF)));
+      }
+    } else {
+      for (final var account : table.uniqueAccounts()) {
+        consumer.accept(account.toByteArray(), 0);
+      }
+    }
+  }
+
+  /**
+   * Visits every account of a table in index order, including repeated accounts, as raw key bytes.
+   */
+  static void forEachAccount(final AddressLookupTable table, final AccountKeyConsumer consumer) {
+    if (table instanceof LazyLookupTable lazyTable) {
+      final byte[] data = lazyTable.data;
+      for (int offset = LOOKUP_TABLE_META_SIZE; offset < data.length; offset += PUBLIC_KEY_LENGTH) {
+        consumer.accept(data, offset);
+      }
+    } else {
+      for (int i = 0, numAccounts = table.numAccounts(); i < numAccounts; ++i) {
+        consumer.accept(table.account(i).toByteArray(), 0);
+      }
+    }
+  }
+
+  static boolean containsKey(final AddressLookupTable table, final byte[] key, final int offset) {
+    return table instanceof LazyLookupTable lazyTable
+        ? lazyTable.find(key, offset) >= 0
+        : table.containKey(PublicKey.readPubKey(key, offset));
+  }
+
+  int selections() {
+    return selections;
+  }
+
+  void recordSelection() {
+    SELECTIONS.getAndAdd(this, 1);
+  }
+
+  // A changed table replacing this one keeps its selection count.
+  void inheritSelections(final LazyLookupTable previous) {
+    SELECTIONS.getAndAdd(this, previous.selections);
+  }
+
+  void decaySelections() {
+    final int count = selections;
+    if (count > 0) {
+      SELECTIONS.getAndAdd(this, -(count >> 1));
+    }
+  }
+
+  int dataLength() {
+    return data.length;
+  }
+
+  int uniqueAccountIndex(final int i) {
+    return (int) (accountKeys[i] & 0xFF);
+  }
+
+  long accountPrefix(final int index) {
+    return ByteUtil.getInt64LE(data, accountOffset(index));
+  }
+
+  long accountHash(final int index) {
+    return AccountSetFingerprints.hashLow(data, accountOffset(index));
+  }
+
+  boolean hasData(final byte[] data) {
+    return Arrays.equals(this.data, data);
+  }
+
+  AddressLookupTable materialize() {
+    var materialized = this.materialized;
+    if (materialized == null) {
+      materialized = CachedAddressLookupTable.FACTORY.apply(address, data).withReverseLookup();
+      this.materialized = materialized;
+    }
+    return materialized;
+  }
+
+  @Override
+  public PublicKey address() {
+    return address;
+  }
+
+  @Override
+  public PublicKey authority() {
+    return data[AUTHORITY_OPTION_OFFSET] == 0 ? null : PublicKey.readPubKey(data, AUTHORITY_OFFSET);
+  }
+
+  @Override
+  public long deactivationSlot() {
+    return ByteUtil.getInt64LE(data, DEACTIVATION_SLOT_OFFSET);
+  }
+
+  @Override
+  public long lastExtendedSlot() {
+    return ByteUtil.getInt64LE(data, LAST_EXTENDED_OFFSET);
+  }
+
+  @Override
+  public boolean isActive() {
+    return deactivationSlot() == Clock.MAX_SLOT;
+  }
+
+  @Override
+  public PublicKey account(final int index) {
+    return PublicKey.readPubKey(data, accountOffset(index));
+  }
+
+  @Override
+  public int indexOf(final PublicKey account) {
+    return find(account.toByteArray(), 0);
+  }
+
+  @Override
+  public boolean containKey(final PublicKey account) {
+    return find(account.toByteArray(), 0) >= 0;
+  }
+
+  @Override
+  public int numAccounts() {
+    return (data.length - LOOKUP_TABLE_META_SIZE) / PUBLIC_KEY_LENGTH;
+  }
+
+  @Override
+  public int numUniqueAccounts() {
+    return accountKeys.length;
+  }
+
+  @Override
+  public Set<PublicKey> uniqueAccounts() {
+    final var accounts = new PublicKey[accountKeys.length];
+    for (int i = 0; i < accounts.length; ++i) {
+      accounts[i] = account((int) (accountKeys[i] & 0xFF));
+    }
+    return Set.of(accounts);
+  }
+
+  @Override
+  public AddressLookupTable withReverseLookup() {
+    return materialize();
+  }
+
+  // Serialized as its raw account data, without decoding the table.
+  @Override
+  public int write(final byte[] out, final int offset) {
+    System.arraycopy(data, 0, out, offset, data.length);
+    return data.length;
+  }
+
+  @Override
+  public int length() {
+    return data.length;
+  }
+
+  @Override
+  public String toString() {
+    var encoded = this.encoded;
+    if (encoded == null) {
+      encoded = materialize().toString();
+      this.encoded = encoded;
+    }
+    return encoded;
+  }
+}
@@ -0,0 +1,38 @@
+package systems.glam.look;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// A single attempt to fetch a partition. Once its caller gives up on it, such as after a timeout, tables still being
+// read are no longer registered and the response input is closed.
+final class LoadAttempt {
+
+  private volatile boolean abandoned;
+  private volatile Closeable input;
+
+  private static void close(final Closeable input) {
+    if (input != null) {
+      try {
+        input.close();
+      } catch (final IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  boolean abandoned() {
+    return abandoned;
+  }
+
+  void abandon() {
+    abandoned = true;
+    close(input);
+  }
+
+  void readFrom(final Closeable input) {
+    this.input = input;
+    if (abandoned) {
+      close(input);
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package systems.glam.look;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static systems.glam.look.LookupTableDiscoveryServiceImpl.NUM_PARTITIONS;
+
+// The partitions completed by a remote load which is still in progress, persisted next to their cache files so that a
+// restarted process only fetches the remaining partitions. Removed once the load completes.
+final class LoadProgress {
+
+  private static final System.Logger logger = System.getLogger(LoadProgress.class.getName());
+
+  static final String FILE_NAME = "load_progress.dat";
+
+  private final Path progressFile;
+  private final boolean[] completed;
+
+  private LoadProgress(final Path progressFile, final boolean[] completed) {
+    this.progressFile = progressFile;
+    this.completed = completed;
+  }
+
+  /**
+   * @return null if there is no interrupted load to resume.
+   */
+  static LoadProgress readProgress(final Path altCacheDirectory) {
+    if (altCacheDirectory == null) {
+      return null;
+    }
+    final var progressFile = altCacheDirectory.resolve(FILE_NAME);
+    try {
+      if (Files.notExists(progressFile)) {
+        return null;
+      }
+      final byte[] data = Files.readAllBytes(progressFile);
+      if (data.length != NUM_PARTITIONS) {
+        logger.log(WARNING, "Ignoring corrupted load progress file " + progressFile);
+        return null;
+      }
+      final boolean[] completed = new boolean[NUM_PARTITIONS];
+      for (int i = 0; i < NUM_PARTITIONS; ++i) {
+        completed[i] = data[i] != 0;
+      }
+      return new LoadProgress(progressFile, completed);
+    } catch (final IOException e) {
+      logger.log(WARNING, "Failed to read load progress from " + progressFile, e);
+      return null;
+    }
+  }
+
+  static LoadProgress startProgress(final Path altCacheDirectory) {
+    final var progress = new LoadProgress(
+        altCacheDirectory == null ? null : altCacheDirectory.resolve(FILE_NAME),
+        new boolean[NUM_PARTITIONS]
+    );
+    progress.write();
+    return progress;
+  }
+
+  synchronized boolean isComplete(final int partition) {
+    return completed[partition];
+  }
+
+  synchronized int numCompleted() {
+    int numCompleted = 0;
+    for (final boolean complete : completed) {
+      if (complete) {
+        ++numCompleted;
+      }
+    }
+    return numCompleted;
+  }
+
+  synchronized void markComplete(final int partition) {
+    completed[partition] = true;
+    write();
+  }
+
+  synchronized void markIncomplete(final int partition) {
+    completed[partition] = false;
+    write();
+  }
+
+  private void write() {
+    if (progressFile == null) {
+      return;
+    }
+    final byte[] data = new byte[NUM_PARTITIONS];
+    for (int i = 0; i < NUM_PARTITIONS; ++i) {
+      data[i] = (byte) (completed[i] ? 1 : 0);
+    }
+    final var tempFile = progressFile.resolveSibling(FILE_NAME + ".tmp");
+    try {
+      Files.write(tempFile, data);
+      Files.move(tempFile, progressFile, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (final IOException e) {
+      logger.log(WARNING, "Failed to write load progress to " + progressFile, e);
+    }
+  }
+
+  void delete() {
+    if (progressFile != null) {
+      try {
+        Files.deleteIfExists(progressFile);
+      } catch (final IOException e) {
+        logger.log(WARNING, "Failed to delete load progress " + progressFile, e);
+      }
+    }
+  }
+}
@@ -1,41 +1,53 @@
 package systems.glam.look;
 
 import software.sava.core.accounts.lookup.AddressLookupTable;
-import software.sava.rpc.json.http.response.AccountInfo;
 import software.sava.services.core.remote.call.Call;
 
+import java.time.Duration;
 import java.util.Comparator;
-import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 
-class LookupTableCallHandler implements Function<List<AccountInfo<AddressLookupTable>>, AddressLookupTable[]> {
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+class LookupTableCallHandler implements Function<TableCollector, AddressLookupTable[]> {
 
   static final Comparator<AddressLookupTable> BY_UNIQUE_ACCOUNTS_REVERSED = (a, b) -> Integer.compare(b.numUniqueAccounts(), a.numUniqueAccounts());
 
-  private final ExecutorService executorService;
-  private final Call<List<AccountInfo<AddressLookupTable>>> call;
-  private final TableStats tableStats;
+  final ExecutorService executorService;
+  private final Function<LoadAttempt, Call<TableCollector>> call;
 
-  LookupTableCallHandler(final ExecutorService executorService,
-                         final Call<List<AccountInfo<AddressLookupTable>>> call,
-                         final TableStats tableStats) {
+  LookupTableCallHandler(final ExecutorService executorService, final Function<LoadAttempt, Call<TableCollector>> call) {
     this.executorService = executorService;
     this.call = call;
-    this.tableStats = tableStats;
+  }
+
+  // Abandons the attempt if it fails or times out, as timing out does not stop the call itself.
+  static CompletableFuture<TableCollector> callAttempt(final ExecutorService executorService,
+                                                       final Function<LoadAttempt, Call<TableCollector>> call,
+                                                       final Duration timeout) {
+    final var attempt = new LoadAttempt();
+    return call.apply(attempt).async(executorService)
+        .orTimeout(timeout.toMillis(), MILLISECONDS)
+        .whenComplete((_, ex) -> {
+          if (ex != null) {
+            attempt.abandon();
+          }
+        });
   }
 
   @Override
-  public AddressLookupTable[] apply(final List<AccountInfo<AddressLookupTable>> accountInfos) {
-    return accountInfos.stream()
-        .map(AccountInfo::data)
-        .filter(tableStats)
-        .sorted(BY_UNIQUE_ACCOUNTS_REVERSED)
-        .toArray(AddressLookupTable[]::new);
+  public AddressLookupTable[] apply(final TableCollector collector) {
+    final var tables = collector.sortedTables();
+    applySecondary(collector.secondaryTables());
+    return tables;
+  }
+
+  protected void applySecondary(final AddressLookupTable[] secondaryTables) {
   }
 
-  CompletableFuture<AddressLookupTable[]> callAndApply() {
-    return call.async(executorService).thenApply(this);
+  CompletableFuture<AddressLookupTable[]> callAndApply(final Duration timeout) {
+    return callAttempt(executorService, call, timeout).thenApply(this);
   }
 }
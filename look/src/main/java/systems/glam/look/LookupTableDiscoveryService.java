@@ -2,14 +2,17 @@ package systems.glam.look;
 
 import software.sava.core.accounts.PublicKey;
 import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.core.rpc.Filter;
 import software.sava.core.tx.Instruction;
 import software.sava.core.tx.Transaction;
+import software.sava.rpc.json.http.client.SolanaRpcClient;
 import software.sava.services.core.remote.call.Call;
 import software.sava.services.core.request_capacity.context.CallContext;
-import software.sava.services.solana.alt.CachedAddressLookupTable;
 import software.sava.solana.programs.clients.NativeProgramClient;
 
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
@@ -17,6 +20,7 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
 
 import static systems.glam.look.LookupTableDiscoveryServiceImpl.*;
 
@@ -30,52 +34,53 @@ public interface LookupTableDiscoveryService extends Runnable {
     final var loadConfig = discoveryConfig.remoteLoadConfig();
     final var altProgram = nativeProgramClient.accounts().addressLookupTableProgram();
     final var partitions = new AtomicReferenceArray<AddressLookupTable[]>(NUM_PARTITIONS);
+    final var secondaryPartitions = new AtomicReferenceArray<AddressLookupTable[]>(NUM_PARTITIONS);
     final var rpcClients = serviceConfig.rpcClients();
     final var callWeights = serviceConfig.callWeights();
-    final var noAuthorityCall = Call.createCourteousCall(
-        rpcClients, rpcClient -> rpcClient.getProgramAccounts(
-            altProgram,
-            List.of(
-                ACTIVE_FILTER,
-                NO_AUTHORITY_FILTER
-            ),
-            CachedAddressLookupTable.FACTORY
-        ),
-        CallContext.createContext(callWeights.getProgramAccounts(), 0, false),
-        "rpcClient::getProgramAccounts"
-    );
     final var partitionedCallHandlers = new PartitionedLookupTableCallHandler[NUM_PARTITIONS];
     final var tableStats = TableStats.createStats(
         loadConfig.minUniqueAccountsPerTable(),
-        loadConfig.minTableEfficiency()
+        loadConfig.minTableEfficiency(),
+        loadConfig.minUniqueAccountsPerSecondaryTable()
     );
+    final boolean streamResponses = loadConfig.streamResponses();
+    final var tableDecodeCache = new TableDecodeCache();
+    final BiFunction<List<Filter>, LoadAttempt, Call<TableCollector>> callFactory = (filters, attempt) ->
+        Call.createCourteousCall(
+            rpcClients, rpcClient -> getProgramAccounts(
+                rpcClient,
+                altProgram,
+                filters,
+                tableStats,
+                tableDecodeCache,
+                streamResponses,
+                attempt
+            ),
+            CallContext.createContext(callWeights.getProgramAccounts(), 0, false),
+            "rpcClient::getProgramAccounts"
+        );
     partitionedCallHandlers[0] = new PartitionedLookupTableCallHandler(
         executorService,
-        noAuthorityCall,
-        tableStats,
+        List.of(
+            ACTIVE_FILTER,
+            NO_AUTHORITY_FILTER
+        ),
+        callFactory,
         0,
-        partitions
+        partitions,
+        secondaryPartitions
     );
     for (int i = 1; i < NUM_PARTITIONS; ++i) {
-      final var partitionFilter = PARTITION_FILTERS[i];
-      final var call = Call.createCourteousCall(
-          serviceConfig.rpcClients(), rpcClient -> rpcClient.getProgramAccounts(
-              altProgram,
-              List.of(
-                  ACTIVE_FILTER,
-                  partitionFilter
-              ),
-              CachedAddressLookupTable.FACTORY
-          ),
-          CallContext.createContext(callWeights.getProgramAccounts(), 0, false),
-          "rpcClient::getProgramAccounts"
-      );
       partitionedCallHandlers[i] = new PartitionedLookupTableCallHandler(
           executorService,
-          call,
-          tableStats,
+          List.of(
+              ACTIVE_FILTER,
+              PARTITION_FILTERS[i]
+          ),
+          callFactory,
           i,
-          partitions
+          partitions,
+          secondaryPartitions
       );
     }
 
@@ -94,19 +99,56 @@ public interface LookupTableDiscoveryService extends Runnable {
     final var queryConfig = discoveryConfig.queryConfig();
     return new LookupTableDiscoveryServiceImpl(
         executorService,
-        loadConfig.maxConcurrentRequests(),
+        AdaptiveConcurrencyLimit.createLimit(loadConfig, rpcClients.size()),
         tableStats,
         partitions,
+        secondaryPartitions,
         partitionedCallHandlers,
+        tableDecodeCache,
+        TableCorpusPruner.createPruner(loadConfig),
+        CorpusMemoryBudget.createBudget(loadConfig),
         altCacheDirectory,
         discoveryConfig.cacheOnly(),
         loadConfig.reloadDelay(),
+        loadConfig.frozenReloadDelay(),
+        loadConfig.callTimeout(),
+        loadConfig.maxRetries(),
+        loadConfig.retryBackoff(),
+        loadConfig.progressivePublishPartitions(),
+        loadConfig.progressivePublishDelay(),
         queryConfig.numPartitions(),
         queryConfig.topTablesPerPartition(),
-        queryConfig.startingMinScore()
+        queryConfig.startingMinScore(),
+        queryConfig.clusterTables(),
+        queryConfig.tablesPerBlock(),
+        AccountCoOccurrenceSketch.createSketch(discoveryConfig.proposalConfig()),
+        new ProgramTableIndex(queryConfig.maxProgramCandidates()),
+        TenantTableOverlays.createOverlays(rpcClients, callWeights, discoveryConfig.overlayConfig()),
+        DiscoverySessions.createSessions(discoveryConfig.sessionConfig()),
+        new SmallQueryIndex(queryConfig.maxSmallQueryTuples(), queryConfig.smallQueryRefreshDelay()),
+        TableUpdates.createUpdates(discoveryConfig.tableUpdateConfig(), altProgram),
+        HotTables.createHotTables(rpcClients, callWeights, discoveryConfig.hotTableConfig()),
+        PartitionSizes.createSizes(loadConfig.maxTablesPerCall(), altCacheDirectory)
     );
   }
 
+  private static CompletableFuture<TableCollector> getProgramAccounts(final SolanaRpcClient rpcClient,
+                                                                      final PublicKey altProgram,
+                                                                      final List<Filter> filters,
+                                                                      final TableStats tableStats,
+                                                                      final TableDecodeCache tableDecodeCache,
+                                                                      final boolean streamResponses,
+                                                                      final LoadAttempt attempt) {
+    if (streamResponses) {
+      return ProgramAccountsStream.getProgramAccounts(
+          rpcClient, altProgram, filters, tableDecodeCache, attempt, new TableCollector(tableStats, attempt)
+      );
+    } else {
+      return rpcClient.getProgramAccounts(altProgram, filters, tableDecodeCache)
+          .thenApply(accountInfos -> TableCollector.collect(tableStats, attempt, accountInfos));
+    }
+  }
+
   static Set<PublicKey> distinctAccounts(final Instruction[] instructions) {
     final var distinctAccounts = HashSet.<PublicKey>newHashSet(Transaction.MAX_ACCOUNTS);
     for (final var ix : instructions) {
@@ -135,6 +177,13 @@ public interface LookupTableDiscoveryService extends Runnable {
     return distinctAccounts;
   }
 
+  static PublicKey[] programIds(final Instruction[] instructions) {
+    return Arrays.stream(instructions)
+        .map(ix -> ix.programId().publicKey())
+        .distinct()
+        .toArray(PublicKey[]::new);
+  }
+
   static Set<PublicKey> distinctAccounts(final PublicKey[] accounts, final PublicKey[] programs) {
     final var distinctAccounts = HashSet.<PublicKey>newHashSet(accounts.length);
     //noinspection ManualArrayToCollectionCopy
@@ -157,21 +206,21 @@ public interface LookupTableDiscoveryService extends Runnable {
   AddressLookupTable[] discoverTables(final Transaction transaction);
 
   default AddressLookupTable[] discoverTables(final Instruction[] instructions) {
-    return discoverTables(distinctAccounts(instructions));
+    return discoverTables(distinctAccounts(instructions), programIds(instructions), null, null);
   }
 
   default AddressLookupTable[] discoverTables(final PublicKey[] accounts, final PublicKey[] programs) {
-    return discoverTables(distinctAccounts(accounts, programs));
+    return discoverTables(distinctAccounts(accounts, programs), programs, null, null);
   }
 
   AddressLookupTable[] discoverTablesWithReRank(final Set<PublicKey> distinctAccounts);
 
   default AddressLookupTable[] discoverTablesWithReRank(final Instruction[] instructions) {
-    return discoverTablesWithReRank(distinctAccounts(instructions));
+    return discoverTablesWithReRank(distinctAccounts(instructions), programIds(instructions), null, null);
   }
 
   default AddressLookupTable[] discoverTablesWithReRank(final PublicKey[] accounts, final PublicKey[] programs) {
-    return discoverTablesWithReRank(distinctAccounts(accounts, programs));
+    return discoverTablesWithReRank(distinctAccounts(accounts, programs), programs, null, null);
   }
 
   AddressLookupTable[] discoverTablesWithReRank(final Set<PublicKey> distinctAccounts,
@@ -179,29 +228,140 @@ public interface LookupTableDiscoveryService extends Runnable {
 
   default AddressLookupTable[] discoverTablesWithReRank(final Instruction[] instructions,
                                                         final AddressLookupTable[] include) {
-    return discoverTablesWithReRank(distinctAccounts(instructions), include);
+    return discoverTablesWithReRank(distinctAccounts(instructions), programIds(instructions), include, null);
   }
 
   default AddressLookupTable[] discoverTablesWithReRank(final PublicKey[] accounts,
                                                         final PublicKey[] programs,
                                                         final AddressLookupTable[] include) {
-    return discoverTablesWithReRank(distinctAccounts(accounts, programs), include);
+    return discoverTablesWithReRank(distinctAccounts(accounts, programs), programs, include, null);
+  }
+
+  default AddressLookupTable[] discoverTablesWithReRank(final Set<PublicKey> distinctAccounts,
+                                                        final AddressLookupTable[] include,
+                                                        final QueryBudget budget) {
+    return discoverTablesWithReRank(distinctAccounts, null, include, budget);
+  }
+
+  /**
+   * @param programs Invoked programs, used to seed scoring with tables which were useful for previous queries
+   *                 invoking the same programs. May be null.
+   */
+  AddressLookupTable[] discoverTablesWithReRank(final Set<PublicKey> distinctAccounts,
+                                                final PublicKey[] programs,
+                                                final AddressLookupTable[] include,
+                                                final QueryBudget budget);
+
+  default AddressLookupTable[] discoverTablesWithReRank(final Instruction[] instructions,
+                                                        final AddressLookupTable[] include,
+                                                        final QueryBudget budget) {
+    return discoverTablesWithReRank(distinctAccounts(instructions), programIds(instructions), include, budget);
+  }
+
+  default AddressLookupTable[] discoverTablesWithReRank(final PublicKey[] accounts,
+                                                        final PublicKey[] programs,
+                                                        final QueryBudget budget) {
+    return discoverTablesWithReRank(distinctAccounts(accounts, programs), programs, null, budget);
   }
 
   AddressLookupTable[] discoverTables(final Set<PublicKey> distinctAccounts, final AddressLookupTable[] include);
 
   default AddressLookupTable[] discoverTables(final Instruction[] instructions, final AddressLookupTable[] include) {
-    return discoverTables(distinctAccounts(instructions), include);
+    return discoverTables(distinctAccounts(instructions), programIds(instructions), include, null);
   }
 
   default AddressLookupTable[] discoverTables(final PublicKey[] accounts,
                                               final PublicKey[] programs,
                                               final AddressLookupTable[] include) {
-    return discoverTables(distinctAccounts(accounts, programs), include);
+    return discoverTables(distinctAccounts(accounts, programs), programs, include, null);
+  }
+
+  default AddressLookupTable[] discoverTables(final Set<PublicKey> distinctAccounts,
+                                              final AddressLookupTable[] include,
+                                              final QueryBudget budget) {
+    return discoverTables(distinctAccounts, null, include, budget);
+  }
+
+  /**
+   * @param programs Invoked programs, used to seed scoring with tables which were useful for previous queries
+   *                 invoking the same programs. May be null.
+   */
+  AddressLookupTable[] discoverTables(final Set<PublicKey> distinctAccounts,
+                                      final PublicKey[] programs,
+                                      final AddressLookupTable[] include,
+                                      final QueryBudget budget);
+
+  default AddressLookupTable[] discoverTables(final Instruction[] instructions,
+                                              final AddressLookupTable[] include,
+                                              final QueryBudget budget) {
+    return discoverTables(distinctAccounts(instructions), programIds(instructions), include, budget);
+  }
+
+  default AddressLookupTable[] discoverTables(final PublicKey[] accounts,
+                                              final PublicKey[] programs,
+                                              final QueryBudget budget) {
+    return discoverTables(distinctAccounts(accounts, programs), programs, null, budget);
   }
 
   AddressLookupTable scanForTable(final PublicKey publicKey);
 
+  AccountCoOccurrenceSketch coOccurrenceSketch();
+
+  TenantTableOverlays tenantOverlays();
+
+  CorpusMemoryBudget corpusBudget();
+
+  RemoteLoadMetrics remoteLoadMetrics();
+
+  /**
+   * @return The ratio of partitions included in the served corpus, less than one while the first remote load of a cold
+   * server is still in progress.
+   */
+  double corpusCompleteness();
+
+  /**
+   * Streams the tables of the served partitions to count table sizes and account occurrences.
+   *
+   * @param numTopAccounts The number of most occurring accounts to resolve.
+   */
+  CorpusAnalytics analyzeCorpus(final int numTopAccounts);
+
+  DiscoverySessions discoverySessions();
+
+  /**
+   * @return The id of a new discovery session.
+   * @throws IllegalStateException if sessions are disabled or the maximum number of sessions has been reached.
+   */
+  String createSession();
+
+  /**
+   * Applies the accounts added to, and removed from, the session's transaction, only rescoring the tables which
+   * contain them.
+   *
+   * @return The tables chosen for all accounts of the session, or null if the session does not exist or has expired.
+   * @throws IllegalArgumentException if the session would exceed the maximum number of transaction accounts.
+   */
+  AddressLookupTable[] updateSession(final String sessionId,
+                                     final Collection<PublicKey> added,
+                                     final Collection<PublicKey> removed);
+
+  /**
+   * Periodically recomputes the precomputed answers for small queries from recent traffic.
+   */
+  Runnable smallQueryIndex();
+
+  /**
+   * Applies streamed lookup table account changes to the corpus between full loads, once the corpus has been
+   * initialized. Returns immediately if no update stream is configured.
+   */
+  Runnable tableUpdates();
+
+  /**
+   * Periodically re-fetches the tables recently returned by queries and applies their changes, once the corpus has
+   * been initialized. Returns immediately if hot table refreshes are disabled.
+   */
+  Runnable hotTables();
+
   CompletableFuture<Void> initialized();
 
   boolean loadCache();
@@ -5,8 +5,8 @@ import software.sava.core.accounts.lookup.AddressLookupTable;
 import software.sava.core.accounts.sysvar.Clock;
 import software.sava.core.encoding.ByteUtil;
 import software.sava.core.rpc.Filter;
+import software.sava.core.tx.Instruction;
 import software.sava.core.tx.Transaction;
-import software.sava.services.solana.alt.CachedAddressLookupTable;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
@@ -15,23 +15,36 @@ import java.lang.invoke.VarHandle;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.lang.System.Logger.Level.*;
-import static java.nio.file.StandardOpenOption.*;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static software.sava.core.accounts.lookup.AddressLookupTable.AUTHORITY_OPTION_OFFSET;
 import static software.sava.core.accounts.lookup.AddressLookupTable.DEACTIVATION_SLOT_OFFSET;
 import static systems.glam.look.LookupTableCallHandler.BY_UNIQUE_ACCOUNTS_REVERSED;
+import static systems.glam.look.PartitionedLookupTableCallHandler.NUM_SUB_PARTITIONS;
 
 final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryService {
 
@@ -41,6 +54,7 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
   static final Filter ACTIVE_FILTER;
   static final Filter NO_AUTHORITY_FILTER = Filter.createMemCompFilter(AUTHORITY_OPTION_OFFSET, new byte[]{0});
   static final Filter[] PARTITION_FILTERS;
+  static final int BUDGETED_WINDOW_SIZE = 512;
 
   private static final VarHandle ALL_TABLES;
 
@@ -64,63 +78,346 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
     }
   }
 
-  private static Path resolvePartitionCacheFile(final Path altCacheDirectory, final int partition) {
+  static Path resolvePartitionCacheFile(final Path altCacheDirectory, final int partition) {
     return altCacheDirectory.resolve(partition + ".dat");
   }
 
+  private static Path resolveSecondaryCacheFile(final Path altCacheDirectory, final int partition) {
+    return altCacheDirectory.resolve(partition + ".secondary.dat");
+  }
+
   private final ExecutorService executorService;
   private final CompletableFuture<Void> initialized;
   private final CompletableFuture<Void> remoteLoad;
-  private final int maxConcurrentRequests;
+  private final AdaptiveConcurrencyLimit concurrencyLimit;
   private final TableStats tableStats;
   final AtomicReferenceArray<AddressLookupTable[]> partitions;
+  private final AtomicReferenceArray<AddressLookupTable[]> secondaryPartitions;
   private final PartitionedLookupTableCallHandler[] partitionedCallHandlers;
+  private final TableDecodeCache tableDecodeCache;
+  private final TableCorpusPruner corpusPruner;
+  private final CorpusMemoryBudget corpusBudget;
   private final Path altCacheDirectory;
   private final boolean cacheOnly;
   private final Duration reloadDelay;
+  private final Duration frozenReloadDelay;
+  private final Duration callTimeout;
+  private final int maxRetries;
+  private final Duration retryBackoff;
+  private final int progressivePublishPartitions;
+  private final Duration progressivePublishDelay;
+  private final RemoteLoadMetrics remoteLoadMetrics;
   // Query
   private final int numPartitionsPerQuery;
   private final int topTablesPerPartition;
   private final int startingMinScore;
+  private final boolean clusterTables;
+  private final int tablesPerBlock;
+  private final AccountCoOccurrenceSketch coOccurrenceSketch;
+  private final ProgramTableIndex programTableIndex;
+  private final TenantTableOverlays tenantOverlays;
+  private final DiscoverySessions discoverySessions;
+  private final SmallQueryIndex smallQueryIndex;
+  private final TableUpdates tableUpdates;
+  private final HotTables hotTables;
+  private final PartitionSizes partitionSizes;
   volatile AddressLookupTable[] allTables;
+  private volatile double corpusCompleteness;
+  private volatile long frozenLoadTimestamp;
+  private volatile SecondaryTableIndex secondaryTables;
+  private volatile TableBlockIndex blockIndex;
+  // Table updates applied to the partitions but not yet to the published corpus, guarded by the partitions.
+  private final HashMap<PublicKey, AddressLookupTable> unpublishedChanges;
+  private long updatesPublishedTimestamp;
 
   LookupTableDiscoveryServiceImpl(final ExecutorService executorService,
-                                  final int maxConcurrentRequests,
+                                  final AdaptiveConcurrencyLimit concurrencyLimit,
                                   final TableStats tableStats,
                                   final AtomicReferenceArray<AddressLookupTable[]> partitions,
+                                  final AtomicReferenceArray<AddressLookupTable[]> secondaryPartitions,
                                   final PartitionedLookupTableCallHandler[] partitionedCallHandlers,
+                                  final TableDecodeCache tableDecodeCache,
+                                  final TableCorpusPruner corpusPruner,
+                                  final CorpusMemoryBudget corpusBudget,
                                   final Path altCacheDirectory,
                                   final boolean cacheOnly,
                                   final Duration reloadDelay,
+                                  final Duration frozenReloadDelay,
+                                  final Duration callTimeout,
+                                  final int maxRetries,
+                                  final Duration retryBackoff,
+                                  final int progressivePublishPartitions,
+                                  final Duration progressivePublishDelay,
                                   final int numPartitionsPerQuery,
                                   final int topTablesPerPartition,
-                                  final int startingMinScore) {
+                                  final int startingMinScore,
+                                  final boolean clusterTables,
+                                  final int tablesPerBlock,
+                                  final AccountCoOccurrenceSketch coOccurrenceSketch,
+                                  final ProgramTableIndex programTableIndex,
+                                  final TenantTableOverlays tenantOverlays,
+                                  final DiscoverySessions discoverySessions,
+                                  final SmallQueryIndex smallQueryIndex,
+                                  final TableUpdates tableUpdates,
+                                  final HotTables hotTables,
+                                  final PartitionSizes partitionSizes) {
     this.executorService = executorService;
     this.cacheOnly = cacheOnly;
     this.initialized = new CompletableFuture<>();
     this.remoteLoad = new CompletableFuture<>();
-    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.concurrencyLimit = concurrencyLimit;
     this.tableStats = tableStats;
     this.partitions = partitions;
+    this.secondaryPartitions = secondaryPartitions;
     this.partitionedCallHandlers = partitionedCallHandlers;
+    this.tableDecodeCache = tableDecodeCache;
+    this.corpusPruner = corpusPruner;
+    this.corpusBudget = corpusBudget;
     this.altCacheDirectory = altCacheDirectory;
     this.reloadDelay = reloadDelay;
+    this.frozenReloadDelay = frozenReloadDelay;
+    this.callTimeout = callTimeout;
+    this.maxRetries = maxRetries;
+    this.retryBackoff = retryBackoff;
+    this.progressivePublishPartitions = progressivePublishPartitions;
+    this.progressivePublishDelay = progressivePublishDelay;
+    this.remoteLoadMetrics = new RemoteLoadMetrics();
     this.numPartitionsPerQuery = numPartitionsPerQuery;
     this.topTablesPerPartition = topTablesPerPartition;
     this.startingMinScore = startingMinScore;
+    this.clusterTables = clusterTables;
+    this.tablesPerBlock = tablesPerBlock;
+    this.coOccurrenceSketch = coOccurrenceSketch;
+    this.programTableIndex = programTableIndex;
+    this.tenantOverlays = tenantOverlays;
+    this.discoverySessions = discoverySessions;
+    this.smallQueryIndex = smallQueryIndex;
+    this.tableUpdates = tableUpdates;
+    this.hotTables = hotTables;
+    this.partitionSizes = partitionSizes;
     this.allTables = new AddressLookupTable[0];
+    this.secondaryTables = SecondaryTableIndex.EMPTY;
+    this.blockIndex = TableBlockIndex.EMPTY;
+    this.unpublishedChanges = new HashMap<>();
   }
 
-  private void joinPartitions() {
-    this.allTables = IntStream.range(0, NUM_PARTITIONS)
-        .mapToObj(partitions::getOpaque)
+  private void joinSecondaryPartitions() {
+    final var secondaryTables = IntStream.range(0, NUM_PARTITIONS)
+        .mapToObj(secondaryPartitions::getOpaque)
+        .filter(Objects::nonNull)
         .<AddressLookupTable>mapMulti((tables, downstream) -> {
           for (final var table : tables) {
             downstream.accept(table);
           }
         })
-        .sorted(BY_UNIQUE_ACCOUNTS_REVERSED)
         .toArray(AddressLookupTable[]::new);
+    this.secondaryTables = SecondaryTableIndex.createIndex(secondaryTables);
+  }
+
+  // Evicted tables are also dropped from their partitions so that they can be collected, the partition cache files
+  // still contain them.
+  private AddressLookupTable[] evictTables(final AddressLookupTable[] sortedTables) {
+    final var retained = corpusBudget.evict(sortedTables);
+    if (retained.length < sortedTables.length) {
+      final var retainedTables = Collections.newSetFromMap(
+          new IdentityHashMap<AddressLookupTable, Boolean>(retained.length)
+      );
+      Collections.addAll(retainedTables, retained);
+      for (int i = 0; i < NUM_PARTITIONS; ++i) {
+        final var tables = partitions.getOpaque(i);
+        if (tables != null) {
+          partitions.setOpaque(i, Arrays.stream(tables)
+              .filter(retainedTables::contains)
+              .toArray(AddressLookupTable[]::new));
+        }
+      }
+    }
+    return retained;
+  }
+
+  void publishTables(final AddressLookupTable[] sortedTables) {
+    final var tables = clusterTables ? TableBlockIndex.clusterTables(sortedTables) : sortedTables;
+    this.blockIndex = TableBlockIndex.createIndex(tables, tablesPerBlock);
+    this.allTables = tables;
+    smallQueryIndex.rebuild(tables);
+    discoverySessions.indexTables(tables);
+    programTableIndex.retainPublished(tables);
+    hotTables.retainPublished(tables);
+  }
+
+  private static AddressLookupTable[][] partitionTables(final AtomicReferenceArray<AddressLookupTable[]> partitions) {
+    return IntStream.range(0, NUM_PARTITIONS)
+        .mapToObj(partitions::getOpaque)
+        .map(tables -> tables == null ? new AddressLookupTable[0] : tables)
+        .toArray(AddressLookupTable[][]::new);
+  }
+
+  private void joinPartitions() {
+    final long loadTimestamp = System.currentTimeMillis();
+    final AddressLookupTable[][] partitionTables;
+    final AddressLookupTable[][] secondaryPartitionTables;
+    final AddressLookupTable[] prunedTables;
+    // Joined while holding the partitions, so that table updates applied meanwhile are not overwritten.
+    synchronized (partitions) {
+      partitionTables = partitionTables(partitions);
+      secondaryPartitionTables = partitionTables(secondaryPartitions);
+      final var sortedTables = Arrays.stream(partitionTables)
+          .<AddressLookupTable>mapMulti((tables, downstream) -> {
+            for (final var table : tables) {
+              downstream.accept(table);
+            }
+          })
+          .sorted(BY_UNIQUE_ACCOUNTS_REVERSED)
+          .toArray(AddressLookupTable[]::new);
+      prunedTables = corpusPruner.prune(sortedTables);
+      publishTables(evictTables(prunedTables));
+      unpublishedChanges.clear();
+      corpusCompleteness = 1;
+    }
+
+    if (altCacheDirectory != null) {
+      final var snapshotFile = CorpusSnapshot.resolveSnapshotFile(altCacheDirectory);
+      try {
+        CorpusSnapshot.write(snapshotFile, loadTimestamp, partitionTables, secondaryPartitionTables, prunedTables,
+            corpusPruner);
+      } catch (final IOException | RuntimeException e) {
+        logger.log(WARNING, "Failed to write lookup table snapshot " + snapshotFile, e);
+      }
+    }
+  }
+
+  static int partition(final AddressLookupTable table) {
+    final var authority = table.authority();
+    if (authority == null) {
+      return 0;
+    } else {
+      final int partition = authority.toByteArray()[0] & 0xFF;
+      return partition == 0 ? NUM_PARTITIONS - 1 : partition;
+    }
+  }
+
+  /**
+   * Removes changed tables from tables sorted by their number of unique accounts, and merges in the inserted tables
+   * without re-sorting.
+   *
+   * @return tables if unchanged.
+   */
+  static AddressLookupTable[] patchTables(final AddressLookupTable[] tables,
+                                          final Map<PublicKey, AddressLookupTable> changes,
+                                          final List<AddressLookupTable> insert) {
+    int numRetained = 0;
+    if (tables != null) {
+      for (final var table : tables) {
+        if (!changes.containsKey(table.address())) {
+          ++numRetained;
+        }
+      }
+    }
+    final int numTables = tables == null ? 0 : tables.length;
+    if (numRetained == numTables && (insert == null || insert.isEmpty())) {
+      return tables;
+    }
+    final var inserted = insert == null ? new AddressLookupTable[0] : insert.toArray(AddressLookupTable[]::new);
+    Arrays.sort(inserted, BY_UNIQUE_ACCOUNTS_REVERSED);
+    final var patched = new AddressLookupTable[numRetained + inserted.length];
+    for (int i = 0, j = 0, p = 0; p < patched.length; ) {
+      if (i < numTables && changes.containsKey(tables[i].address())) {
+        ++i;
+      } else if (j == inserted.length
+          || (i < numTables && BY_UNIQUE_ACCOUNTS_REVERSED.compare(tables[i], inserted[j]) <= 0)) {
+        patched[p++] = tables[i++];
+      } else {
+        patched[p++] = inserted[j++];
+      }
+    }
+    return patched;
+  }
+
+  private static void applyPartitionChanges(final AtomicReferenceArray<AddressLookupTable[]> partitions,
+                                            final Map<PublicKey, AddressLookupTable> changes,
+                                            final Map<Integer, List<AddressLookupTable>> inserted) {
+    for (int i = 0; i < NUM_PARTITIONS; ++i) {
+      final var tables = partitions.get(i);
+      final var patched = patchTables(tables, changes, inserted.get(i));
+      if (patched != tables) {
+        partitions.set(i, patched);
+      }
+    }
+  }
+
+  private long updatePublishDelayMillis() {
+    return tableUpdates == null ? 0 : tableUpdates.publishDelay().toMillis();
+  }
+
+  // Changed tables are removed from every partition, as their authority may have changed, and re-inserted if they are
+  // still active and pass the table filters. Partitions are patched immediately, while the corpus and its indexes are
+  // re-published at most once per update publish delay, so changes may wait for a later batch or the next full load.
+  // Pruning and the memory budget are re-applied by the next full load.
+  void applyTableUpdates(final Map<PublicKey, AddressLookupTable> changes) {
+    final var inserted = new HashMap<Integer, List<AddressLookupTable>>();
+    final var insertedSecondary = new HashMap<Integer, List<AddressLookupTable>>();
+    for (final var table : changes.values()) {
+      if (table != null) {
+        if (tableStats.testChanged(table)) {
+          inserted.computeIfAbsent(partition(table), _ -> new ArrayList<>()).add(table);
+        } else if (tableStats.testChangedSecondary(table)) {
+          insertedSecondary.computeIfAbsent(partition(table), _ -> new ArrayList<>()).add(table);
+        }
+      }
+    }
+    synchronized (partitions) {
+      applyPartitionChanges(partitions, changes, inserted);
+      applyPartitionChanges(secondaryPartitions, changes, insertedSecondary);
+      unpublishedChanges.putAll(changes);
+      final long now = System.currentTimeMillis();
+      if (now - updatesPublishedTimestamp >= updatePublishDelayMillis()) {
+        final var insertedTables = new ArrayList<AddressLookupTable>();
+        for (final var table : unpublishedChanges.values()) {
+          if (table != null && tableStats.testChanged(table)) {
+            insertedTables.add(table);
+          }
+        }
+        final var corpus = clusterTables
+            ? Arrays.stream(allTables).sorted(BY_UNIQUE_ACCOUNTS_REVERSED).toArray(AddressLookupTable[]::new)
+            : allTables;
+        publishTables(patchTables(corpus, unpublishedChanges, insertedTables));
+        joinSecondaryPartitions();
+        unpublishedChanges.clear();
+        updatesPublishedTimestamp = now;
+      }
+    }
+  }
+
+  private boolean loadSnapshot(final long start) {
+    final var snapshotFile = CorpusSnapshot.resolveSnapshotFile(altCacheDirectory);
+    final CorpusSnapshot snapshot;
+    try {
+      snapshot = CorpusSnapshot.read(snapshotFile, NUM_PARTITIONS, corpusPruner);
+    } catch (final IOException e) {
+      logger.log(WARNING, "Ignoring unreadable lookup table snapshot " + snapshotFile, e);
+      return false;
+    }
+    if (snapshot == null || snapshot.sortedTables().length == 0) {
+      return false;
+    }
+    for (int i = 0; i < NUM_PARTITIONS; ++i) {
+      partitions.set(i, snapshot.partitions()[i]);
+      secondaryPartitions.set(i, snapshot.secondaryPartitions()[i]);
+    }
+    // The snapshot order is already pruned, with the current prune settings.
+    publishTables(evictTables(snapshot.sortedTables()));
+    joinSecondaryPartitions();
+    corpusCompleteness = 1;
+    initialized.complete(null);
+
+    logger.log(INFO, String.format("""
+        
+        Loaded %d tables and %d secondary tables from the Lookup Table Snapshot of %s in %s.
+        """, allTables.length, secondaryTables.numTables(),
+        Instant.ofEpochMilli(snapshot.loadTimestamp()),
+        Duration.ofMillis(System.currentTimeMillis() - start)
+    ));
+    return true;
   }
 
   @Override
@@ -138,6 +435,15 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
                                           final PublicKey[] accounts,
                                           final int minScorePerTable,
                                           final int limit) {
+    return rankTables(partition, null, from, to, accounts, minScorePerTable, limit);
+  }
+
+  private static ScoredTable[] rankTables(final AddressLookupTable[] partition,
+                                          final TableBlockIndex.BlockQuery blockQuery,
+                                          final int from, final int to,
+                                          final PublicKey[] accounts,
+                                          final int minScorePerTable,
+                                          final int limit) {
     final var rankedTables = new ScoredTable[limit];
 
     AddressLookupTable table;
@@ -147,12 +453,19 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
     int added = 0;
 
     for (; i < to; ++i) {
+      if (blockQuery != null && (i = blockQuery.nextCandidate(i, to, minScorePerTable)) == to) {
+        break;
+      }
       table = partition[i];
+      if (table.numUniqueAccounts() < minScorePerTable) {
+        continue;
+      }
       score = 0;
-      //noinspection ForLoopReplaceableByForEach
-      for (int a = 0; a < accounts.length; ++a) {
+      for (int a = 0, maxScore = accounts.length; a < accounts.length; ++a) {
         if (table.containKey(accounts[a])) {
           ++score;
+        } else if (--maxScore < minScorePerTable) {
+          break;
         }
       }
       if (score >= minScorePerTable) {
@@ -176,12 +489,19 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
       Arrays.sort(rankedTables);
       final int removeIndex = limit - 1;
       for (int r; i < to; ++i) {
+        if (blockQuery != null && (i = blockQuery.nextCandidate(i, to, minScore + 1)) == to) {
+          break;
+        }
         table = partition[i];
+        if (table.numUniqueAccounts() <= minScore) {
+          continue;
+        }
         score = 0;
-        //noinspection ForLoopReplaceableByForEach
-        for (int a = 0; a < accounts.length; ++a) {
+        for (int a = 0, maxScore = accounts.length; a < accounts.length; ++a) {
           if (table.containKey(accounts[a])) {
             ++score;
+          } else if (--maxScore <= minScore) {
+            break;
           }
         }
         if (score > minScore) {
@@ -207,34 +527,137 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
     }
   }
 
-  private AddressLookupTable[] scoreAndJoinTables(final PublicKey[] accountsArray) {
-    final var allTables = (AddressLookupTable[]) ALL_TABLES.getOpaque(this);
+  private static ScoredTable[] mergeRankedTables(final ScoredTable[] a, final ScoredTable[] b, final int limit) {
+    final var merged = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, merged, a.length, b.length);
+    Arrays.sort(merged);
+    return merged.length > limit ? Arrays.copyOfRange(merged, 0, limit) : merged;
+  }
+
+  private static boolean isExpired(final QueryBudget budget) {
+    return budget != null && budget.expired();
+  }
+
+  private Stream<ScoredTable> scoreTables(final AddressLookupTable[] allTables,
+                                          final PublicKey[] accountsArray,
+                                          final int minScore,
+                                          final QueryBudget budget) {
     final int numTables = allTables.length;
-    final int windowSize = Math.ceilDiv(numTables, numPartitionsPerQuery);
+    final var blockIndex = this.blockIndex;
+    final var blockQuery = blockIndex.indexes(allTables) ? blockIndex.createQuery(accountsArray) : null;
+    final Stream<ScoredTable[]> rankedWindows;
+    if (budget == null) {
+      final int windowSize = Math.ceilDiv(numTables, numPartitionsPerQuery);
+      rankedWindows = IntStream.range(0, numPartitionsPerQuery).parallel().mapToObj(i -> {
+        final int from = i * windowSize;
+        return rankTables(
+            allTables,
+            blockQuery,
+            from, Math.min(from + windowSize, numTables),
+            accountsArray,
+            minScore,
+            topTablesPerPartition
+        );
+      });
+    } else {
+      // Tables are sorted, or clustered within tiers, by their number of unique accounts, so the largest tables are
+      // claimed first.
+      final int numWindows = Math.ceilDiv(numTables, BUDGETED_WINDOW_SIZE);
+      final var nextWindow = new AtomicInteger();
+      final var scanned = new LongAdder();
+      final var rankedTablesList = IntStream.range(0, numPartitionsPerQuery).parallel().mapToObj(_ -> {
+        ScoredTable[] topTables = null;
+        for (int window; (window = nextWindow.getAndIncrement()) < numWindows && (window == 0 || !budget.expired()); ) {
+          final int from = window * BUDGETED_WINDOW_SIZE;
+          final int to = Math.min(from + BUDGETED_WINDOW_SIZE, numTables);
+          final var rankedTables = rankTables(
+              allTables,
+              blockQuery,
+              from, to,
+              accountsArray,
+              minScore,
+              topTablesPerPartition
+          );
+          scanned.add(to - from);
+          if (rankedTables != null) {
+            topTables = topTables == null
+                ? rankedTables
+                : mergeRankedTables(topTables, rankedTables, topTablesPerPartition);
+          }
+        }
+        return topTables;
+      }).toList();
+      budget.recordCoverage(scanned.sum(), numTables);
+      rankedWindows = rankedTablesList.stream();
+    }
+    return rankedWindows.mapMulti((rankedTables, downstream) -> {
+      if (rankedTables != null) {
+        for (final var scoredTable : rankedTables) {
+          downstream.accept(scoredTable);
+        }
+      }
+    });
+  }
+
+  /**
+   * @param seeds Selected program seed tables, sorted by score. The weakest of them raises the minimum score of the
+   *              scan, but they do not count as found, so the threshold is still halved while the scan finds nothing.
+   */
+  private AddressLookupTable[] scoreAndJoinTables(final PublicKey[] accountsArray,
+                                                  final ScoredTable[] include,
+                                                  final ScoredTable[] seeds,
+                                                  final int startingMinScore,
+                                                  final QueryBudget budget) {
+    final var allTables = (AddressLookupTable[]) ALL_TABLES.getOpaque(this);
+    final int seededMinScore = seeds == null || seeds.length == 0
+        ? startingMinScore
+        : Math.max(startingMinScore, seeds[seeds.length - 1].score());
+    for (int minScore = seededMinScore; ; minScore = Math.max(2, minScore >> 1)) {
+      final var scannedTables = scoreTables(allTables, accountsArray, minScore, budget).toArray(ScoredTable[]::new);
+      if (scannedTables.length > 0 || include != null || minScore == 2 || isExpired(budget)) {
+        return Stream.of(include, seeds, scannedTables)
+            .filter(Objects::nonNull)
+            .flatMap(Arrays::stream)
+            .sorted()
+            .map(ScoredTable::table)
+            .toArray(AddressLookupTable[]::new);
+      }
+    }
+  }
+
+  private AddressLookupTable topTable(final PublicKey[] accountsArray,
+                                      final ScoredTable[] include,
+                                      final int startingMinScore,
+                                      final QueryBudget budget) {
+    final var allTables = (AddressLookupTable[]) ALL_TABLES.getOpaque(this);
     for (int minScore = startingMinScore; ; minScore = Math.max(2, minScore >> 1)) {
-      final int _minScore = minScore;
-      final var scoredTables = IntStream.range(0, numPartitionsPerQuery).parallel().mapToObj(i -> {
-            final int from = i * windowSize;
-            return rankTables(
-                allTables,
-                from, Math.min(i + windowSize, numTables),
-                accountsArray,
-                _minScore,
-                topTablesPerPartition
-            );
-          })
-          .<ScoredTable>mapMulti((_scoredTables, downstream) -> {
-            if (_scoredTables != null) {
-              for (final var scoredTable : _scoredTables) {
-                downstream.accept(scoredTable);
-              }
-            }
-          })
-          .sorted()
-          .map(ScoredTable::table)
-          .toArray(AddressLookupTable[]::new);
-      if (scoredTables.length > 0 || _minScore == 2) {
-        return scoredTables;
+      final var scoredTablesStream = scoreTables(allTables, accountsArray, minScore, budget);
+      final var topTable = (include == null ? scoredTablesStream : Stream.concat(Arrays.stream(include), scoredTablesStream))
+          .min(ScoredTable::compareTo)
+          .orElse(null);
+      if (topTable != null) {
+        return topTable.table();
+      } else if (minScore == 2 || isExpired(budget)) {
+        return null;
+      }
+    }
+  }
+
+  private static ScoredTable[] scoreIncludedTables(final PublicKey[] accountsArray,
+                                                   final AddressLookupTable[] include,
+                                                   final int startingMinScore) {
+    for (int minScore = startingMinScore; ; minScore = Math.max(2, minScore >> 1)) {
+      final var scoredIncludedTables = rankTables(
+          include,
+          0, include.length,
+          accountsArray,
+          minScore,
+          include.length
+      );
+      if (scoredIncludedTables != null) {
+        return scoredIncludedTables;
+      } else if (minScore == 2) {
+        return null;
       }
     }
   }
@@ -289,145 +712,264 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
   }
 
   @Override
-  public AddressLookupTable[] discoverTables(final Set<PublicKey> distinctAccounts) {
-    final var accountsArray = distinctAccounts.toArray(PublicKey[]::new);
-    final var scoredTables = scoreAndJoinTables(accountsArray);
-    return discoverTables(accountsArray, scoredTables);
+  public AccountCoOccurrenceSketch coOccurrenceSketch() {
+    return coOccurrenceSketch;
   }
 
-  private AddressLookupTable topTable(final PublicKey[] accountsArray, final int startingMinScore) {
-    final var allTables = (AddressLookupTable[]) ALL_TABLES.getOpaque(this);
-    final int numTables = allTables.length;
-    final int windowSize = Math.ceilDiv(numTables, numPartitionsPerQuery);
-    for (int minScore = startingMinScore; ; minScore = Math.max(2, minScore >> 1)) {
-      final int _minScore = minScore;
-      final var topTable = IntStream.range(0, numPartitionsPerQuery).parallel().mapToObj(i -> {
-            final int from = i * windowSize;
-            return rankTables(
-                allTables,
-                from, Math.min(from + windowSize, numTables),
-                accountsArray,
-                _minScore,
-                topTablesPerPartition
-            );
-          })
-          .<ScoredTable>mapMulti((_scoredTables, downstream) -> {
-            if (_scoredTables != null) {
-              for (final var scoredTable : _scoredTables) {
-                downstream.accept(scoredTable);
-              }
-            }
-          })
-          .min(ScoredTable::compareTo)
-          .orElse(null);
-      if (topTable != null) {
-        return topTable.table();
-      } else if (_minScore == 2) {
-        return null;
+  @Override
+  public TenantTableOverlays tenantOverlays() {
+    return tenantOverlays;
+  }
+
+  @Override
+  public CorpusMemoryBudget corpusBudget() {
+    return corpusBudget;
+  }
+
+  @Override
+  public RemoteLoadMetrics remoteLoadMetrics() {
+    return remoteLoadMetrics;
+  }
+
+  @Override
+  public double corpusCompleteness() {
+    return corpusCompleteness;
+  }
+
+  @Override
+  public CorpusAnalytics analyzeCorpus(final int numTopAccounts) {
+    return CorpusAnalytics.analyze(NUM_PARTITIONS, numTopAccounts, partitions::get);
+  }
+
+  @Override
+  public DiscoverySessions discoverySessions() {
+    return discoverySessions;
+  }
+
+  @Override
+  public String createSession() {
+    return discoverySessions.createSession();
+  }
+
+  @Override
+  public AddressLookupTable[] updateSession(final String sessionId,
+                                            final Collection<PublicKey> added,
+                                            final Collection<PublicKey> removed) {
+    final var session = discoverySessions.session(sessionId);
+    if (session == null) {
+      return null;
+    }
+    synchronized (session) {
+      if (!session.update(added, removed)) {
+        return session.tables();
       }
+      final var accountsArray = session.accounts();
+      final var scoredTables = session.scoredTables(numPartitionsPerQuery * topTablesPerPartition);
+      final var tables = secondaryTables.cover(accountsArray, discoverTables(accountsArray, scoredTables));
+      observeSelection(accountsArray, null, tables, null);
+      session.tables(tables == null ? new AddressLookupTable[0] : tables);
+      return session.tables();
     }
   }
 
   @Override
-  public AddressLookupTable[] discoverTablesWithReRank(final Set<PublicKey> distinctAccounts) {
-    final var tables = new AddressLookupTable[Transaction.MAX_ACCOUNTS >> 1];
-    int startingMinScore = this.startingMinScore;
-    for (int t = 0; ; ++t) {
-      final var accountsArray = distinctAccounts.toArray(PublicKey[]::new);
-      final var topTable = topTable(accountsArray, startingMinScore);
-      if (topTable == null) {
-        return t == 0 ? null : Arrays.copyOfRange(tables, 0, t);
-      } else {
-        tables[t] = topTable;
-        final var iterator = distinctAccounts.iterator();
-        startingMinScore = 0;
-        do {
-          final var account = iterator.next();
-          if (topTable.containKey(account)) {
-            iterator.remove();
-            ++startingMinScore;
+  public Runnable smallQueryIndex() {
+    return smallQueryIndex;
+  }
+
+  @Override
+  public Runnable tableUpdates() {
+    return () -> {
+      initialized.join();
+      tableUpdates.run(this::applyTableUpdates);
+    };
+  }
+
+  @Override
+  public Runnable hotTables() {
+    return () -> {
+      initialized.join();
+      hotTables.run(this::applyTableUpdates);
+    };
+  }
+
+  // Only corpus tables are indexed by program, as tenant overlay and provided tables are private to the query and
+  // secondary tables are not part of the published corpus.
+  private static AddressLookupTable[] corpusTables(final AddressLookupTable[] tables,
+                                                   final AddressLookupTable[] include) {
+    if (tables == null) {
+      return null;
+    }
+    return Arrays.stream(tables)
+        .filter(table -> table instanceof LazyLookupTable)
+        .filter(table -> {
+          if (include != null) {
+            for (final var included : include) {
+              if (included.address().equals(table.address())) {
+                return false;
+              }
+            }
           }
-        } while (iterator.hasNext());
-        if (distinctAccounts.size() < 2) {
-          return Arrays.copyOfRange(tables, 0, t);
-        }
+          return true;
+        })
+        .toArray(AddressLookupTable[]::new);
+  }
+
+  /**
+   * @param corpusTables The selected tables before secondary tables were added, excluding the included tables.
+   */
+  private void observeSelection(final PublicKey[] accountsArray,
+                                final PublicKey[] programs,
+                                final AddressLookupTable[] tables,
+                                final AddressLookupTable[] corpusTables) {
+    coOccurrenceSketch.observe(accountsArray, tables);
+    programTableIndex.observe(programs, corpusTables);
+    corpusBudget.recordSelections(tables);
+    hotTables.observe(tables);
+  }
+
+  private AddressLookupTable[] smallQueryTables(final PublicKey[] accountsArray, final AddressLookupTable[] include) {
+    smallQueryIndex.observe(accountsArray);
+    if (include == null || include.length == 0) {
+      final var table = smallQueryIndex.coveringTable(accountsArray);
+      if (table != null) {
+        return new AddressLookupTable[]{table};
       }
     }
+    return null;
   }
 
-  private AddressLookupTable topTable(final PublicKey[] accountsArray,
-                                      final ScoredTable[] include,
-                                      final int startingMinScore) {
-    final var allTables = (AddressLookupTable[]) ALL_TABLES.getOpaque(this);
-    final int numTables = allTables.length;
-    final int windowSize = Math.ceilDiv(numTables, numPartitionsPerQuery);
-    for (int minScore = startingMinScore; ; minScore = Math.max(2, minScore >> 1)) {
-      final int _minScore = minScore;
-      final var scoredTablesStream = IntStream.range(0, numPartitionsPerQuery).parallel().mapToObj(i -> {
-            final int from = i * windowSize;
-            return rankTables(
-                allTables,
-                from, Math.min(from + windowSize, numTables),
-                accountsArray,
-                _minScore,
-                topTablesPerPartition
-            );
-          })
-          .<ScoredTable>mapMulti((_scoredTables, downstream) -> {
-            if (_scoredTables != null) {
-              for (final var scoredTable : _scoredTables) {
-                downstream.accept(scoredTable);
-              }
+  @Override
+  public AddressLookupTable[] discoverTables(final Set<PublicKey> distinctAccounts) {
+    return discoverTables(distinctAccounts, null, null, null);
+  }
+
+  @Override
+  public AddressLookupTable[] discoverTables(final Set<PublicKey> distinctAccounts, final AddressLookupTable[] include) {
+    return discoverTables(distinctAccounts, null, include, null);
+  }
+
+  private static ScoredTable[] concat(final ScoredTable[] a, final ScoredTable[] b) {
+    if (a == null) {
+      return b;
+    } else if (b == null) {
+      return a;
+    } else {
+      final var joined = Arrays.copyOf(a, a.length + b.length);
+      System.arraycopy(b, 0, joined, a.length, b.length);
+      return joined;
+    }
+  }
+
+  // Tables which were useful for queries invoking the same programs are scored first, and those selected from them
+  // raise the minimum score of the corpus scan.
+  private ScoredTable[] seedCandidateTables(final PublicKey[] accountsArray, final PublicKey[] programs) {
+    final var candidates = programTableIndex.candidates(programs);
+    if (candidates.length == 0) {
+      return null;
+    }
+    final var scoredCandidates = rankTables(candidates, 0, candidates.length, accountsArray, 2, candidates.length);
+    if (scoredCandidates == null) {
+      return null;
+    }
+    Arrays.sort(scoredCandidates);
+    final var selected = discoverTables(
+        accountsArray,
+        Arrays.stream(scoredCandidates).map(ScoredTable::table).toArray(AddressLookupTable[]::new)
+    );
+    if (selected == null) {
+      return null;
+    }
+    return Arrays.stream(scoredCandidates)
+        .filter(scoredTable -> {
+          for (final var table : selected) {
+            if (table == scoredTable.table()) {
+              return true;
             }
-          });
-      final var topTable = Stream.concat(Arrays.stream(include), scoredTablesStream)
-          .min(ScoredTable::compareTo)
-          .orElse(null);
-      if (topTable != null) {
-        return topTable.table();
-      } else if (_minScore == 2) {
-        return null;
-      }
+          }
+          return false;
+        })
+        .toArray(ScoredTable[]::new);
+  }
+
+  @Override
+  public AddressLookupTable[] discoverTables(final Set<PublicKey> distinctAccounts,
+                                             final PublicKey[] programs,
+                                             final AddressLookupTable[] include,
+                                             final QueryBudget budget) {
+    final var accountsArray = distinctAccounts.toArray(PublicKey[]::new);
+    final var smallQueryTables = smallQueryTables(accountsArray, include);
+    if (smallQueryTables != null) {
+      observeSelection(accountsArray, programs, smallQueryTables, smallQueryTables);
+      return smallQueryTables;
     }
+    final var scoredIncludedTables = include == null || include.length == 0
+        ? null
+        : scoreIncludedTables(accountsArray, include, startingMinScore);
+    final var seedTables = seedCandidateTables(accountsArray, programs);
+    final var scoredTables = scoreAndJoinTables(
+        accountsArray,
+        scoredIncludedTables,
+        seedTables,
+        startingMinScore,
+        budget
+    );
+    final var selected = discoverTables(accountsArray, scoredTables);
+    final var tables = secondaryTables.cover(accountsArray, selected);
+    observeSelection(accountsArray, programs, tables, corpusTables(selected, include));
+    return tables;
   }
 
-  private static final ScoredTable[] DONE_WITH_INCLUDES = new ScoredTable[0];
+  @Override
+  public AddressLookupTable[] discoverTablesWithReRank(final Set<PublicKey> distinctAccounts) {
+    return discoverTablesWithReRank(distinctAccounts, null, null, null);
+  }
 
   @Override
   public AddressLookupTable[] discoverTablesWithReRank(final Set<PublicKey> distinctAccounts,
                                                        final AddressLookupTable[] include) {
-    if (include == null || include.length == 0) {
-      return discoverTablesWithReRank(distinctAccounts);
+    return discoverTablesWithReRank(distinctAccounts, null, include, null);
+  }
+
+  @Override
+  public AddressLookupTable[] discoverTablesWithReRank(final Set<PublicKey> distinctAccounts,
+                                                       final PublicKey[] programs,
+                                                       final AddressLookupTable[] include,
+                                                       final QueryBudget budget) {
+    final var accountsArray = distinctAccounts.toArray(PublicKey[]::new);
+    final var smallQueryTables = smallQueryTables(accountsArray, include);
+    if (smallQueryTables != null) {
+      observeSelection(accountsArray, programs, smallQueryTables, smallQueryTables);
+      return smallQueryTables;
     }
+    final var seedTables = seedCandidateTables(accountsArray, programs);
+    final var selected = reRankTables(distinctAccounts, seedTables, include, budget);
+    final var tables = secondaryTables.cover(accountsArray, selected);
+    observeSelection(accountsArray, programs, tables, corpusTables(selected, include));
+    return tables;
+  }
+
+  private AddressLookupTable[] reRankTables(final Set<PublicKey> distinctAccounts,
+                                            final ScoredTable[] seedTables,
+                                            final AddressLookupTable[] include,
+                                            final QueryBudget budget) {
     final var tables = new AddressLookupTable[Transaction.MAX_ACCOUNTS >> 1];
-    int startingMinScore = this.startingMinScore;
-    ScoredTable[] scoredIncludedTables = null;
+    // Only the first pass is seeded, the top candidate is the minimum score to beat.
+    int startingMinScore = seedTables == null
+        ? this.startingMinScore
+        : Math.max(this.startingMinScore, seedTables[0].score());
+    boolean scoreIncludes = include != null && include.length > 0;
     for (int t = 0; ; ++t) {
       final var accountsArray = distinctAccounts.toArray(PublicKey[]::new);
-
-      final AddressLookupTable topTable;
-      if (scoredIncludedTables == DONE_WITH_INCLUDES) {
-        topTable = topTable(accountsArray, startingMinScore);
-      } else {
-        for (int minScore = startingMinScore; ; minScore = Math.max(2, minScore >> 1)) {
-          scoredIncludedTables = rankTables(
-              include,
-              0, include.length,
-              accountsArray,
-              minScore,
-              include.length
-          );
-          if (scoredIncludedTables != null && scoredIncludedTables.length > 0) {
-            topTable = topTable(accountsArray, scoredIncludedTables, startingMinScore);
-            break;
-          } else if (minScore == 2) {
-            scoredIncludedTables = DONE_WITH_INCLUDES;
-            topTable = topTable(accountsArray, startingMinScore);
-            break;
-          }
-        }
+      ScoredTable[] scoredIncludedTables = null;
+      if (scoreIncludes) {
+        scoredIncludedTables = scoreIncludedTables(accountsArray, include, startingMinScore);
+        scoreIncludes = scoredIncludedTables != null;
       }
-
+      if (t == 0 && seedTables != null) {
+        scoredIncludedTables = concat(scoredIncludedTables, Arrays.copyOf(seedTables, 1));
+      }
+      final var topTable = topTable(accountsArray, scoredIncludedTables, startingMinScore, budget);
       if (topTable == null) {
         return t == 0 ? null : Arrays.copyOfRange(tables, 0, t);
       } else {
@@ -441,82 +983,29 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
             ++startingMinScore;
           }
         } while (iterator.hasNext());
-        if (distinctAccounts.size() < 2) {
-          return Arrays.copyOfRange(tables, 0, t);
+        if (distinctAccounts.size() < 2 || isExpired(budget)) {
+          return Arrays.copyOfRange(tables, 0, t + 1);
         }
       }
     }
   }
 
-  private AddressLookupTable[] scoreAndJoinTables(final PublicKey[] accountsArray, final ScoredTable[] include) {
-    final var allTables = (AddressLookupTable[]) ALL_TABLES.getOpaque(this);
-    final int numTables = allTables.length;
-    final int windowSize = Math.ceilDiv(numTables, numPartitionsPerQuery);
-    for (int minScore = startingMinScore; ; minScore = Math.max(2, minScore >> 1)) {
-      final int _minScore = minScore;
-      final var scoredTablesStream = IntStream.range(0, numPartitionsPerQuery).parallel().mapToObj(i -> {
-            final int from = i * windowSize;
-            return rankTables(
-                allTables,
-                from, Math.min(from + windowSize, numTables),
-                accountsArray,
-                _minScore,
-                topTablesPerPartition
-            );
-          })
-          .<ScoredTable>mapMulti((_scoredTables, downstream) -> {
-            if (_scoredTables != null) {
-              for (final var scoredTable : _scoredTables) {
-                downstream.accept(scoredTable);
-              }
-            }
-          });
-      final var scoredTables = Stream.concat(Arrays.stream(include), scoredTablesStream)
-          .sorted()
-          .map(ScoredTable::table)
-          .toArray(AddressLookupTable[]::new);
-      if (scoredTables.length > 0 || _minScore == 2) {
-        return scoredTables;
-      }
-    }
-  }
-
-  @Override
-  public AddressLookupTable[] discoverTables(final Set<PublicKey> distinctAccounts, final AddressLookupTable[] include) {
-    if (include == null || include.length == 0) {
-      return discoverTables(distinctAccounts);
-    }
-    final var accountsArray = distinctAccounts.toArray(PublicKey[]::new);
-
-    for (int minScore = startingMinScore; ; minScore = Math.max(2, minScore >> 1)) {
-      final var scoredIncludedTables = rankTables(
-          include,
-          0, include.length,
-          accountsArray,
-          minScore,
-          include.length
-      );
-      if (scoredIncludedTables != null && scoredIncludedTables.length > 0) {
-        return discoverTables(accountsArray, scoreAndJoinTables(accountsArray, scoredIncludedTables));
-      } else if (minScore == 2) {
-        return discoverTables(accountsArray, scoreAndJoinTables(accountsArray));
-      }
-    }
-  }
-
   @Override
   public AddressLookupTable scanForTable(final PublicKey publicKey) {
     final var allTables = (AddressLookupTable[]) ALL_TABLES.getOpaque(this);
     if (allTables.length > 0) {
       return Arrays.stream(allTables).parallel()
-          .filter(table -> table.containKey(publicKey))
+          .filter(table -> table.address().equals(publicKey))
           .findFirst().orElse(null);
     } else {
+      // Partitions which have not been loaded yet are null.
       return IntStream.range(0, NUM_PARTITIONS).parallel().mapToObj(partition -> {
         final var tables = partitions.get(partition);
-        for (final var table : tables) {
-          if (table.address().equals(publicKey)) {
-            return table;
+        if (tables != null) {
+          for (final var table : tables) {
+            if (table.address().equals(publicKey)) {
+              return table;
+            }
           }
         }
         return null;
@@ -526,61 +1015,226 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
 
   @Override
   public AddressLookupTable[] discoverTables(final Transaction transaction) {
-    return discoverTables(LookupTableDiscoveryService.distinctAccounts(transaction));
+    return discoverTables(
+        LookupTableDiscoveryService.distinctAccounts(transaction),
+        LookupTableDiscoveryService.programIds(transaction.instructions().toArray(Instruction[]::new)),
+        null,
+        null
+    );
   }
 
-  private record Worker(AtomicInteger nextPartition,
-                        CountDownLatch latch,
-                        PartitionedLookupTableCallHandler[] partitionedCallHandlers,
-                        Path altCacheDirectory) implements Runnable {
+  // A partition, or one of its sub-partitions if subPartition is not negative, with the number of tables it is
+  // expected to return based on the previous load.
+  private record PartitionTask(int partition, int subPartition, int estimatedTables) {
+  }
 
-    private void cacheTables(final int partition, final AddressLookupTable[] tables) {
-      if (altCacheDirectory != null) {
-        final int byteLength = Arrays.stream(tables)
-            .mapToInt(AddressLookupTable::length)
-            .sum();
-        final byte[] out = new byte[Integer.BYTES + byteLength];
-        ByteUtil.putInt32LE(out, 0, tables.length);
-        for (int i = 0, offset = Integer.BYTES; i < tables.length; ++i) {
-          offset += tables[i].write(out, offset);
+  private static final Comparator<PartitionTask> LARGEST_FIRST = (a, b) -> Integer.compare(b.estimatedTables, a.estimatedTables);
+
+  private PartitionTask[] planTasks(final LoadProgress progress, final boolean keepFrozen) {
+    final var tasks = new ArrayList<PartitionTask>(NUM_PARTITIONS);
+    for (int partition = keepFrozen ? 1 : 0; partition < NUM_PARTITIONS; ++partition) {
+      if (progress.isComplete(partition)) {
+        continue;
+      }
+      final int numSubPartitions = partitionSizes.numSubPartitions(partition);
+      final int estimatedTables = partitionSizes.size(partition) / numSubPartitions;
+      if (numSubPartitions > 1) {
+        partitionedCallHandlers[partition].resetSubPartitions();
+        for (int subPartition = 0; subPartition < numSubPartitions; ++subPartition) {
+          tasks.add(new PartitionTask(partition, subPartition, estimatedTables));
         }
+      } else {
+        tasks.add(new PartitionTask(partition, -1, estimatedTables));
+      }
+    }
+    tasks.sort(LARGEST_FIRST);
+    return tasks.toArray(PartitionTask[]::new);
+  }
+
+  private static boolean isTimeout(final Throwable ex) {
+    for (var cause = ex; cause != null; cause = cause.getCause()) {
+      if (cause instanceof TimeoutException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private long retryDelayMillis(final int attempt) {
+    final long delayMillis = Math.min(
+        retryBackoff.toMillis() << Math.min(attempt, 16),
+        Math.max(retryBackoff.toMillis(), callTimeout.toMillis())
+    );
+    // Jittered so that partitions failing together do not retry together.
+    return (delayMillis >> 1) + ThreadLocalRandom.current().nextLong((delayMillis >> 1) + 1);
+  }
+
+  private void cacheTables(final Path cacheFile, final AddressLookupTable[] tables) {
+    if (tables != null) {
+      try {
+        TableCacheFile.write(cacheFile, tables);
+      } catch (final IOException e) {
+        logger.log(WARNING, "Failed to write lookup tables to " + altCacheDirectory, e);
+      }
+    }
+  }
+
+  private boolean restorePartition(final int partition) {
+    final var cacheFile = resolvePartitionCacheFile(altCacheDirectory, partition);
+    try {
+      if (Files.exists(cacheFile)) {
+        partitions.set(partition, TableCacheFile.read(cacheFile));
+        loadSecondaryCache(partition);
+        return true;
+      }
+    } catch (final IOException | UncheckedIOException e) {
+      logger.log(WARNING, "Failed to read cache partition file " + cacheFile, e);
+    }
+    return false;
+  }
+
+  // Serves the tables of the previous load, or of the cache files, for a partition which could not be fetched.
+  private boolean fallbackPartition(final int partition) {
+    if (partitions.get(partition) != null || (altCacheDirectory != null && restorePartition(partition))) {
+      admitPartition(partition, partitions.get(partition));
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  // Trims a partition to its share of the memory budget as soon as it is applied, rather than once the whole corpus
+  // has been loaded. A partition replaced by a table update meanwhile is left to the eviction of the joined corpus.
+  private void admitPartition(final int partition, final AddressLookupTable[] tables) {
+    final var admitted = corpusBudget.admit(partition, tables);
+    if (admitted != tables) {
+      synchronized (partitions) {
+        partitions.compareAndSet(partition, tables, admitted);
+      }
+    }
+  }
+
+  // Fetches a single partition or sub-partition. A failed call is retried with exponential backoff, holding its
+  // concurrency permit, until maxRetries is exhausted, after which the whole partition falls back to its cached tables.
+  private final class PartitionFetch implements Runnable {
+
+    private final PartitionTask task;
+    private final CountDownLatch latch;
+    private final LoadProgress progress;
+    private final AtomicInteger completedPartitions;
+    private final AtomicInteger failedPartitions;
+    private AddressLookupTable[] tables;
+
+    private PartitionFetch(final PartitionTask task,
+                           final CountDownLatch latch,
+                           final LoadProgress progress,
+                           final AtomicInteger completedPartitions,
+                           final AtomicInteger failedPartitions) {
+      this.task = task;
+      this.latch = latch;
+      this.progress = progress;
+      this.completedPartitions = completedPartitions;
+      this.failedPartitions = failedPartitions;
+    }
+
+    private boolean callWithRetries(final PartitionedLookupTableCallHandler handler) {
+      for (int attempt = 0; ; ++attempt) {
+        final long start = System.currentTimeMillis();
         try {
-          Files.write(
-              resolvePartitionCacheFile(altCacheDirectory, partition),
-              out,
-              CREATE, WRITE, TRUNCATE_EXISTING
-          );
-        } catch (final IOException e) {
-          logger.log(WARNING, "Failed to write lookup tables to " + altCacheDirectory, e);
+          remoteLoadMetrics.recordCall();
+          if (task.subPartition() < 0) {
+            tables = handler.callAndApply(callTimeout).join();
+          } else {
+            handler.callSubPartition(task.subPartition(), callTimeout);
+          }
+          concurrencyLimit.recordCall(System.currentTimeMillis() - start, false);
+          return true;
+        } catch (final RuntimeException ex) {
+          concurrencyLimit.recordCall(System.currentTimeMillis() - start, true);
+          remoteLoadMetrics.recordFailedCall(isTimeout(ex));
+          if (attempt >= maxRetries) {
+            logger.log(WARNING, String.format(
+                "Failed to get lookup tables for [partition=%d] [subPartition=%d] after %d attempts.",
+                task.partition(), task.subPartition(), attempt + 1
+            ), ex);
+            return false;
+          }
+          remoteLoadMetrics.recordRetry();
+          try {
+            MILLISECONDS.sleep(retryDelayMillis(attempt));
+          } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+          }
         }
       }
     }
 
+    private void fallback(final int partition) {
+      final boolean fellBack = fallbackPartition(partition);
+      failedPartitions.incrementAndGet();
+      remoteLoadMetrics.recordFailedPartition(fellBack);
+      if (fellBack) {
+        completedPartitions.incrementAndGet();
+        logger.log(WARNING, "Serving cached lookup tables for partition " + partition);
+      } else {
+        logger.log(ERROR, "No lookup tables available for partition " + partition);
+      }
+    }
+
     @Override
     public void run() {
-      for (long start; ; ) {
-        final int partition = nextPartition.getAndIncrement();
-        if (partition >= NUM_PARTITIONS) {
-          return;
+      final int partition = task.partition();
+      final var handler = partitionedCallHandlers[partition];
+      final long start = System.currentTimeMillis();
+      try {
+        final boolean fetched = callWithRetries(handler);
+        if (task.subPartition() < 0) {
+          if (!fetched) {
+            fallback(partition);
+            return;
+          }
+        } else {
+          if (!fetched) {
+            handler.failSubPartition();
+          }
+          if (!handler.completeSubPartition()) {
+            return;
+          }
+          if (handler.subPartitionFailed()) {
+            handler.resetSubPartitions();
+            fallback(partition);
+            return;
+          }
+          tables = handler.applySubPartitions();
         }
-        try {
-          start = System.currentTimeMillis();
-          final var tables = partitionedCallHandlers[partition].callAndApply().join();
-          latch.countDown();
-          final var duration = Duration.ofMillis(System.currentTimeMillis() - start);
-
-          final var stats = Arrays.stream(tables)
-              .mapToInt(AddressLookupTable::numUniqueAccounts)
-              .summaryStatistics();
-          logger.log(INFO, String.format("""
-              [partition=%d] [numTables=%s] [averageNumAccounts=%.1f] [duration=%s]
-              """, partition, tables.length, stats.getAverage(), duration));
-
-          cacheTables(partition, tables);
-        } catch (final RuntimeException ex) {
-          logger.log(ERROR, "Failed to get lookup tables for partition " + partition, ex);
-          throw ex;
+        partitionSizes.record(partition, handler.numResponseTables());
+        if (partition == 0) {
+          frozenLoadTimestamp = System.currentTimeMillis();
         }
+        completedPartitions.incrementAndGet();
+        final var duration = Duration.ofMillis(System.currentTimeMillis() - start);
+
+        final var stats = Arrays.stream(tables)
+            .mapToInt(AddressLookupTable::numUniqueAccounts)
+            .summaryStatistics();
+        logger.log(INFO, String.format("""
+            [partition=%d] [numTables=%s] [averageNumAccounts=%.1f] [subPartitions=%d] [duration=%s] [concurrencyLimit=%d]
+            """, partition, tables.length, stats.getAverage(), task.subPartition() < 0 ? 1 : NUM_SUB_PARTITIONS, duration, concurrencyLimit.limit()));
+
+        if (altCacheDirectory != null) {
+          cacheTables(resolvePartitionCacheFile(altCacheDirectory, partition), tables);
+          cacheTables(resolveSecondaryCacheFile(altCacheDirectory, partition), secondaryPartitions.get(partition));
+          progress.markComplete(partition);
+        }
+        // The cache files keep every table, only those held in memory are trimmed.
+        admitPartition(partition, tables);
+      } catch (final RuntimeException ex) {
+        logger.log(ERROR, "Failed to apply lookup tables for partition " + partition, ex);
+        fallback(partition);
+      } finally {
+        concurrencyLimit.release();
+        latch.countDown();
       }
     }
   }
@@ -590,6 +1244,22 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
     return initialized;
   }
 
+  private void loadSecondaryCache(final int partition) {
+    final var cacheFile = resolveSecondaryCacheFile(altCacheDirectory, partition);
+    try {
+      if (Files.exists(cacheFile)) {
+        secondaryPartitions.set(partition, TableCacheFile.read(cacheFile));
+      }
+    } catch (final IOException e) {
+      try {
+        Files.delete(cacheFile);
+      } catch (final IOException ex) {
+        throw new UncheckedIOException(e);
+      }
+      logger.log(WARNING, "Deleted corrupted secondary cache partition file " + cacheFile);
+    }
+  }
+
   @Override
   public boolean loadCache() {
     if (altCacheDirectory == null) {
@@ -605,20 +1275,16 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
     }
 
     final long start = System.currentTimeMillis();
-    this.allTables = IntStream.range(0, NUM_PARTITIONS).parallel().mapToObj(partition -> {
+    if (loadSnapshot(start)) {
+      return true;
+    }
+    final var cachedTables = IntStream.range(0, NUM_PARTITIONS).parallel().mapToObj(partition -> {
           final var cacheFile = resolvePartitionCacheFile(altCacheDirectory, partition);
           try {
             if (Files.exists(cacheFile)) {
-              final byte[] data = Files.readAllBytes(cacheFile);
-              final int numTables = ByteUtil.getInt32LE(data, 0);
-              int offset = Integer.BYTES;
-              final var tables = new AddressLookupTable[numTables];
-              for (int i = 0; offset < data.length; ++i) {
-                final var table = CachedAddressLookupTable.readCached(data, offset);
-                offset += table.length();
-                tables[i] = table;
-              }
+              final var tables = TableCacheFile.read(cacheFile);
               partitions.set(partition, tables);
+              loadSecondaryCache(partition);
               return tables;
             }
           } catch (final IOException e) {
@@ -638,52 +1304,250 @@ final class LookupTableDiscoveryServiceImpl implements LookupTableDiscoveryServi
         })
         .sorted(BY_UNIQUE_ACCOUNTS_REVERSED)
         .toArray(AddressLookupTable[]::new);
+    publishTables(evictTables(corpusPruner.prune(cachedTables)));
 
     if (this.allTables.length > 0) {
+      joinSecondaryPartitions();
       final var duration = Duration.ofMillis(System.currentTimeMillis() - start);
+      corpusCompleteness = 1;
       initialized.complete(null);
 
       logger.log(INFO, String.format("""
           
-          Loaded %d tables from the Lookup Table Cache in %s.
-          """, allTables.length, duration));
+          Loaded %d tables and %d secondary tables from the Lookup Table Cache in %s.
+          """, allTables.length, secondaryTables.numTables(), duration));
       return true;
     } else {
       return false;
     }
   }
 
+  private void publishLoadedPartitions(final int numCompleted) {
+    final long start = System.currentTimeMillis();
+    synchronized (partitions) {
+      if (corpusCompleteness == 1) {
+        return;
+      }
+      final var sortedTables = Arrays.stream(partitionTables(partitions))
+          .<AddressLookupTable>mapMulti((tables, downstream) -> {
+            for (final var table : tables) {
+              downstream.accept(table);
+            }
+          })
+          .sorted(BY_UNIQUE_ACCOUNTS_REVERSED)
+          .toArray(AddressLookupTable[]::new);
+      // Partitions are already trimmed to the memory budget as they are applied, and pruning is only applied to the
+      // full corpus as it needs postings over every table.
+      publishTables(sortedTables);
+      joinSecondaryPartitions();
+      corpusCompleteness = (double) numCompleted / NUM_PARTITIONS;
+    }
+    initialized.complete(null);
+    logger.log(INFO, String.format(
+        "Published %d tables from %d/%d partitions in %dms while loading.",
+        allTables.length, numCompleted, NUM_PARTITIONS, System.currentTimeMillis() - start
+    ));
+  }
+
+  // Publishes the partitions fetched so far, every progressivePublishPartitions partitions or progressivePublishDelay,
+  // until the load completes, so that a cold server answers queries within seconds rather than after the full load.
+  private void publishProgressively(final CountDownLatch latch, final AtomicInteger completedPartitions) {
+    final long delayMillis = progressivePublishDelay.toMillis();
+    final long pollMillis = Math.clamp(delayMillis >> 2, 1, 250);
+    try {
+      for (long lastPublish = System.currentTimeMillis(); !latch.await(pollMillis, MILLISECONDS); ) {
+        final int numCompleted = completedPartitions.get();
+        final int numPublished = (int) Math.round(corpusCompleteness * NUM_PARTITIONS);
+        if (numCompleted - numPublished >= progressivePublishPartitions
+            || (numCompleted > numPublished && System.currentTimeMillis() - lastPublish >= delayMillis)) {
+          publishLoadedPartitions(numCompleted);
+          lastPublish = System.currentTimeMillis();
+        }
+      }
+    } catch (final InterruptedException e) {
+      // return;
+    } catch (final RuntimeException ex) {
+      logger.log(WARNING, "Failed to publish partially loaded lookup tables.", ex);
+    }
+  }
+
+  // Restores the partitions completed by an interrupted load from their cache files, so that only the remainder
+  // is fetched.
+  private int resumeProgress(final LoadProgress progress) {
+    int numResumed = 0;
+    for (int partition = 0; partition < NUM_PARTITIONS; ++partition) {
+      if (progress.isComplete(partition)) {
+        if (restorePartition(partition)) {
+          if (partition == 0) {
+            frozenLoadTimestamp = System.currentTimeMillis();
+          }
+          ++numResumed;
+        } else {
+          progress.markIncomplete(partition);
+        }
+      }
+    }
+    logger.log(INFO, String.format("Resuming interrupted remote load with %d completed partitions.", numResumed));
+    return numResumed;
+  }
+
+  // Frozen tables have no authority, so they can neither change nor be deactivated. The frozen partition of the
+  // previous load is kept, and only re-fetched after frozenReloadDelay to pick up newly frozen tables. If the memory
+  // budget evicted tables, the partition is restored from its cache file so that evicted frozen tables are
+  // reconsidered.
+  private boolean keepFrozenPartition() {
+    if (partitions.get(0) == null
+        || frozenLoadTimestamp == 0
+        || frozenReloadDelay == null
+        || System.currentTimeMillis() - frozenLoadTimestamp >= frozenReloadDelay.toMillis()) {
+      return false;
+    }
+    if (corpusBudget.evictedTables() > 0 && altCacheDirectory != null) {
+      restorePartition(0);
+    }
+    // Registered with the table stats, so that tables with the same accounts in other partitions are still removed as
+    // duplicates.
+    partitions.set(0, Arrays.stream(partitions.get(0)).filter(tableStats).toArray(AddressLookupTable[]::new));
+    return true;
+  }
+
+  // Tables frozen since the previous load are no longer returned by their authority partition, and the kept frozen
+  // partition does not have them yet, so the tables which left the other partitions are re-fetched and those which are
+  // now frozen are carried into the frozen partition.
+  private void carryFrozenTables() {
+    final var removed = new ArrayList<PublicKey>();
+    for (int partition = 1; partition < NUM_PARTITIONS; ++partition) {
+      removed.addAll(tableDecodeCache.removedTables(
+          partition, partitions.get(partition), secondaryPartitions.get(partition)
+      ));
+    }
+    if (removed.isEmpty()) {
+      return;
+    }
+    final List<AddressLookupTable> fetched;
+    try {
+      fetched = hotTables.fetchTables(removed);
+    } catch (final RuntimeException ex) {
+      logger.log(WARNING, String.format("Failed to re-fetch %d tables which left their partition.", removed.size()), ex);
+      return;
+    }
+    final var frozenTables = new ArrayList<AddressLookupTable>();
+    final var frozenSecondaryTables = new ArrayList<AddressLookupTable>();
+    for (final var table : fetched) {
+      if (table.authority() == null && table.isActive()) {
+        if (tableStats.test(table)) {
+          frozenTables.add(table);
+        } else if (tableStats.testSecondary(table)) {
+          frozenSecondaryTables.add(table);
+        }
+      }
+    }
+    if (frozenTables.isEmpty() && frozenSecondaryTables.isEmpty()) {
+      return;
+    }
+    synchronized (partitions) {
+      partitions.set(0, appendTables(partitions.get(0), frozenTables));
+      secondaryPartitions.set(0, appendTables(secondaryPartitions.get(0), frozenSecondaryTables));
+    }
+    if (altCacheDirectory != null) {
+      // Appended to the cache files rather than overwriting them with the partition, which the budget may have trimmed.
+      appendCachedTables(resolvePartitionCacheFile(altCacheDirectory, 0), frozenTables);
+      appendCachedTables(resolveSecondaryCacheFile(altCacheDirectory, 0), frozenSecondaryTables);
+    }
+    logger.log(INFO, String.format(
+        "Carried %d newly frozen tables and %d secondary tables into the frozen partition.",
+        frozenTables.size(), frozenSecondaryTables.size()
+    ));
+  }
+
+  private void appendCachedTables(final Path cacheFile, final List<AddressLookupTable> appended) {
+    if (appended.isEmpty()) {
+      return;
+    }
+    try {
+      final var cachedTables = Files.exists(cacheFile) ? TableCacheFile.read(cacheFile) : null;
+      cacheTables(cacheFile, appendTables(cachedTables, appended));
+    } catch (final IOException | UncheckedIOException e) {
+      logger.log(WARNING, "Failed to read cache partition file " + cacheFile, e);
+    }
+  }
+
+  private static AddressLookupTable[] appendTables(final AddressLookupTable[] tables,
+                                                   final List<AddressLookupTable> appended) {
+    if (tables == null) {
+      return appended.toArray(AddressLookupTable[]::new);
+    }
+    final var combined = Arrays.copyOf(tables, tables.length + appended.size());
+    for (int i = 0; i < appended.size(); ++i) {
+      combined[tables.length + i] = appended.get(i);
+    }
+    return combined;
+  }
+
   public void run() {
-    if (loadCache() || cacheOnly) {
+    final var resumedProgress = LoadProgress.readProgress(altCacheDirectory);
+    if ((loadCache() && resumedProgress == null) || cacheOnly) {
       return;
     }
     try {
-      final var nextPartition = new AtomicInteger();
-      for (long start; ; ) {
-        nextPartition.set(0);
-        final var latch = new CountDownLatch(NUM_PARTITIONS);
-        IntStream.range(0, maxConcurrentRequests).mapToObj(_ -> new Worker(
-            nextPartition,
-            latch,
-            partitionedCallHandlers,
-            altCacheDirectory
-        )).forEach(executorService::execute);
-
-        start = System.currentTimeMillis();
+      for (var progress = resumedProgress; ; progress = null) {
+        final int numResumed;
+        if (progress == null) {
+          progress = LoadProgress.startProgress(altCacheDirectory);
+          numResumed = 0;
+        } else {
+          numResumed = resumeProgress(progress);
+        }
+        final boolean keepFrozen = !progress.isComplete(0) && keepFrozenPartition();
+        if (keepFrozen && altCacheDirectory != null) {
+          progress.markComplete(0);
+        }
+        tableDecodeCache.index(partitions, secondaryPartitions);
+        corpusBudget.startLoad(IntStream.range(0, NUM_PARTITIONS).map(partitionSizes::size).toArray());
+        for (int partition = 0; partition < NUM_PARTITIONS; ++partition) {
+          if (progress.isComplete(partition) || (partition == 0 && keepFrozen)) {
+            admitPartition(partition, partitions.get(partition));
+          }
+        }
+        final var tasks = planTasks(progress, keepFrozen);
+        final var latch = new CountDownLatch(tasks.length);
+        final var completedPartitions = new AtomicInteger(keepFrozen ? numResumed + 1 : numResumed);
+        final var failedPartitions = new AtomicInteger();
+        final long start = System.currentTimeMillis();
+        final boolean publishProgressively = !initialized.isDone() && progressivePublishPartitions > 0;
+        if (publishProgressively) {
+          executorService.execute(() -> publishProgressively(latch, completedPartitions));
+        }
+        for (final var task : tasks) {
+          concurrencyLimit.acquire();
+          executorService.execute(new PartitionFetch(task, latch, progress, completedPartitions, failedPartitions));
+        }
         latch.await();
         final var duration = Duration.ofMillis(System.currentTimeMillis() - start);
+        partitionSizes.write();
+        if (keepFrozen) {
+          carryFrozenTables();
+        }
 
         joinPartitions();
+        joinSecondaryPartitions();
+        tableDecodeCache.clear();
 
         initialized.complete(null);
         remoteLoad.complete(null);
 
+        progress.delete();
+        remoteLoadMetrics.recordLoad(duration.toMillis(), failedPartitions.get(), numResumed);
+
         final int numTables = IntStream.range(0, NUM_PARTITIONS)
-            .map(i -> partitions.getOpaque(i).length)
+            .mapToObj(partitions::getOpaque)
+            .filter(Objects::nonNull)
+            .mapToInt(tables -> tables.length)
             .sum();
 
         logger.log(INFO, String.format("""
-            %s to fetch all %d tables.""", duration, numTables
+            %s to fetch all %d tables [failedPartitions=%d] [resumedPartitions=%d] [keptFrozenPartition=%b] [reusedTables=%d].""",
+            duration, numTables, failedPartitions.get(), numResumed, keepFrozen, tableDecodeCache.reusedTables()
         ));
 
         logger.log(INFO, tableStats);
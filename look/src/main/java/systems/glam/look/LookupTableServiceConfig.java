@@ -11,6 +11,7 @@ import systems.comodal.jsoniter.JsonIterator;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.net.URI;
 import java.net.http.HttpClient;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -173,7 +174,12 @@ public record LookupTableServiceConfig(Path workDir,
                                        Path cacheDirectory,
                                        boolean clearCache,
                                        RemoteLoadConfig remoteLoadConfig,
-                                       QueryConfig queryConfig) {
+                                       QueryConfig queryConfig,
+                                       ProposalConfig proposalConfig,
+                                       OverlayConfig overlayConfig,
+                                       SessionConfig sessionConfig,
+                                       TableUpdateConfig tableUpdateConfig,
+                                       HotTableConfig hotTableConfig) {
 
     private static DiscoveryServiceConfig parse(final JsonIterator ji) {
       final var parser = new Builder();
@@ -188,6 +194,11 @@ public record LookupTableServiceConfig(Path workDir,
       private boolean clearCache;
       private RemoteLoadConfig remoteLoadConfig;
       private QueryConfig queryConfig;
+      private ProposalConfig proposalConfig;
+      private OverlayConfig overlayConfig;
+      private SessionConfig sessionConfig;
+      private TableUpdateConfig tableUpdateConfig;
+      private HotTableConfig hotTableConfig;
 
       private Builder() {
       }
@@ -198,7 +209,12 @@ public record LookupTableServiceConfig(Path workDir,
             requireNonNull(cacheDirectory, "Must provide a cache directory."),
             clearCache,
             remoteLoadConfig == null ? new RemoteLoadConfig.Builder().create() : remoteLoadConfig,
-            queryConfig == null ? new QueryConfig.Builder().create() : queryConfig
+            queryConfig == null ? new QueryConfig.Builder().create() : queryConfig,
+            proposalConfig == null ? new ProposalConfig.Builder().create() : proposalConfig,
+            overlayConfig == null ? new OverlayConfig.Builder().create() : overlayConfig,
+            sessionConfig == null ? new SessionConfig.Builder().create() : sessionConfig,
+            tableUpdateConfig == null ? new TableUpdateConfig.Builder().create() : tableUpdateConfig,
+            hotTableConfig == null ? new HotTableConfig.Builder().create() : hotTableConfig
         );
       }
 
@@ -214,6 +230,16 @@ public record LookupTableServiceConfig(Path workDir,
           remoteLoadConfig = RemoteLoadConfig.parse(ji);
         } else if (fieldEquals("query", buf, offset, len)) {
           queryConfig = QueryConfig.parse(ji);
+        } else if (fieldEquals("proposals", buf, offset, len)) {
+          proposalConfig = ProposalConfig.parse(ji);
+        } else if (fieldEquals("overlays", buf, offset, len)) {
+          overlayConfig = OverlayConfig.parse(ji);
+        } else if (fieldEquals("sessions", buf, offset, len)) {
+          sessionConfig = SessionConfig.parse(ji);
+        } else if (fieldEquals("tableUpdates", buf, offset, len)) {
+          tableUpdateConfig = TableUpdateConfig.parse(ji);
+        } else if (fieldEquals("hotTables", buf, offset, len)) {
+          hotTableConfig = HotTableConfig.parse(ji);
         } else {
           ji.skip();
         }
@@ -224,13 +250,36 @@ public record LookupTableServiceConfig(Path workDir,
 
   public record RemoteLoadConfig(int minUniqueAccountsPerTable,
                                  double minTableEfficiency,
+                                 int minUniqueAccountsPerSecondaryTable,
+                                 boolean pruneDominatedTables,
+                                 double nearDuplicateJaccard,
+                                 int maxCorpusMegabytes,
                                  int maxConcurrentRequests,
-                                 Duration reloadDelay) {
+                                 Duration targetCallLatency,
+                                 int maxTablesPerCall,
+                                 Duration callTimeout,
+                                 int maxRetries,
+                                 Duration retryBackoff,
+                                 int progressivePublishPartitions,
+                                 Duration progressivePublishDelay,
+                                 boolean streamResponses,
+                                 Duration reloadDelay,
+                                 Duration frozenReloadDelay) {
 
     private static final int DEFAULT_MIN_ACCOUNTS = 34;
     private static final double DEFAULT_MIN_EFFICIENCY = 0.8;
+    private static final int DEFAULT_MIN_SECONDARY_ACCOUNTS = 2;
+    private static final double DEFAULT_NEAR_DUPLICATE_JACCARD = 0;
     private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 10;
+    private static final Duration DEFAULT_TARGET_CALL_LATENCY = Duration.ofSeconds(30);
+    private static final int DEFAULT_MAX_TABLES_PER_CALL = 16_384;
+    private static final Duration DEFAULT_CALL_TIMEOUT = Duration.ofMinutes(2);
+    private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final Duration DEFAULT_RETRY_BACKOFF = Duration.ofSeconds(1);
+    private static final int DEFAULT_PROGRESSIVE_PUBLISH_PARTITIONS = 32;
+    private static final Duration DEFAULT_PROGRESSIVE_PUBLISH_DELAY = Duration.ofSeconds(5);
     private static final Duration DEFAULT_RELOAD_DELAY = Duration.ofHours(8);
+    private static final Duration DEFAULT_FROZEN_RELOAD_DELAY = Duration.ofHours(24);
 
     private static RemoteLoadConfig parse(final JsonIterator ji) {
       final var parser = new Builder();
@@ -242,8 +291,21 @@ public record LookupTableServiceConfig(Path workDir,
 
       private int minUniqueAccountsPerTable = DEFAULT_MIN_ACCOUNTS;
       private double minTableEfficiency = DEFAULT_MIN_EFFICIENCY;
+      private int minUniqueAccountsPerSecondaryTable = DEFAULT_MIN_SECONDARY_ACCOUNTS;
+      private boolean pruneDominatedTables = true;
+      private double nearDuplicateJaccard = DEFAULT_NEAR_DUPLICATE_JACCARD;
+      private int maxCorpusMegabytes;
       private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+      private Duration targetCallLatency = DEFAULT_TARGET_CALL_LATENCY;
+      private int maxTablesPerCall = DEFAULT_MAX_TABLES_PER_CALL;
+      private Duration callTimeout = DEFAULT_CALL_TIMEOUT;
+      private int maxRetries = DEFAULT_MAX_RETRIES;
+      private Duration retryBackoff = DEFAULT_RETRY_BACKOFF;
+      private int progressivePublishPartitions = DEFAULT_PROGRESSIVE_PUBLISH_PARTITIONS;
+      private Duration progressivePublishDelay = DEFAULT_PROGRESSIVE_PUBLISH_DELAY;
+      private boolean streamResponses;
       private Duration reloadDelay = DEFAULT_RELOAD_DELAY;
+      private Duration frozenReloadDelay = DEFAULT_FROZEN_RELOAD_DELAY;
 
       private Builder() {
       }
@@ -252,8 +314,21 @@ public record LookupTableServiceConfig(Path workDir,
         return new RemoteLoadConfig(
             minUniqueAccountsPerTable,
             minTableEfficiency,
+            minUniqueAccountsPerSecondaryTable,
+            pruneDominatedTables,
+            nearDuplicateJaccard,
+            maxCorpusMegabytes,
             maxConcurrentRequests,
-            reloadDelay
+            targetCallLatency,
+            maxTablesPerCall,
+            callTimeout,
+            maxRetries,
+            retryBackoff,
+            progressivePublishPartitions,
+            progressivePublishDelay,
+            streamResponses,
+            reloadDelay,
+            frozenReloadDelay
         );
       }
 
@@ -263,10 +338,36 @@ public record LookupTableServiceConfig(Path workDir,
           minUniqueAccountsPerTable = ji.readInt();
         } else if (fieldEquals("minTableEfficiency", buf, offset, len)) {
           minTableEfficiency = ji.readDouble();
+        } else if (fieldEquals("minUniqueAccountsPerSecondaryTable", buf, offset, len)) {
+          minUniqueAccountsPerSecondaryTable = ji.readInt();
+        } else if (fieldEquals("pruneDominatedTables", buf, offset, len)) {
+          pruneDominatedTables = ji.readBoolean();
+        } else if (fieldEquals("nearDuplicateJaccard", buf, offset, len)) {
+          nearDuplicateJaccard = ji.readDouble();
+        } else if (fieldEquals("maxCorpusMegabytes", buf, offset, len)) {
+          maxCorpusMegabytes = ji.readInt();
         } else if (fieldEquals("maxConcurrentRequests", buf, offset, len)) {
           maxConcurrentRequests = ji.readInt();
+        } else if (fieldEquals("targetCallLatency", buf, offset, len)) {
+          targetCallLatency = parseDuration(ji);
+        } else if (fieldEquals("maxTablesPerCall", buf, offset, len)) {
+          maxTablesPerCall = ji.readInt();
+        } else if (fieldEquals("callTimeout", buf, offset, len)) {
+          callTimeout = parseDuration(ji);
+        } else if (fieldEquals("maxRetries", buf, offset, len)) {
+          maxRetries = ji.readInt();
+        } else if (fieldEquals("retryBackoff", buf, offset, len)) {
+          retryBackoff = parseDuration(ji);
+        } else if (fieldEquals("progressivePublishPartitions", buf, offset, len)) {
+          progressivePublishPartitions = ji.readInt();
+        } else if (fieldEquals("progressivePublishDelay", buf, offset, len)) {
+          progressivePublishDelay = parseDuration(ji);
+        } else if (fieldEquals("streamResponses", buf, offset, len)) {
+          streamResponses = ji.readBoolean();
         } else if (fieldEquals("reloadDelay", buf, offset, len)) {
           reloadDelay = parseDuration(ji);
+        } else if (fieldEquals("frozenReloadDelay", buf, offset, len)) {
+          frozenReloadDelay = parseDuration(ji);
         } else {
           ji.skip();
         }
@@ -277,9 +378,18 @@ public record LookupTableServiceConfig(Path workDir,
 
   public record QueryConfig(int numPartitions,
                             int topTablesPerPartition,
-                            int startingMinScore) {
+                            int startingMinScore,
+                            boolean clusterTables,
+                            int tablesPerBlock,
+                            int maxProgramCandidates,
+                            int maxSmallQueryTuples,
+                            Duration smallQueryRefreshDelay) {
 
     private static final int DEFAULT_TOP_TABLES_PER_PARTITION = 16;
+    private static final int DEFAULT_TABLES_PER_BLOCK = 16;
+    private static final int DEFAULT_MAX_PROGRAM_CANDIDATES = 16;
+    private static final int DEFAULT_MAX_SMALL_QUERY_TUPLES = 1 << 16;
+    private static final Duration DEFAULT_SMALL_QUERY_REFRESH_DELAY = Duration.ofMinutes(1);
     private static final int DEFAULT_PARTITIONS = 8;
     private static final int DEFAULT_MIN_SCORE = 2;
 
@@ -294,12 +404,26 @@ public record LookupTableServiceConfig(Path workDir,
       private int numPartitions = DEFAULT_TOP_TABLES_PER_PARTITION;
       private int topTablesPerPartition = DEFAULT_PARTITIONS;
       private int startingMinScore = DEFAULT_MIN_SCORE;
+      private boolean clusterTables;
+      private int tablesPerBlock = DEFAULT_TABLES_PER_BLOCK;
+      private int maxProgramCandidates = DEFAULT_MAX_PROGRAM_CANDIDATES;
+      private int maxSmallQueryTuples = DEFAULT_MAX_SMALL_QUERY_TUPLES;
+      private Duration smallQueryRefreshDelay = DEFAULT_SMALL_QUERY_REFRESH_DELAY;
 
       private Builder() {
       }
 
       private QueryConfig create() {
-        return new QueryConfig(numPartitions, topTablesPerPartition, Math.max(2, startingMinScore));
+        return new QueryConfig(
+            numPartitions,
+            topTablesPerPartition,
+            Math.max(2, startingMinScore),
+            clusterTables,
+            tablesPerBlock,
+            maxProgramCandidates,
+            maxSmallQueryTuples,
+            smallQueryRefreshDelay
+        );
       }
 
       @Override
@@ -310,6 +434,210 @@ public record LookupTableServiceConfig(Path workDir,
           topTablesPerPartition = ji.readInt();
         } else if (fieldEquals("startingMinScore", buf, offset, len)) {
           startingMinScore = ji.readInt();
+        } else if (fieldEquals("clusterTables", buf, offset, len)) {
+          clusterTables = ji.readBoolean();
+        } else if (fieldEquals("tablesPerBlock", buf, offset, len)) {
+          tablesPerBlock = ji.readInt();
+        } else if (fieldEquals("maxProgramCandidates", buf, offset, len)) {
+          maxProgramCandidates = ji.readInt();
+        } else if (fieldEquals("maxSmallQueryTuples", buf, offset, len)) {
+          maxSmallQueryTuples = ji.readInt();
+        } else if (fieldEquals("smallQueryRefreshDelay", buf, offset, len)) {
+          smallQueryRefreshDelay = parseDuration(ji);
+        } else {
+          ji.skip();
+        }
+        return true;
+      }
+    }
+  }
+
+  public record ProposalConfig(int maxQueuedObservations,
+                               int maxTrackedAccounts,
+                               int sketchWidth,
+                               int sketchDepth,
+                               int maxProposedTables,
+                               int minCoOccurrence,
+                               Duration refreshDelay) {
+
+    private static final int DEFAULT_MAX_QUEUED_OBSERVATIONS = 4_096;
+    private static final int DEFAULT_MAX_TRACKED_ACCOUNTS = 8_192;
+    private static final int DEFAULT_SKETCH_WIDTH = 1 << 16;
+    private static final int DEFAULT_SKETCH_DEPTH = 4;
+    private static final int DEFAULT_MAX_PROPOSED_TABLES = 8;
+    private static final int DEFAULT_MIN_CO_OCCURRENCE = 2;
+    private static final Duration DEFAULT_REFRESH_DELAY = Duration.ofMinutes(1);
+
+    private static ProposalConfig parse(final JsonIterator ji) {
+      final var parser = new Builder();
+      ji.testObject(parser);
+      return parser.create();
+    }
+
+    private static final class Builder implements FieldBufferPredicate {
+
+      private int maxQueuedObservations = DEFAULT_MAX_QUEUED_OBSERVATIONS;
+      private int maxTrackedAccounts = DEFAULT_MAX_TRACKED_ACCOUNTS;
+      private int sketchWidth = DEFAULT_SKETCH_WIDTH;
+      private int sketchDepth = DEFAULT_SKETCH_DEPTH;
+      private int maxProposedTables = DEFAULT_MAX_PROPOSED_TABLES;
+      private int minCoOccurrence = DEFAULT_MIN_CO_OCCURRENCE;
+      private Duration refreshDelay = DEFAULT_REFRESH_DELAY;
+
+      private Builder() {
+      }
+
+      private ProposalConfig create() {
+        return new ProposalConfig(
+            maxQueuedObservations,
+            maxTrackedAccounts,
+            sketchWidth,
+            Math.max(1, sketchDepth),
+            maxProposedTables,
+            Math.max(1, minCoOccurrence),
+            refreshDelay
+        );
+      }
+
+      @Override
+      public boolean test(final char[] buf, final int offset, final int len, final JsonIterator ji) {
+        if (fieldEquals("maxQueuedObservations", buf, offset, len)) {
+          maxQueuedObservations = ji.readInt();
+        } else if (fieldEquals("maxTrackedAccounts", buf, offset, len)) {
+          maxTrackedAccounts = ji.readInt();
+        } else if (fieldEquals("sketchWidth", buf, offset, len)) {
+          sketchWidth = ji.readInt();
+        } else if (fieldEquals("sketchDepth", buf, offset, len)) {
+          sketchDepth = ji.readInt();
+        } else if (fieldEquals("maxProposedTables", buf, offset, len)) {
+          maxProposedTables = ji.readInt();
+        } else if (fieldEquals("minCoOccurrence", buf, offset, len)) {
+          minCoOccurrence = ji.readInt();
+        } else if (fieldEquals("refreshDelay", buf, offset, len)) {
+          refreshDelay = parseDuration(ji);
+        } else {
+          ji.skip();
+        }
+        return true;
+      }
+    }
+  }
+
+  public record OverlayConfig(int maxTenants,
+                              int maxTablesPerTenant,
+                              Duration refreshDelay) {
+
+    private static final int DEFAULT_MAX_TENANTS = 64;
+    private static final int DEFAULT_MAX_TABLES_PER_TENANT = 64;
+    private static final Duration DEFAULT_REFRESH_DELAY = Duration.ofSeconds(30);
+
+    private static OverlayConfig parse(final JsonIterator ji) {
+      final var parser = new Builder();
+      ji.testObject(parser);
+      return parser.create();
+    }
+
+    private static final class Builder implements FieldBufferPredicate {
+
+      private int maxTenants = DEFAULT_MAX_TENANTS;
+      private int maxTablesPerTenant = DEFAULT_MAX_TABLES_PER_TENANT;
+      private Duration refreshDelay = DEFAULT_REFRESH_DELAY;
+
+      private Builder() {
+      }
+
+      private OverlayConfig create() {
+        return new OverlayConfig(maxTenants, maxTablesPerTenant, refreshDelay);
+      }
+
+      @Override
+      public boolean test(final char[] buf, final int offset, final int len, final JsonIterator ji) {
+        if (fieldEquals("maxTenants", buf, offset, len)) {
+          maxTenants = ji.readInt();
+        } else if (fieldEquals("maxTablesPerTenant", buf, offset, len)) {
+          maxTablesPerTenant = ji.readInt();
+        } else if (fieldEquals("refreshDelay", buf, offset, len)) {
+          refreshDelay = parseDuration(ji);
+        } else {
+          ji.skip();
+        }
+        return true;
+      }
+    }
+  }
+
+  public record SessionConfig(int maxSessions, Duration idleTimeout) {
+
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(2);
+
+    private static SessionConfig parse(final JsonIterator ji) {
+      final var parser = new Builder();
+      ji.testObject(parser);
+      return parser.create();
+    }
+
+    private static final class Builder implements FieldBufferPredicate {
+
+      private int maxSessions;
+      private Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+      private Builder() {
+      }
+
+      private SessionConfig create() {
+        return new SessionConfig(maxSessions, idleTimeout);
+      }
+
+      @Override
+      public boolean test(final char[] buf, final int offset, final int len, final JsonIterator ji) {
+        if (fieldEquals("maxSessions", buf, offset, len)) {
+          maxSessions = ji.readInt();
+        } else if (fieldEquals("idleTimeout", buf, offset, len)) {
+          idleTimeout = parseDuration(ji);
+        } else {
+          ji.skip();
+        }
+        return true;
+      }
+    }
+  }
+
+  public record TableUpdateConfig(URI endpoint, Duration applyDelay, Duration publishDelay, Duration reconnectDelay) {
+
+    private static final Duration DEFAULT_APPLY_DELAY = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_PUBLISH_DELAY = Duration.ofMinutes(1);
+    private static final Duration DEFAULT_RECONNECT_DELAY = Duration.ofSeconds(5);
+
+    private static TableUpdateConfig parse(final JsonIterator ji) {
+      final var parser = new Builder();
+      ji.testObject(parser);
+      return parser.create();
+    }
+
+    private static final class Builder implements FieldBufferPredicate {
+
+      private URI endpoint;
+      private Duration applyDelay = DEFAULT_APPLY_DELAY;
+      private Duration publishDelay = DEFAULT_PUBLISH_DELAY;
+      private Duration reconnectDelay = DEFAULT_RECONNECT_DELAY;
+
+      private Builder() {
+      }
+
+      private TableUpdateConfig create() {
+        return new TableUpdateConfig(endpoint, applyDelay, publishDelay, reconnectDelay);
+      }
+
+      @Override
+      public boolean test(final char[] buf, final int offset, final int len, final JsonIterator ji) {
+        if (fieldEquals("endpoint", buf, offset, len)) {
+          endpoint = URI.create(ji.readString());
+        } else if (fieldEquals("applyDelay", buf, offset, len)) {
+          applyDelay = parseDuration(ji);
+        } else if (fieldEquals("publishDelay", buf, offset, len)) {
+          publishDelay = parseDuration(ji);
+        } else if (fieldEquals("reconnectDelay", buf, offset, len)) {
+          reconnectDelay = parseDuration(ji);
         } else {
           ji.skip();
         }
@@ -318,4 +646,44 @@ public record LookupTableServiceConfig(Path workDir,
     }
   }
 
+  public record HotTableConfig(int maxTables, Duration recentWindow, Duration refreshDelay) {
+
+    private static final int DEFAULT_MAX_TABLES = 1_024;
+    private static final Duration DEFAULT_RECENT_WINDOW = Duration.ofMinutes(15);
+    private static final Duration DEFAULT_REFRESH_DELAY = Duration.ofSeconds(30);
+
+    private static HotTableConfig parse(final JsonIterator ji) {
+      final var parser = new Builder();
+      ji.testObject(parser);
+      return parser.create();
+    }
+
+    private static final class Builder implements FieldBufferPredicate {
+
+      private int maxTables = DEFAULT_MAX_TABLES;
+      private Duration recentWindow = DEFAULT_RECENT_WINDOW;
+      private Duration refreshDelay = DEFAULT_REFRESH_DELAY;
+
+      private Builder() {
+      }
+
+      private HotTableConfig create() {
+        return new HotTableConfig(maxTables, recentWindow, refreshDelay);
+      }
+
+      @Override
+      public boolean test(final char[] buf, final int offset, final int len, final JsonIterator ji) {
+        if (fieldEquals("maxTables", buf, offset, len)) {
+          maxTables = ji.readInt();
+        } else if (fieldEquals("recentWindow", buf, offset, len)) {
+          recentWindow = parseDuration(ji);
+        } else if (fieldEquals("refreshDelay", buf, offset, len)) {
+          refreshDelay = parseDuration(ji);
+        } else {
+          ji.skip();
+        }
+        return true;
+      }
+    }
+  }
 }
@@ -0,0 +1,83 @@
+package systems.glam.look;
+
+import software.sava.core.encoding.ByteUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static systems.glam.look.LookupTableDiscoveryServiceImpl.NUM_PARTITIONS;
+import static systems.glam.look.PartitionedLookupTableCallHandler.NUM_SUB_PARTITIONS;
+
+// The number of tables returned for each partition by the previous load, so that partitions which exceeded the maximum
+// number of tables per call are fetched by sub-partitions on the next load.
+final class PartitionSizes {
+
+  private static final System.Logger logger = System.getLogger(PartitionSizes.class.getName());
+
+  static final String FILE_NAME = "partition_sizes.dat";
+
+  private final int maxTablesPerCall;
+  private final Path sizesFile;
+  private final AtomicIntegerArray sizes;
+
+  PartitionSizes(final int maxTablesPerCall, final Path sizesFile, final AtomicIntegerArray sizes) {
+    this.maxTablesPerCall = maxTablesPerCall;
+    this.sizesFile = sizesFile;
+    this.sizes = sizes;
+  }
+
+  static PartitionSizes createSizes(final int maxTablesPerCall, final Path altCacheDirectory) {
+    final var sizes = new AtomicIntegerArray(NUM_PARTITIONS);
+    if (altCacheDirectory == null) {
+      return new PartitionSizes(maxTablesPerCall, null, sizes);
+    }
+    final var sizesFile = altCacheDirectory.resolve(FILE_NAME);
+    if (Files.exists(sizesFile)) {
+      try {
+        final byte[] data = Files.readAllBytes(sizesFile);
+        if (data.length == NUM_PARTITIONS * Integer.BYTES) {
+          for (int i = 0; i < NUM_PARTITIONS; ++i) {
+            sizes.set(i, ByteUtil.getInt32LE(data, i * Integer.BYTES));
+          }
+        }
+      } catch (final IOException e) {
+        logger.log(WARNING, "Failed to read partition sizes from " + sizesFile, e);
+      }
+    }
+    return new PartitionSizes(maxTablesPerCall, sizesFile, sizes);
+  }
+
+  int size(final int partition) {
+    return sizes.get(partition);
+  }
+
+  int numSubPartitions(final int partition) {
+    return maxTablesPerCall > 0 && sizes.get(partition) > maxTablesPerCall ? NUM_SUB_PARTITIONS : 1;
+  }
+
+  void record(final int partition, final int numTables) {
+    sizes.set(partition, numTables);
+  }
+
+  void write() {
+    if (sizesFile == null) {
+      return;
+    }
+    final byte[] data = new byte[NUM_PARTITIONS * Integer.BYTES];
+    for (int i = 0; i < NUM_PARTITIONS; ++i) {
+      ByteUtil.putInt32LE(data, i * Integer.BYTES, sizes.get(i));
+    }
+    final var tempFile = sizesFile.resolveSibling(FILE_NAME + ".tmp");
+    try {
+      Files.write(tempFile, data);
+      Files.move(tempFile, sizesFile, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (final IOException e) {
+      logger.log(WARNING, "Failed to write partition sizes to " + sizesFile, e);
+    }
+  }
+}
@@ -1,33 +1,132 @@
 package systems.glam.look;
 
 import software.sava.core.accounts.lookup.AddressLookupTable;
-import software.sava.rpc.json.http.response.AccountInfo;
+import software.sava.core.rpc.Filter;
 import software.sava.services.core.remote.call.Call;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+import static software.sava.core.accounts.lookup.AddressLookupTable.AUTHORITY_OFFSET;
+import static software.sava.core.accounts.lookup.AddressLookupTable.LOOKUP_TABLE_META_SIZE;
 
 final class PartitionedLookupTableCallHandler extends LookupTableCallHandler {
 
+  static final int NUM_SUB_PARTITIONS = 256;
+
+  private final List<Filter> filters;
+  private final BiFunction<List<Filter>, LoadAttempt, Call<TableCollector>> callFactory;
   private final int partition;
   private final AtomicReferenceArray<AddressLookupTable[]> partitions;
+  private final AtomicReferenceArray<AddressLookupTable[]> secondaryPartitions;
+  private final AtomicReferenceArray<List<Filter>> subPartitionFilters;
+  private final AtomicReferenceArray<TableCollector> subPartitionResults;
+  private final AtomicInteger remainingSubPartitions;
+  private volatile boolean subPartitionFailed;
+  private volatile int numResponseTables;
 
   PartitionedLookupTableCallHandler(final ExecutorService executorService,
-                                    final Call<List<AccountInfo<AddressLookupTable>>> call,
-                                    final TableStats tableStats,
+                                    final List<Filter> filters,
+                                    final BiFunction<List<Filter>, LoadAttempt, Call<TableCollector>> callFactory,
                                     final int partition,
-                                    final AtomicReferenceArray<AddressLookupTable[]> partitions) {
-    super(executorService, call, tableStats);
+                                    final AtomicReferenceArray<AddressLookupTable[]> partitions,
+                                    final AtomicReferenceArray<AddressLookupTable[]> secondaryPartitions) {
+    super(executorService, attempt -> callFactory.apply(filters, attempt));
+    this.filters = filters;
+    this.callFactory = callFactory;
     this.partition = partition;
     this.partitions = partitions;
+    this.secondaryPartitions = secondaryPartitions;
+    this.subPartitionFilters = new AtomicReferenceArray<>(NUM_SUB_PARTITIONS);
+    this.subPartitionResults = new AtomicReferenceArray<>(NUM_SUB_PARTITIONS);
+    this.remainingSubPartitions = new AtomicInteger();
+  }
+
+  // The no authority partition is split by the first byte of the first table account, as empty tables are never
+  // retained. Authority partitions are split by the second byte of the authority.
+  static Filter subPartitionFilter(final int partition, final int subPartition) {
+    final int offset = partition == 0 ? LOOKUP_TABLE_META_SIZE : AUTHORITY_OFFSET + 1;
+    return Filter.createMemCompFilter(offset, new byte[]{(byte) subPartition});
   }
 
+  int partition() {
+    return partition;
+  }
+
+  /**
+   * @return The number of tables in the last response for this partition, before filtering.
+   */
+  int numResponseTables() {
+    return numResponseTables;
+  }
 
   @Override
-  public AddressLookupTable[] apply(final List<AccountInfo<AddressLookupTable>> accountInfos) {
-    final var tables = super.apply(accountInfos);
+  public AddressLookupTable[] apply(final TableCollector collector) {
+    final var tables = super.apply(collector);
     partitions.set(partition, tables);
+    numResponseTables = collector.numTables();
     return tables;
   }
+
+  @Override
+  protected void applySecondary(final AddressLookupTable[] secondaryTables) {
+    secondaryPartitions.set(partition, secondaryTables);
+  }
+
+  /**
+   * Must be called before fetching this partition by sub-partitions.
+   */
+  void resetSubPartitions() {
+    for (int i = 0; i < NUM_SUB_PARTITIONS; ++i) {
+      subPartitionResults.set(i, null);
+    }
+    remainingSubPartitions.set(NUM_SUB_PARTITIONS);
+    subPartitionFailed = false;
+  }
+
+  private List<Filter> subPartitionFilters(final int subPartition) {
+    final var filters = subPartitionFilters.get(subPartition);
+    if (filters != null) {
+      return filters;
+    }
+    final var subPartitionFilters = new ArrayList<>(this.filters);
+    subPartitionFilters.add(subPartitionFilter(partition, subPartition));
+    this.subPartitionFilters.compareAndSet(subPartition, null, List.copyOf(subPartitionFilters));
+    return this.subPartitionFilters.get(subPartition);
+  }
+
+  void callSubPartition(final int subPartition, final Duration timeout) {
+    final var filters = subPartitionFilters(subPartition);
+    final var collector = callAttempt(executorService, attempt -> callFactory.apply(filters, attempt), timeout).join();
+    subPartitionResults.set(subPartition, collector);
+  }
+
+  void failSubPartition() {
+    subPartitionFailed = true;
+  }
+
+  /**
+   * Must be called once for each sub-partition, whether it succeeded or failed.
+   *
+   * @return true if this was the last outstanding sub-partition.
+   */
+  boolean completeSubPartition() {
+    return remainingSubPartitions.decrementAndGet() == 0;
+  }
+
+  boolean subPartitionFailed() {
+    return subPartitionFailed;
+  }
+
+  AddressLookupTable[] applySubPartitions() {
+    final var merged = subPartitionResults.getAndSet(0, null);
+    for (int i = 1; i < NUM_SUB_PARTITIONS; ++i) {
+      merged.addAll(subPartitionResults.getAndSet(i, null));
+    }
+    return apply(merged);
+  }
 }
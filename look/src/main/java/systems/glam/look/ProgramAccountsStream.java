@@ -0,0 +1,161 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.core.rpc.Filter;
+import software.sava.rpc.json.PublicKeyEncoding;
+import software.sava.rpc.json.http.client.SolanaRpcClient;
+import systems.comodal.jsoniter.FieldBufferPredicate;
+import systems.comodal.jsoniter.JsonIterator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static systems.comodal.jsoniter.JsonIterator.fieldEquals;
+
+// Issues getProgramAccounts for lookup tables and decodes the response as it is read, handing each table to a consumer
+// instead of materializing the entire, potentially hundreds of megabytes, response.
+final class ProgramAccountsStream {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private ProgramAccountsStream() {
+  }
+
+  private static String requestBody(final PublicKey program, final List<Filter> filters) {
+    return String.format("""
+            {"jsonrpc":"2.0","id":1,"method":"getProgramAccounts","params":["%s",{"commitment":"confirmed","encoding":"base64","filters":[%s]}]}""",
+        program.toBase58(),
+        filters.stream().map(Filter::toJson).collect(Collectors.joining(","))
+    );
+  }
+
+  static <C extends Consumer<AddressLookupTable>> CompletableFuture<C> getProgramAccounts(final SolanaRpcClient rpcClient,
+                                                                                          final PublicKey program,
+                                                                                          final List<Filter> filters,
+                                                                                          final BiFunction<PublicKey, byte[], AddressLookupTable> factory,
+                                                                                          final LoadAttempt attempt,
+                                                                                          final C consumer) {
+    final var request = HttpRequest.newBuilder(rpcClient.endpoint())
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(requestBody(program, filters)))
+        .build();
+    return rpcClient.httpClient()
+        .sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+        .thenApply(response -> {
+          try (final var in = response.body()) {
+            attempt.readFrom(in);
+            if (response.statusCode() != 200) {
+              throw new IllegalStateException(String.format(
+                  "getProgramAccounts failed with status %d: %s",
+                  response.statusCode(), new String(in.readAllBytes())
+              ));
+            }
+            parse(in, factory, consumer);
+            return consumer;
+          } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  static void parse(final InputStream in,
+                    final BiFunction<PublicKey, byte[], AddressLookupTable> factory,
+                    final Consumer<AddressLookupTable> consumer) {
+    try (final var ji = JsonIterator.parse(in, BUFFER_SIZE)) {
+      ji.testObject(new ResponseParser(factory, consumer));
+    }
+  }
+
+  private static final class ResponseParser implements FieldBufferPredicate {
+
+    private final AccountParser accountParser;
+
+    private ResponseParser(final BiFunction<PublicKey, byte[], AddressLookupTable> factory,
+                           final Consumer<AddressLookupTable> consumer) {
+      this.accountParser = new AccountParser(
+          (address, data) -> consumer.accept(factory.apply(address, data))
+      );
+    }
+
+    @Override
+    public boolean test(final char[] buf, final int offset, final int len, final JsonIterator ji) {
+      if (fieldEquals("result", buf, offset, len)) {
+        while (ji.readArray()) {
+          accountParser.parse(ji);
+        }
+      } else if (fieldEquals("error", buf, offset, len)) {
+        final var error = new StringBuilder();
+        ji.testObject((b, o, l, errorJi) -> {
+          if (fieldEquals("message", b, o, l)) {
+            error.append(errorJi.readString());
+          } else {
+            errorJi.skip();
+          }
+          return true;
+        });
+        throw new IllegalStateException("getProgramAccounts failed: " + error);
+      } else {
+        ji.skip();
+      }
+      return true;
+    }
+  }
+
+  // Parses {"pubkey", "account": {"data": [base64, encoding]}} objects, re-used for each account as the address may
+  // follow the account data.
+  static final class AccountParser implements FieldBufferPredicate {
+
+    private final BiConsumer<PublicKey, byte[]> consumer;
+    private final FieldBufferPredicate dataParser;
+    private PublicKey address;
+    private byte[] data;
+
+    AccountParser(final BiConsumer<PublicKey, byte[]> consumer) {
+      this.consumer = consumer;
+      this.dataParser = (buf, offset, len, ji) -> {
+        if (fieldEquals("data", buf, offset, len)) {
+          if (ji.readArray()) {
+            data = ji.decodeBase64String();
+            while (ji.readArray()) {
+              ji.skip();
+            }
+          }
+        } else {
+          ji.skip();
+        }
+        return true;
+      };
+    }
+
+    void parse(final JsonIterator ji) {
+      address = null;
+      data = null;
+      ji.testObject(this);
+      if (address != null && data != null) {
+        consumer.accept(address, data);
+      }
+    }
+
+    @Override
+    public boolean test(final char[] buf, final int offset, final int len, final JsonIterator ji) {
+      if (fieldEquals("pubkey", buf, offset, len)) {
+        address = PublicKeyEncoding.parseBase58Encoded(ji);
+      } else if (fieldEquals("account", buf, offset, len)) {
+        ji.testObject(dataParser);
+      } else {
+        ji.skip();
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Tables which were useful for previous queries invoking the same programs, or pairs of programs.
+// Each key retains a bounded set of tables using the space-saving algorithm, so frequently returned tables survive
+// while rarely returned ones are replaced.
+final class ProgramTableIndex {
+
+  private static final int MAX_KEYS = 1 << 16;
+  private static final AddressLookupTable[] NO_CANDIDATES = new AddressLookupTable[0];
+
+  private record ProgramPair(PublicKey a, PublicKey b) {
+
+    static ProgramPair createPair(final PublicKey a, final PublicKey b) {
+      final int compare = Integer.compare(a.hashCode(), b.hashCode());
+      return compare < 0 || (compare == 0 && Arrays.compareUnsigned(a.toByteArray(), b.toByteArray()) < 0)
+          ? new ProgramPair(a, b)
+          : new ProgramPair(b, a);
+    }
+  }
+
+  private static final class Candidates {
+
+    private final AddressLookupTable[] tables;
+    private final long[] hits;
+    private int size;
+
+    private Candidates(final int maxTables) {
+      this.tables = new AddressLookupTable[maxTables];
+      this.hits = new long[maxTables];
+    }
+
+    private synchronized void record(final AddressLookupTable table) {
+      int min = 0;
+      for (int i = 0; i < size; ++i) {
+        if (tables[i].address().equals(table.address())) {
+          tables[i] = table;
+          ++hits[i];
+          return;
+        } else if (hits[i] < hits[min]) {
+          min = i;
+        }
+      }
+      if (size < tables.length) {
+        tables[size] = table;
+        hits[size++] = 1;
+      } else {
+        tables[min] = table;
+        ++hits[min];
+      }
+    }
+
+    private synchronized void addAddresses(final Map<PublicKey, AddressLookupTable> addresses) {
+      for (int i = 0; i < size; ++i) {
+        addresses.put(tables[i].address(), null);
+      }
+    }
+
+    /**
+     * @return false if no tables remain.
+     */
+    private synchronized boolean retain(final Map<PublicKey, AddressLookupTable> published) {
+      int retained = 0;
+      for (int i = 0; i < size; ++i) {
+        final var table = published.get(tables[i].address());
+        if (table != null) {
+          tables[retained] = table;
+          hits[retained++] = hits[i];
+        }
+      }
+      Arrays.fill(tables, retained, size, null);
+      size = retained;
+      return retained > 0;
+    }
+
+    private synchronized void collect(final ArrayList<AddressLookupTable> candidates) {
+      ADD:
+      for (int i = 0; i < size; ++i) {
+        final var table = tables[i];
+        for (final var candidate : candidates) {
+          if (candidate.address().equals(table.address())) {
+            continue ADD;
+          }
+        }
+        candidates.add(table);
+      }
+    }
+  }
+
+  private final int maxTablesPerKey;
+  private final ConcurrentHashMap<PublicKey, Candidates> byProgram;
+  private final ConcurrentHashMap<ProgramPair, Candidates> byProgramPair;
+
+  ProgramTableIndex(final int maxTablesPerKey) {
+    this.maxTablesPerKey = maxTablesPerKey;
+    this.byProgram = new ConcurrentHashMap<>();
+    this.byProgramPair = new ConcurrentHashMap<>();
+  }
+
+  private static PublicKey[] distinctPrograms(final PublicKey[] programs) {
+    return Arrays.stream(programs).distinct().toArray(PublicKey[]::new);
+  }
+
+  void observe(final PublicKey[] programs, final AddressLookupTable[] tables) {
+    if (maxTablesPerKey <= 0 || programs == null || programs.length == 0 || tables == null) {
+      return;
+    }
+    final var distinctPrograms = distinctPrograms(programs);
+    for (int i = 0; i < distinctPrograms.length; ++i) {
+      final var program = distinctPrograms[i];
+      var candidates = byProgram.get(program);
+      if (candidates == null) {
+        if (byProgram.size() >= MAX_KEYS) {
+          continue;
+        }
+        candidates = byProgram.computeIfAbsent(program, _ -> new Candidates(maxTablesPerKey));
+      }
+      for (final var table : tables) {
+        candidates.record(table);
+      }
+      for (int j = i + 1; j < distinctPrograms.length; ++j) {
+        final var pair = ProgramPair.createPair(program, distinctPrograms[j]);
+        var pairCandidates = byProgramPair.get(pair);
+        if (pairCandidates == null) {
+          if (byProgramPair.size() >= MAX_KEYS) {
+            continue;
+          }
+          pairCandidates = byProgramPair.computeIfAbsent(pair, _ -> new Candidates(maxTablesPerKey));
+        }
+        for (final var table : tables) {
+          pairCandidates.record(table);
+        }
+      }
+    }
+  }
+
+  /**
+   * Replaces the recorded tables with their instances in a newly published corpus, and drops those which are no
+   * longer part of it, so that replaced tables are not retained.
+   */
+  void retainPublished(final AddressLookupTable[] corpus) {
+    if (byProgram.isEmpty() && byProgramPair.isEmpty()) {
+      return;
+    }
+    final var published = new HashMap<PublicKey, AddressLookupTable>();
+    byProgram.values().forEach(candidates -> candidates.addAddresses(published));
+    byProgramPair.values().forEach(candidates -> candidates.addAddresses(published));
+    for (final var table : corpus) {
+      published.replace(table.address(), table);
+    }
+    byProgram.values().removeIf(candidates -> !candidates.retain(published));
+    byProgramPair.values().removeIf(candidates -> !candidates.retain(published));
+  }
+
+  /**
+   * Program pair candidates are collected first as they are the most specific to the query.
+   */
+  AddressLookupTable[] candidates(final PublicKey[] programs) {
+    if (maxTablesPerKey <= 0 || programs == null || programs.length == 0) {
+      return NO_CANDIDATES;
+    }
+    final var distinctPrograms = distinctPrograms(programs);
+    final var candidates = new ArrayList<AddressLookupTable>(maxTablesPerKey);
+    for (int i = 0; i < distinctPrograms.length; ++i) {
+      for (int j = i + 1; j < distinctPrograms.length; ++j) {
+        final var pairCandidates = byProgramPair.get(ProgramPair.createPair(distinctPrograms[i], distinctPrograms[j]));
+        if (pairCandidates != null) {
+          pairCandidates.collect(candidates);
+        }
+      }
+    }
+    for (final var program : distinctPrograms) {
+      final var programCandidates = byProgram.get(program);
+      if (programCandidates != null) {
+        programCandidates.collect(candidates);
+      }
+    }
+    return candidates.isEmpty() ? NO_CANDIDATES : candidates.toArray(AddressLookupTable[]::new);
+  }
+}
@@ -0,0 +1,22 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+public record ProposedTable(PublicKey[] accounts, long uncoveredOccurrences, long projectedSavings) {
+
+  public String toJson() {
+    return String.format("""
+            {
+              "projectedSavings": %d,
+              "uncoveredOccurrences": %d,
+              "numAccounts": %d,
+              "accounts": ["%s"]
+            }""",
+        projectedSavings, uncoveredOccurrences, accounts.length,
+        Arrays.stream(accounts).map(PublicKey::toBase58).collect(Collectors.joining("\",\""))
+    );
+  }
+}
@@ -0,0 +1,36 @@
+package systems.glam.look;
+
+import java.util.concurrent.TimeUnit;
+
+public final class QueryBudget {
+
+  private final long deadline;
+  private double corpusCoverage;
+
+  private QueryBudget(final long deadline) {
+    this.deadline = deadline;
+    this.corpusCoverage = 1.0;
+  }
+
+  public static QueryBudget createBudget(final long startNanos, final long maxLatencyMicros) {
+    return new QueryBudget(startNanos + TimeUnit.MICROSECONDS.toNanos(maxLatencyMicros));
+  }
+
+  boolean expired() {
+    return System.nanoTime() - deadline >= 0;
+  }
+
+  void recordCoverage(final long scannedTables, final long numTables) {
+    final double coverage = numTables == 0 ? 1.0 : scannedTables / (double) numTables;
+    if (coverage < corpusCoverage) {
+      corpusCoverage = coverage;
+    }
+  }
+
+  /**
+   * The lowest fraction of the corpus scanned by any scoring pass of the query.
+   */
+  public double corpusCoverage() {
+    return corpusCoverage;
+  }
+}
@@ -0,0 +1,102 @@
+package systems.glam.look;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters of partition calls across remote loads and the outcome of the last completed load.
+public final class RemoteLoadMetrics {
+
+  private final LongAdder calls;
+  private final LongAdder failedCalls;
+  private final LongAdder timeouts;
+  private final LongAdder retries;
+  private final LongAdder failedPartitions;
+  private final LongAdder fallbackPartitions;
+  private volatile long completedLoads;
+  private volatile long lastLoadTimestamp;
+  private volatile long lastLoadDurationMillis;
+  private volatile int lastLoadFailedPartitions;
+  private volatile int lastLoadResumedPartitions;
+
+  RemoteLoadMetrics() {
+    this.calls = new LongAdder();
+    this.failedCalls = new LongAdder();
+    this.timeouts = new LongAdder();
+    this.retries = new LongAdder();
+    this.failedPartitions = new LongAdder();
+    this.fallbackPartitions = new LongAdder();
+  }
+
+  void recordCall() {
+    calls.increment();
+  }
+
+  void recordFailedCall(final boolean timedOut) {
+    failedCalls.increment();
+    if (timedOut) {
+      timeouts.increment();
+    }
+  }
+
+  void recordRetry() {
+    retries.increment();
+  }
+
+  void recordFailedPartition(final boolean fellBack) {
+    failedPartitions.increment();
+    if (fellBack) {
+      fallbackPartitions.increment();
+    }
+  }
+
+  void recordLoad(final long durationMillis, final int numFailedPartitions, final int numResumedPartitions) {
+    this.lastLoadTimestamp = System.currentTimeMillis();
+    this.lastLoadDurationMillis = durationMillis;
+    this.lastLoadFailedPartitions = numFailedPartitions;
+    this.lastLoadResumedPartitions = numResumedPartitions;
+    ++completedLoads;
+  }
+
+  public long calls() {
+    return calls.sum();
+  }
+
+  public long failedCalls() {
+    return failedCalls.sum();
+  }
+
+  public long timeouts() {
+    return timeouts.sum();
+  }
+
+  public long retries() {
+    return retries.sum();
+  }
+
+  public long failedPartitions() {
+    return failedPartitions.sum();
+  }
+
+  public long fallbackPartitions() {
+    return fallbackPartitions.sum();
+  }
+
+  public long completedLoads() {
+    return completedLoads;
+  }
+
+  public long lastLoadTimestamp() {
+    return lastLoadTimestamp;
+  }
+
+  public long lastLoadDurationMillis() {
+    return lastLoadDurationMillis;
+  }
+
+  public int lastLoadFailedPartitions() {
+    return lastLoadFailedPartitions;
+  }
+
+  public int lastLoadResumedPartitions() {
+    return lastLoadResumedPartitions;
+  }
+}
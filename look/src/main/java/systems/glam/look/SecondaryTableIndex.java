@@ -0,0 +1,209 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.core.encoding.ByteUtil;
+import software.sava.core.tx.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+// Tables which did not meet the load thresholds, only searched for accounts the primary tables could not cover.
+// Tables are shared with the secondary partitions, which hold them as raw account data, and each account is indexed
+// by a 40-bit fingerprint packed with a 24-bit table id, sorted for binary search. Tables with the same set of
+// accounts are only indexed once.
+final class SecondaryTableIndex {
+
+  private static final System.Logger logger = System.getLogger(SecondaryTableIndex.class.getName());
+
+  static final SecondaryTableIndex EMPTY = new SecondaryTableIndex(new AddressLookupTable[0], new long[0]);
+
+  private static final int TABLE_ID_BITS = 24;
+  private static final int MAX_TABLES = 1 << TABLE_ID_BITS;
+  private static final long TABLE_ID_MASK = MAX_TABLES - 1;
+  private static final long FINGERPRINT_MASK = ~TABLE_ID_MASK;
+  private static final int MAX_TABLES_PER_TX = Transaction.MAX_ACCOUNTS >> 1;
+
+  private final AddressLookupTable[] tables;
+  private final long[] entries;
+
+  private SecondaryTableIndex(final AddressLookupTable[] tables, final long[] entries) {
+    this.tables = tables;
+    this.entries = entries;
+  }
+
+  static long fingerprint(final PublicKey account) {
+    return ByteUtil.getInt64LE(account.toByteArray(), 0) & FINGERPRINT_MASK;
+  }
+
+  static SecondaryTableIndex createIndex(final AddressLookupTable[] tables) {
+    final var accountSets = new AccountSetFingerprints();
+    final var distinctTables = Arrays.stream(tables).parallel()
+        .filter(accountSets::add)
+        .toArray(AddressLookupTable[]::new);
+    final int numTables = Math.min(distinctTables.length, MAX_TABLES - 1);
+    if (numTables == 0) {
+      return EMPTY;
+    } else if (numTables < distinctTables.length) {
+      logger.log(WARNING, String.format(
+          "Secondary table index is limited to %d of %d tables.", numTables, distinctTables.length
+      ));
+    }
+    if (distinctTables.length < tables.length) {
+      logger.log(INFO, String.format(
+          "Skipped %d secondary tables with duplicate accounts.", tables.length - distinctTables.length
+      ));
+    }
+
+    int numEntries = 0;
+    for (int i = 0; i < numTables; ++i) {
+      numEntries += distinctTables[i].numUniqueAccounts();
+    }
+    final long[] entries = new long[numEntries];
+    for (int i = 0, e = 0; i < numTables; ++i) {
+      final var table = distinctTables[i];
+      if (table instanceof LazyLookupTable lazyTable) {
+        for (int a = 0, numUnique = lazyTable.numUniqueAccounts(); a < numUnique; ++a) {
+          entries[e++] = (lazyTable.accountPrefix(lazyTable.uniqueAccountIndex(a)) & FINGERPRINT_MASK) | i;
+        }
+      } else {
+        for (final var account : table.uniqueAccounts()) {
+          entries[e++] = fingerprint(account) | i;
+        }
+      }
+    }
+    Arrays.parallelSort(entries);
+    return new SecondaryTableIndex(
+        numTables == distinctTables.length ? distinctTables : Arrays.copyOf(distinctTables, numTables),
+        entries
+    );
+  }
+
+  int numTables() {
+    return tables.length;
+  }
+
+  private void addCandidates(final PublicKey account, final Candidates candidates) {
+    final long fingerprint = fingerprint(account);
+    int i = Arrays.binarySearch(entries, fingerprint);
+    if (i < 0) {
+      i = -i - 1;
+    }
+    for (long entry; i < entries.length && ((entry = entries[i]) & FINGERPRINT_MASK) == fingerprint; ++i) {
+      candidates.add((int) (entry & TABLE_ID_MASK));
+    }
+  }
+
+  AddressLookupTable[] cover(final PublicKey[] accounts, final AddressLookupTable[] tables) {
+    if (entries.length == 0) {
+      return tables;
+    }
+    final int numTables = tables == null ? 0 : tables.length;
+    final var remaining = new ArrayList<PublicKey>(accounts.length);
+    ACCOUNTS:
+    for (final var account : accounts) {
+      for (int t = 0; t < numTables; ++t) {
+        if (tables[t].containKey(account)) {
+          continue ACCOUNTS;
+        }
+      }
+      remaining.add(account);
+    }
+
+    final var selected = new ArrayList<AddressLookupTable>();
+    final var candidates = new Candidates();
+    while (remaining.size() > 1 && numTables + selected.size() < MAX_TABLES_PER_TX) {
+      candidates.clear();
+      for (final var account : remaining) {
+        addCandidates(account, candidates);
+      }
+      final int bestTableId = candidates.mostFrequent();
+      if (bestTableId < 0) {
+        break;
+      }
+
+      final var table = this.tables[bestTableId];
+      int numCovered = 0;
+      for (final var account : remaining) {
+        if (table.containKey(account)) {
+          ++numCovered;
+        }
+      }
+      if (numCovered > 1) {
+        remaining.removeIf(table::containKey);
+        selected.add(table);
+      } else { // Fingerprint collision.
+        candidates.exclude(bestTableId);
+      }
+    }
+
+    if (selected.isEmpty()) {
+      return tables;
+    } else {
+      final var combined = tables == null
+          ? new AddressLookupTable[selected.size()]
+          : Arrays.copyOf(tables, numTables + selected.size());
+      for (int i = 0; i < selected.size(); ++i) {
+        combined[numTables + i] = selected.get(i);
+      }
+      return combined;
+    }
+  }
+
+  // Candidate table ids of a single pass, counted by sorting rather than boxing them into a map.
+  private static final class Candidates {
+
+    private int[] ids = new int[64];
+    private int size;
+    private int[] excluded = new int[0];
+
+    private void add(final int id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size << 1);
+      }
+      ids[size++] = id;
+    }
+
+    private void clear() {
+      size = 0;
+    }
+
+    private void exclude(final int id) {
+      excluded = Arrays.copyOf(excluded, excluded.length + 1);
+      excluded[excluded.length - 1] = id;
+    }
+
+    private boolean isExcluded(final int id) {
+      for (final int excludedId : excluded) {
+        if (excludedId == id) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return The id occurring most often, and at least twice, or -1.
+     */
+    private int mostFrequent() {
+      Arrays.sort(ids, 0, size);
+      int bestId = -1;
+      int bestCount = 1;
+      for (int i = 0, j; i < size; i = j) {
+        final int id = ids[i];
+        j = i + 1;
+        while (j < size && ids[j] == id) {
+          ++j;
+        }
+        if (j - i > bestCount && !isExcluded(id)) {
+          bestId = id;
+          bestCount = j - i;
+        }
+      }
+      return bestId;
+    }
+  }
+}
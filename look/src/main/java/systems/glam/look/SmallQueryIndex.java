@@ -0,0 +1,312 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.core.encoding.ByteUtil;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// Best covering tables for account pairs and triples which frequently occur in small queries, so that those queries
+// can be answered from a handful of candidate tables instead of scanning the corpus.
+final class SmallQueryIndex implements Runnable {
+
+  private static final System.Logger logger = System.getLogger(SmallQueryIndex.class.getName());
+
+  static final int MIN_ACCOUNTS = 2;
+  static final int MAX_ACCOUNTS = 6;
+  private static final int TABLES_PER_TUPLE = 4;
+  private static final int MAX_PARTNERS = 64;
+  private static final int MIN_OCCURRENCES = 2;
+
+  private record AccountTuple(PublicKey a, PublicKey b, PublicKey c) {
+
+    private static void sort(final PublicKey[] accounts) {
+      Arrays.sort(accounts, (x, y) -> {
+        final int compare = Integer.compare(x.hashCode(), y.hashCode());
+        return compare == 0 ? Arrays.compareUnsigned(x.toByteArray(), y.toByteArray()) : compare;
+      });
+    }
+
+    static AccountTuple createPair(final PublicKey a, final PublicKey b) {
+      final var accounts = new PublicKey[]{a, b};
+      sort(accounts);
+      return new AccountTuple(accounts[0], accounts[1], null);
+    }
+
+    static AccountTuple createTriple(final PublicKey a, final PublicKey b, final PublicKey c) {
+      final var accounts = new PublicKey[]{a, b, c};
+      sort(accounts);
+      return new AccountTuple(accounts[0], accounts[1], accounts[2]);
+    }
+
+    boolean containedBy(final AddressLookupTable table) {
+      return table.containKey(a) && table.containKey(b) && (c == null || table.containKey(c));
+    }
+
+    void forEach(final Consumer<PublicKey> consumer) {
+      consumer.accept(a);
+      consumer.accept(b);
+      if (c != null) {
+        consumer.accept(c);
+      }
+    }
+  }
+
+  private static final class BestTables {
+
+    private final PublicKey[] partners;
+    private final AddressLookupTable[] tables;
+    private final int[] scores;
+    private int size;
+
+    private BestTables(final PublicKey[] partners) {
+      this.partners = partners;
+      this.tables = new AddressLookupTable[TABLES_PER_TUPLE];
+      this.scores = new int[TABLES_PER_TUPLE];
+    }
+
+    // Tables are ranked by how many accounts that co-occur with the tuple they also contain.
+    private synchronized void offer(final AddressLookupTable table) {
+      int score = 0;
+      for (final var partner : partners) {
+        if (table.containKey(partner)) {
+          ++score;
+        }
+      }
+      int i = size < TABLES_PER_TUPLE ? size++ : TABLES_PER_TUPLE;
+      for (; i > 0 && (score > scores[i - 1]
+          || (score == scores[i - 1] && table.numUniqueAccounts() > tables[i - 1].numUniqueAccounts())); --i) {
+        if (i < TABLES_PER_TUPLE) {
+          tables[i] = tables[i - 1];
+          scores[i] = scores[i - 1];
+        }
+      }
+      if (i < TABLES_PER_TUPLE) {
+        tables[i] = table;
+        scores[i] = score;
+      }
+    }
+
+    private AddressLookupTable[] tables() {
+      return Arrays.copyOf(tables, size);
+    }
+  }
+
+  private final int maxTrackedTuples;
+  private final Duration refreshDelay;
+  private final ConcurrentHashMap<AccountTuple, LongAdder> tupleCounts;
+  private volatile AddressLookupTable[] corpus;
+  private volatile Map<AccountTuple, AddressLookupTable[]> bestTables;
+
+  SmallQueryIndex(final int maxTrackedTuples, final Duration refreshDelay) {
+    this.maxTrackedTuples = maxTrackedTuples;
+    this.refreshDelay = refreshDelay;
+    this.tupleCounts = new ConcurrentHashMap<>();
+    this.bestTables = Map.of();
+  }
+
+  static boolean isSmallQuery(final PublicKey[] accounts) {
+    return accounts.length >= MIN_ACCOUNTS && accounts.length <= MAX_ACCOUNTS;
+  }
+
+  private void increment(final AccountTuple tuple) {
+    var count = tupleCounts.get(tuple);
+    if (count == null) {
+      if (tupleCounts.size() >= maxTrackedTuples << 1) {
+        return;
+      }
+      count = tupleCounts.computeIfAbsent(tuple, _ -> new LongAdder());
+    }
+    count.increment();
+  }
+
+  void observe(final PublicKey[] accounts) {
+    if (maxTrackedTuples <= 0 || !isSmallQuery(accounts)) {
+      return;
+    }
+    for (int i = 0; i < accounts.length; ++i) {
+      for (int j = i + 1; j < accounts.length; ++j) {
+        increment(AccountTuple.createPair(accounts[i], accounts[j]));
+        for (int k = j + 1; k < accounts.length; ++k) {
+          increment(AccountTuple.createTriple(accounts[i], accounts[j], accounts[k]));
+        }
+      }
+    }
+  }
+
+  private static boolean containsAll(final AddressLookupTable table, final PublicKey[] accounts) {
+    for (final var account : accounts) {
+      if (!table.containKey(account)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static AddressLookupTable coveringTable(final AddressLookupTable[] tables, final PublicKey[] accounts) {
+    if (tables != null) {
+      for (final var table : tables) {
+        if (containsAll(table, accounts)) {
+          return table;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Only a single table which covers all accounts is returned, as no answer from a full scan could be better. Triples
+   * are checked first as their tables are the most likely to also cover the remaining accounts.
+   */
+  AddressLookupTable coveringTable(final PublicKey[] accounts) {
+    final var bestTables = this.bestTables;
+    if (bestTables.isEmpty() || !isSmallQuery(accounts)) {
+      return null;
+    }
+    for (int i = 0; i < accounts.length; ++i) {
+      for (int j = i + 1; j < accounts.length; ++j) {
+        for (int k = j + 1; k < accounts.length; ++k) {
+          final var table = coveringTable(
+              bestTables.get(AccountTuple.createTriple(accounts[i], accounts[j], accounts[k])),
+              accounts
+          );
+          if (table != null) {
+            return table;
+          }
+        }
+      }
+    }
+    for (int i = 0; i < accounts.length; ++i) {
+      for (int j = i + 1; j < accounts.length; ++j) {
+        final var table = coveringTable(bestTables.get(AccountTuple.createPair(accounts[i], accounts[j])), accounts);
+        if (table != null) {
+          return table;
+        }
+      }
+    }
+    return null;
+  }
+
+  private List<AccountTuple> frequentTuples() {
+    return tupleCounts.entrySet().stream()
+        .filter(entry -> entry.getValue().sum() >= MIN_OCCURRENCES)
+        .sorted((a, b) -> Long.compare(b.getValue().sum(), a.getValue().sum()))
+        .limit(maxTrackedTuples)
+        .map(Map.Entry::getKey)
+        .toList();
+  }
+
+  // Decay and evict once per refresh period, so that the tracked tuples follow recent traffic regardless of how often
+  // a new corpus is published.
+  private void decayCounts() {
+    final var iterator = tupleCounts.values().iterator();
+    while (iterator.hasNext()) {
+      final var count = iterator.next();
+      final long halved = count.sum() >> 1;
+      if (halved == 0) {
+        iterator.remove();
+      } else {
+        count.reset();
+        count.add(halved);
+      }
+    }
+  }
+
+  /**
+   * Recomputes the best tables of the frequent tuples, also called whenever a new corpus is published.
+   */
+  synchronized void rebuild(final AddressLookupTable[] corpus) {
+    this.corpus = corpus;
+    if (maxTrackedTuples <= 0 || corpus == null || corpus.length == 0) {
+      return;
+    }
+    final long start = System.currentTimeMillis();
+    final var tuples = frequentTuples();
+    if (tuples.isEmpty()) {
+      this.bestTables = Map.of();
+      return;
+    }
+
+    final var partnerSets = HashMap.<PublicKey, Set<PublicKey>>newHashMap(tuples.size());
+    for (final var tuple : tuples) {
+      tuple.forEach(account -> tuple.forEach(partner -> {
+        if (!partner.equals(account)) {
+          partnerSets.computeIfAbsent(account, _ -> new HashSet<>()).add(partner);
+        }
+      }));
+    }
+    final var entries = new BestTablesEntry[tuples.size()];
+    int e = 0;
+    for (final var tuple : tuples) {
+      final var partners = new HashSet<PublicKey>();
+      tuple.forEach(account -> partners.addAll(partnerSets.get(account)));
+      tuple.forEach(partners::remove);
+      entries[e++] = new BestTablesEntry(
+          tuple,
+          new BestTables(partners.stream().limit(MAX_PARTNERS).toArray(PublicKey[]::new))
+      );
+    }
+    // Only needs to be found via one of its accounts, by the key prefix read straight from the table account data.
+    Arrays.sort(entries, Comparator.comparingLong(BestTablesEntry::prefix));
+    final long[] prefixes = Arrays.stream(entries).mapToLong(BestTablesEntry::prefix).toArray();
+
+    IntStream.range(0, corpus.length).parallel().forEach(i -> {
+      final var table = corpus[i];
+      LazyLookupTable.forEachUniqueAccount(table, (key, offset) -> {
+        final long prefix = ByteUtil.getInt64LE(key, offset);
+        int p = Arrays.binarySearch(prefixes, prefix);
+        if (p >= 0) {
+          while (p > 0 && prefixes[p - 1] == prefix) {
+            --p;
+          }
+          for (; p < prefixes.length && prefixes[p] == prefix; ++p) {
+            final var entry = entries[p];
+            if (entry.tuple.containedBy(table)) {
+              entry.bestTables.offer(table);
+            }
+          }
+        }
+      });
+    });
+
+    final var bestTables = HashMap.<AccountTuple, AddressLookupTable[]>newHashMap(tuples.size());
+    for (final var entry : entries) {
+      if (entry.bestTables.size > 0) {
+        bestTables.put(entry.tuple, entry.bestTables.tables());
+      }
+    }
+    this.bestTables = bestTables;
+    logger.log(INFO, String.format(
+        "[frequentTuples=%d] [coveredTuples=%d] [duration=%dms]",
+        tuples.size(), bestTables.size(), System.currentTimeMillis() - start
+    ));
+  }
+
+  private record BestTablesEntry(AccountTuple tuple, BestTables bestTables) {
+
+    long prefix() {
+      return ByteUtil.getInt64LE(tuple.a.toByteArray(), 0);
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      for (final long delayMillis = refreshDelay.toMillis(); ; ) {
+        MILLISECONDS.sleep(delayMillis);
+        rebuild(corpus);
+        decayCounts();
+      }
+    } catch (final InterruptedException e) {
+      // return;
+    }
+  }
+}
@@ -0,0 +1,253 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+
+/**
+ * A local WebSocket server which speaks just enough of the {@code programSubscribe} protocol to feed lookup table
+ * changes to a {@link TableUpdateSource} offline.
+ * <p>
+ * Run with {@code <port> <cacheFile> [intervalMillis]} to replay the tables of a partition cache file, one notification
+ * per interval, in a loop.
+ */
+public final class StubTableFeedServer implements AutoCloseable {
+
+  private static final System.Logger logger = System.getLogger(StubTableFeedServer.class.getName());
+
+  private static final String WEB_SOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+  private static final String ALT_PROGRAM = "AddressLookupTab1e1111111111111111111111111";
+  private static final Pattern WEB_SOCKET_KEY = Pattern.compile("(?im)^Sec-WebSocket-Key:\\s*(\\S+)\\s*$");
+  private static final Pattern REQUEST_ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+  private static final int OP_TEXT = 0x1;
+  private static final int OP_CLOSE = 0x8;
+  private static final int OP_PING = 0x9;
+  private static final int OP_PONG = 0xA;
+
+  private final ServerSocket serverSocket;
+  private final ExecutorService executor;
+  private final Set<Connection> subscribers;
+  private final AtomicLong slot;
+
+  private StubTableFeedServer(final ServerSocket serverSocket, final ExecutorService executor) {
+    this.serverSocket = serverSocket;
+    this.executor = executor;
+    this.subscribers = ConcurrentHashMap.newKeySet();
+    this.slot = new AtomicLong();
+  }
+
+  /**
+   * @param port 0 to bind any free port.
+   */
+  public static StubTableFeedServer start(final int port, final ExecutorService executor) throws IOException {
+    final var server = new StubTableFeedServer(new ServerSocket(port, 64, InetAddress.getLoopbackAddress()), executor);
+    executor.execute(server::acceptConnections);
+    return server;
+  }
+
+  public int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  public int numSubscribers() {
+    return subscribers.size();
+  }
+
+  /**
+   * Notifies all subscribers of a change to a table account.
+   *
+   * @param data The account data, empty to signal that the account was closed.
+   */
+  public void publish(final PublicKey address, final byte[] data) {
+    final var notification = String.format("""
+            {"jsonrpc":"2.0","method":"programNotification","params":{"result":{"context":{"slot":%d},"value":{"pubkey":"%s","account":{"data":["%s","base64"],"executable":false,"lamports":%d,"owner":"%s","rentEpoch":18446744073709551615,"space":%d}}},"subscription":%d}}""",
+        slot.incrementAndGet(),
+        address.toBase58(),
+        Base64.getEncoder().encodeToString(data),
+        data.length == 0 ? 0 : 1_000_000,
+        ALT_PROGRAM,
+        data.length,
+        1
+    ).getBytes(StandardCharsets.UTF_8);
+    for (final var subscriber : subscribers) {
+      try {
+        subscriber.writeFrame(OP_TEXT, notification);
+      } catch (final IOException e) {
+        subscribers.remove(subscriber);
+      }
+    }
+  }
+
+  public void publish(final AddressLookupTable table) {
+    final byte[] data = new byte[table.length()];
+    table.write(data, 0);
+    publish(table.address(), data);
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        final var socket = serverSocket.accept();
+        executor.execute(() -> new Connection(socket).serve());
+      } catch (final IOException e) {
+        if (!serverSocket.isClosed()) {
+          logger.log(WARNING, "Failed to accept stub feed connection.", e);
+        }
+      }
+    }
+  }
+
+  private static String acceptKey(final String webSocketKey) {
+    try {
+      final var sha1 = MessageDigest.getInstance("SHA-1");
+      final byte[] digest = sha1.digest((webSocketKey + WEB_SOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+      return Base64.getEncoder().encodeToString(digest);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String readHandshake(final InputStream in) throws IOException {
+    final var request = new StringBuilder(512);
+    for (int b, matched = 0; matched < 4; ) {
+      if ((b = in.read()) < 0) {
+        throw new EOFException();
+      }
+      request.append((char) b);
+      matched = (b == '\r' && (matched & 1) == 0) || (b == '\n' && (matched & 1) == 1) ? matched + 1 : 0;
+    }
+    return request.toString();
+  }
+
+  private final class Connection {
+
+    private final Socket socket;
+    private OutputStream out;
+
+    private Connection(final Socket socket) {
+      this.socket = socket;
+    }
+
+    private synchronized void writeFrame(final int opCode, final byte[] payload) throws IOException {
+      out.write(0x80 | opCode);
+      if (payload.length < 126) {
+        out.write(payload.length);
+      } else if (payload.length <= 0xFFFF) {
+        out.write(126);
+        out.write(payload.length >>> 8);
+        out.write(payload.length);
+      } else {
+        out.write(127);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          out.write((int) ((long) payload.length >>> shift));
+        }
+      }
+      out.write(payload);
+      out.flush();
+    }
+
+    private void serve() {
+      try (socket) {
+        final var in = new BufferedInputStream(socket.getInputStream());
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        final var keyMatcher = WEB_SOCKET_KEY.matcher(readHandshake(in));
+        if (!keyMatcher.find()) {
+          out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+          out.flush();
+          return;
+        }
+        out.write(String.format("""
+                HTTP/1.1 101 Switching Protocols\r
+                Upgrade: websocket\r
+                Connection: Upgrade\r
+                Sec-WebSocket-Accept: %s\r
+                \r
+                """, acceptKey(keyMatcher.group(1))
+        ).getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        final var dataIn = new DataInputStream(in);
+        for (; ; ) {
+          final int opCode = dataIn.readUnsignedByte() & 0x0F;
+          final int second = dataIn.readUnsignedByte();
+          long length = second & 0x7F;
+          if (length == 126) {
+            length = dataIn.readUnsignedShort();
+          } else if (length == 127) {
+            length = dataIn.readLong();
+          }
+          final byte[] mask = new byte[4];
+          if ((second & 0x80) != 0) {
+            dataIn.readFully(mask);
+          }
+          final byte[] payload = new byte[Math.toIntExact(length)];
+          dataIn.readFully(payload);
+          for (int i = 0; i < payload.length; ++i) {
+            payload[i] ^= mask[i & 3];
+          }
+
+          if (opCode == OP_CLOSE) {
+            writeFrame(OP_CLOSE, payload);
+            return;
+          } else if (opCode == OP_PING) {
+            writeFrame(OP_PONG, payload);
+          } else if (opCode == OP_TEXT) {
+            final var request = new String(payload, StandardCharsets.UTF_8);
+            if (request.contains("programSubscribe")) {
+              final var idMatcher = REQUEST_ID.matcher(request);
+              final var response = String.format(
+                  "{\"jsonrpc\":\"2.0\",\"result\":1,\"id\":%s}",
+                  idMatcher.find() ? idMatcher.group(1) : "null"
+              );
+              writeFrame(OP_TEXT, response.getBytes(StandardCharsets.UTF_8));
+              subscribers.add(this);
+            }
+          }
+        }
+      } catch (final IOException e) {
+        // disconnected
+      } finally {
+        subscribers.remove(this);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+  }
+
+  public static void main(final String[] args) throws IOException, InterruptedException {
+    final int port = Integer.parseInt(args[0]);
+    final var tables = TableCacheFile.read(Path.of(args[1]));
+    final long intervalMillis = args.length > 2 ? Long.parseLong(args[2]) : 100;
+    try (final var executor = Executors.newVirtualThreadPerTaskExecutor();
+         final var server = StubTableFeedServer.start(port, executor)) {
+      logger.log(INFO, String.format(
+          "Replaying %d lookup tables on ws://localhost:%d every %dms.", tables.length, server.port(), intervalMillis
+      ));
+      for (int i = 0; ; i = (i + 1) % tables.length) {
+        Thread.sleep(intervalMillis);
+        server.publish(tables[i]);
+      }
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.lookup.AddressLookupTable;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.LongSummaryStatistics;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+import static software.sava.core.accounts.lookup.AddressLookupTable.LOOKUP_TABLE_MAX_ADDRESSES;
+
+// Joint histogram of the number of accounts and unique accounts of tables. Both are bounded by the maximum number of
+// table addresses, so every cell fits in a fixed array and the histogram is an exact, mergeable quantile sketch of the
+// account counts and of account efficiency. Cells are striped by thread and updated lock-free.
+final class TableAccountsHistogram {
+
+  private static final int DIMENSION = LOOKUP_TABLE_MAX_ADDRESSES + 1;
+  private static final int NUM_CELLS = DIMENSION * DIMENSION;
+  private static final int NUM_STRIPES = 4;
+  // Cells ordered by account efficiency, so that efficiency quantiles are a single pass over the counts.
+  private static final int[] BY_EFFICIENCY;
+
+  static {
+    BY_EFFICIENCY = IntStream.range(0, NUM_CELLS)
+        .filter(cell -> numUniqueAccounts(cell) <= numAccounts(cell))
+        .boxed()
+        .sorted((a, b) -> Double.compare(efficiency(a), efficiency(b)))
+        .mapToInt(Integer::intValue)
+        .toArray();
+  }
+
+  private final AtomicLongArray[] stripes;
+
+  TableAccountsHistogram() {
+    this.stripes = new AtomicLongArray[NUM_STRIPES];
+    for (int i = 0; i < NUM_STRIPES; ++i) {
+      stripes[i] = new AtomicLongArray(NUM_CELLS);
+    }
+  }
+
+  private static int numAccounts(final int cell) {
+    return cell / DIMENSION;
+  }
+
+  private static int numUniqueAccounts(final int cell) {
+    return cell % DIMENSION;
+  }
+
+  private static double efficiency(final int cell) {
+    final int numAccounts = numAccounts(cell);
+    return numAccounts == 0 ? 0 : numUniqueAccounts(cell) / (double) numAccounts;
+  }
+
+  void record(final AddressLookupTable table) {
+    final int cell = (table.numAccounts() * DIMENSION) + table.numUniqueAccounts();
+    stripes[(int) (Thread.currentThread().threadId() & (NUM_STRIPES - 1))].getAndIncrement(cell);
+  }
+
+  void reset() {
+    for (final var stripe : stripes) {
+      for (int i = 0; i < NUM_CELLS; ++i) {
+        stripe.set(i, 0);
+      }
+    }
+  }
+
+  private long[] counts() {
+    final long[] counts = new long[NUM_CELLS];
+    for (final var stripe : stripes) {
+      for (int i = 0; i < NUM_CELLS; ++i) {
+        counts[i] += stripe.get(i);
+      }
+    }
+    return counts;
+  }
+
+  // The lower middle value, matching TableStats#median of a sorted array.
+  private static long medianRank(final long count) {
+    return (count & 1) == 1 ? count / 2 : (count / 2) - 1;
+  }
+
+  private static long median(final long[] marginal, final long count) {
+    final long rank = medianRank(count);
+    long seen = 0;
+    for (int value = 0; value < marginal.length; ++value) {
+      seen += marginal[value];
+      if (seen > rank) {
+        return value;
+      }
+    }
+    return 0;
+  }
+
+  private static LongSummaryStatistics summarize(final long[] marginal, final long count) {
+    if (count == 0) {
+      return new LongSummaryStatistics();
+    }
+    long min = -1;
+    long max = 0;
+    long sum = 0;
+    for (int value = 0; value < marginal.length; ++value) {
+      if (marginal[value] > 0) {
+        if (min < 0) {
+          min = value;
+        }
+        max = value;
+        sum += marginal[value] * value;
+      }
+    }
+    return new LongSummaryStatistics(count, min, max, sum);
+  }
+
+  TableStatsSummary summarize(final long numTables, final long numDuplicateSets) {
+    final long[] counts = counts();
+    final long[] numAccounts = new long[DIMENSION];
+    final long[] numUniqueAccounts = new long[DIMENSION];
+    long count = 0;
+    long numWithDuplicateAccounts = 0;
+    for (int cell = 0; cell < NUM_CELLS; ++cell) {
+      final long cellCount = counts[cell];
+      if (cellCount > 0) {
+        count += cellCount;
+        numAccounts[numAccounts(cell)] += cellCount;
+        numUniqueAccounts[numUniqueAccounts(cell)] += cellCount;
+        if (efficiency(cell) < 1.0) {
+          numWithDuplicateAccounts += cellCount;
+        }
+      }
+    }
+
+    double minEfficiency = 0;
+    double maxEfficiency = 0;
+    double sumEfficiency = 0;
+    double medianEfficiency = 0;
+    final long medianRank = medianRank(count);
+    long seen = 0;
+    for (final int cell : BY_EFFICIENCY) {
+      final long cellCount = counts[cell];
+      if (cellCount > 0) {
+        final double efficiency = efficiency(cell);
+        if (seen == 0) {
+          minEfficiency = efficiency;
+        }
+        if (seen <= medianRank && seen + cellCount > medianRank) {
+          medianEfficiency = efficiency;
+        }
+        maxEfficiency = efficiency;
+        sumEfficiency += efficiency * cellCount;
+        seen += cellCount;
+      }
+    }
+
+    return new TableStatsSummary(
+        numTables,
+        count,
+        numDuplicateSets,
+        numWithDuplicateAccounts,
+        new DoubleSummaryStatistics(count, minEfficiency, maxEfficiency, sumEfficiency), medianEfficiency,
+        summarize(numAccounts, count), median(numAccounts, count),
+        summarize(numUniqueAccounts, count), median(numUniqueAccounts, count)
+    );
+  }
+
+  long count() {
+    long count = 0;
+    for (final var stripe : stripes) {
+      for (int i = 0; i < NUM_CELLS; ++i) {
+        count += stripe.get(i);
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,161 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Summaries of consecutive blocks of the corpus, the maximum number of unique accounts of any table in the block and
+// a bloom signature of the union of their accounts, so that scans can skip blocks which cannot reach a minimum score.
+final class TableBlockIndex {
+
+  static final TableBlockIndex EMPTY = new TableBlockIndex(new AddressLookupTable[0], 0, 0, new long[0], new int[0]);
+
+  private static final int SIGNATURE_BITS_PER_TABLE = 1_024;
+  private static final int TIER_SHIFT = 5;
+  private static final long SECOND_HASH_SEED = 0x9E3779B97F4A7C15L;
+
+  private final AddressLookupTable[] tables;
+  private final int blockShift;
+  private final int signatureShift;
+  private final long[] signatures;
+  private final int[] maxUniqueAccounts;
+
+  private TableBlockIndex(final AddressLookupTable[] tables,
+                          final int blockShift,
+                          final int signatureShift,
+                          final long[] signatures,
+                          final int[] maxUniqueAccounts) {
+    this.tables = tables;
+    this.blockShift = blockShift;
+    this.signatureShift = signatureShift;
+    this.signatures = signatures;
+    this.maxUniqueAccounts = maxUniqueAccounts;
+  }
+
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private record ClusterKey(AddressLookupTable table, int tier, long minHash, long secondMinHash)
+      implements Comparable<ClusterKey> {
+
+    static ClusterKey createKey(final AddressLookupTable table) {
+      final long[] minHashes = {Long.MAX_VALUE, Long.MAX_VALUE};
+      LazyLookupTable.forEachUniqueAccount(table, (key, offset) -> {
+        final long h = TableCorpusPruner.accountHash(key, offset);
+        minHashes[0] = Math.min(minHashes[0], h);
+        minHashes[1] = Math.min(minHashes[1], mix(h ^ SECOND_HASH_SEED));
+      });
+      return new ClusterKey(table, table.numUniqueAccounts() >> TIER_SHIFT, minHashes[0], minHashes[1]);
+    }
+
+    @Override
+    public int compareTo(final ClusterKey o) {
+      int compare = Integer.compare(o.tier, tier);
+      if (compare != 0) {
+        return compare;
+      }
+      compare = Long.compare(minHash, o.minHash);
+      if (compare != 0) {
+        return compare;
+      }
+      compare = Long.compare(secondMinHash, o.secondMinHash);
+      return compare == 0 ? Integer.compare(o.table.numUniqueAccounts(), table.numUniqueAccounts()) : compare;
+    }
+  }
+
+  /**
+   * Clusters tables with similar accounts next to each other, within tiers of their number of unique accounts so that
+   * the largest tables are still scanned first.
+   */
+  static AddressLookupTable[] clusterTables(final AddressLookupTable[] tables) {
+    return Arrays.stream(tables).parallel()
+        .map(ClusterKey::createKey)
+        .sorted()
+        .map(ClusterKey::table)
+        .toArray(AddressLookupTable[]::new);
+  }
+
+  static TableBlockIndex createIndex(final AddressLookupTable[] tables, final int tablesPerBlock) {
+    if (tablesPerBlock <= 0 || tables.length == 0) {
+      return EMPTY;
+    }
+    final int blockShift = 31 - Integer.numberOfLeadingZeros(Math.max(2, tablesPerBlock));
+    final int signatureBits = SIGNATURE_BITS_PER_TABLE << blockShift;
+    final int wordsPerBlock = signatureBits >> 6;
+    final int signatureShift = Long.numberOfLeadingZeros(signatureBits - 1);
+    final int numBlocks = ((tables.length - 1) >> blockShift) + 1;
+    final long[] signatures = new long[numBlocks * wordsPerBlock];
+    final int[] maxUniqueAccounts = new int[numBlocks];
+    IntStream.range(0, numBlocks).parallel().forEach(block -> {
+      final int offset = block * wordsPerBlock;
+      final int from = block << blockShift;
+      final int to = Math.min(from + (1 << blockShift), tables.length);
+      int max = 0;
+      for (int i = from; i < to; ++i) {
+        final var table = tables[i];
+        max = Math.max(max, table.numUniqueAccounts());
+        LazyLookupTable.forEachUniqueAccount(table, (key, keyOffset) -> {
+          final int bit = (int) (TableCorpusPruner.accountHash(key, keyOffset) >>> signatureShift);
+          signatures[offset + (bit >> 6)] |= 1L << bit;
+        });
+      }
+      maxUniqueAccounts[block] = max;
+    });
+    return new TableBlockIndex(tables, blockShift, signatureShift, signatures, maxUniqueAccounts);
+  }
+
+  boolean indexes(final AddressLookupTable[] tables) {
+    return this.tables == tables && this != EMPTY;
+  }
+
+  int numBlocks() {
+    return maxUniqueAccounts.length;
+  }
+
+  BlockQuery createQuery(final PublicKey[] accounts) {
+    final int[] bits = new int[accounts.length];
+    for (int i = 0; i < accounts.length; ++i) {
+      bits[i] = (int) (TableCorpusPruner.accountHash(accounts[i]) >>> signatureShift);
+    }
+    return new BlockQuery(bits);
+  }
+
+  final class BlockQuery {
+
+    private final int[] bits;
+
+    private BlockQuery(final int[] bits) {
+      this.bits = bits;
+    }
+
+    private int maxScore(final int block) {
+      final int max = maxUniqueAccounts[block];
+      final int offset = block << (blockShift + 4);
+      int score = 0;
+      for (final int bit : bits) {
+        if ((signatures[offset + (bit >> 6)] & (1L << bit)) != 0 && ++score == max) {
+          break;
+        }
+      }
+      return score;
+    }
+
+    /**
+     * @return The next index from {@code i} which may score at least {@code minScore}, skipping whole blocks when
+     * starting on a block boundary.
+     */
+    int nextCandidate(int i, final int to, final int minScore) {
+      final int blockMask = (1 << blockShift) - 1;
+      while (i < to && (i & blockMask) == 0 && maxScore(i >> blockShift) < minScore) {
+        i += blockMask + 1;
+      }
+      return Math.min(i, to);
+    }
+  }
+}
@@ -0,0 +1,297 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.core.encoding.ByteUtil;
+import software.sava.services.solana.alt.CachedAddressLookupTable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT_UNALIGNED;
+import static java.lang.foreign.ValueLayout.JAVA_LONG_UNALIGNED;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+import static software.sava.core.accounts.PublicKey.PUBLIC_KEY_LENGTH;
+import static software.sava.core.accounts.lookup.AddressLookupTable.*;
+
+// Partition cache files, memory mapped when read so that loading never holds a second heap copy of a whole partition.
+//
+// Version 2, [magic][numTables][dictionarySize][dictionary keys][tables], where each table is
+// [address][deactivationSlot][lastExtendedSlot][authorityOption][authority?][numAccounts][account ids], with counts
+// and ids varint encoded. Ids are ranked by how many tables reference the account, so that the most common accounts
+// take a single byte.
+// Version 1, [magic][numTables][offsets of each table and the end][cached tables].
+// Legacy files, [numTables][cached tables], have no magic and are read in full.
+final class TableCacheFile {
+
+  // Negative so that it can never be mistaken for the table count of a legacy file.
+  static final int MAGIC_V1 = 0xA17C_0001;
+  static final int MAGIC_V2 = 0xA17C_0002;
+
+  private static final int HEADER_LENGTH = Integer.BYTES << 1;
+  private static final ValueLayout.OfInt INT_LE = JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+  private static final ValueLayout.OfLong LONG_LE = JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+  // Discriminator of the on-chain lookup table account state.
+  private static final int LOOKUP_TABLE_TYPE = 1;
+
+  private TableCacheFile() {
+  }
+
+  private static int readInt(final MemorySegment segment, final long offset) {
+    return segment.get(INT_LE, offset);
+  }
+
+  static AddressLookupTable[] read(final Path cacheFile) throws IOException {
+    try (final var fileChannel = FileChannel.open(cacheFile, READ);
+         final var arena = Arena.ofConfined()) {
+      final long size = fileChannel.size();
+      if (size < Integer.BYTES) {
+        throw new IOException("Truncated lookup table cache file " + cacheFile);
+      }
+      final var segment = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+      try {
+        return decode(segment);
+      } catch (final IndexOutOfBoundsException | IllegalArgumentException e) {
+        throw new IOException("Corrupted lookup table cache file " + cacheFile, e);
+      }
+    }
+  }
+
+  /**
+   * @throws IndexOutOfBoundsException if the segment is truncated.
+   * @throws IllegalArgumentException   if the segment is otherwise corrupted.
+   */
+  static AddressLookupTable[] decode(final MemorySegment segment) {
+    final int magic = readInt(segment, 0);
+    if (magic == MAGIC_V2) {
+      return readV2(segment);
+    } else if (magic == MAGIC_V1) {
+      return readV1(segment);
+    } else {
+      return readLegacy(segment.toArray(JAVA_BYTE));
+    }
+  }
+
+  private static AddressLookupTable[] readV1(final MemorySegment segment) {
+    final long size = segment.byteSize();
+    final int numTables = readInt(segment, Integer.BYTES);
+    final long offsetsEnd = HEADER_LENGTH + ((numTables + 1L) * Integer.BYTES);
+    if (numTables < 0 || offsetsEnd > size) {
+      throw new IllegalArgumentException("Invalid number of tables.");
+    }
+    final var tables = new AddressLookupTable[numTables];
+    long offset = readInt(segment, HEADER_LENGTH);
+    for (int i = 0; i < numTables; ++i) {
+      final long end = readInt(segment, HEADER_LENGTH + ((i + 1L) * Integer.BYTES));
+      if (offset < offsetsEnd || end <= offset || end > size) {
+        throw new IllegalArgumentException("Invalid table offset.");
+      }
+      tables[i] = CachedAddressLookupTable.readCached(segment.asSlice(offset, end - offset).toArray(JAVA_BYTE), 0);
+      offset = end;
+    }
+    return tables;
+  }
+
+  private static AddressLookupTable[] readLegacy(final byte[] data) {
+    final int numTables = ByteUtil.getInt32LE(data, 0);
+    int offset = Integer.BYTES;
+    final var tables = new AddressLookupTable[numTables];
+    for (int i = 0; offset < data.length; ++i) {
+      final var table = CachedAddressLookupTable.readCached(data, offset);
+      offset += table.length();
+      tables[i] = table;
+    }
+    return tables;
+  }
+
+  private static final class SegmentReader {
+
+    private final MemorySegment segment;
+    private long offset;
+
+    private SegmentReader(final MemorySegment segment, final long offset) {
+      this.segment = segment;
+      this.offset = offset;
+    }
+
+    private int readInt() {
+      final int value = segment.get(INT_LE, offset);
+      offset += Integer.BYTES;
+      return value;
+    }
+
+    private long readLong() {
+      final long value = segment.get(LONG_LE, offset);
+      offset += Long.BYTES;
+      return value;
+    }
+
+    private byte readByte() {
+      return segment.get(JAVA_BYTE, offset++);
+    }
+
+    private int readVarInt() {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+        final byte b = readByte();
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        } else if (shift == 28) {
+          throw new IllegalArgumentException("Invalid varint.");
+        }
+      }
+    }
+
+    private void readBytes(final byte[] out, final int outOffset, final int length) {
+      MemorySegment.copy(segment, JAVA_BYTE, offset, out, outOffset, length);
+      offset += length;
+    }
+  }
+
+  // Tables are rebuilt as on-chain account data and wrapped by the same factory as remotely loaded tables.
+  // The last extended slot start index is not retained, it does not affect discovery.
+  private static AddressLookupTable[] readV2(final MemorySegment segment) {
+    final var reader = new SegmentReader(segment, Integer.BYTES);
+    final int numTables = reader.readInt();
+    final int dictionarySize = reader.readInt();
+    if (numTables < 0 || dictionarySize < 0) {
+      throw new IllegalArgumentException("Invalid table or dictionary size.");
+    }
+    final byte[] dictionary = new byte[Math.multiplyExact(dictionarySize, PUBLIC_KEY_LENGTH)];
+    reader.readBytes(dictionary, 0, dictionary.length);
+    return readTables(reader, numTables, dictionary);
+  }
+
+  /**
+   * Decodes [numTables][tables] encoded by {@link #encodeTables} against an external dictionary of account keys.
+   */
+  static AddressLookupTable[] decodeTables(final MemorySegment segment, final byte[] dictionary) {
+    final var reader = new SegmentReader(segment, 0);
+    final int numTables = reader.readInt();
+    if (numTables < 0) {
+      throw new IllegalArgumentException("Invalid number of tables.");
+    }
+    return readTables(reader, numTables, dictionary);
+  }
+
+  private static AddressLookupTable[] readTables(final SegmentReader reader,
+                                                 final int numTables,
+                                                 final byte[] dictionary) {
+    final var tables = new AddressLookupTable[numTables];
+    final byte[] addressBytes = new byte[PUBLIC_KEY_LENGTH];
+    final byte[] authority = new byte[PUBLIC_KEY_LENGTH];
+    for (int i = 0; i < numTables; ++i) {
+      reader.readBytes(addressBytes, 0, PUBLIC_KEY_LENGTH);
+      final var address = PublicKey.readPubKey(addressBytes);
+      final long deactivationSlot = reader.readLong();
+      final long lastExtendedSlot = reader.readLong();
+      final byte authorityOption = reader.readByte();
+      if (authorityOption == 1) {
+        reader.readBytes(authority, 0, PUBLIC_KEY_LENGTH);
+      }
+      final int numAccounts = reader.readVarInt();
+      if (numAccounts > LOOKUP_TABLE_MAX_ADDRESSES) {
+        throw new IllegalArgumentException("Invalid number of table accounts.");
+      }
+      final byte[] data = new byte[LOOKUP_TABLE_META_SIZE + (numAccounts * PUBLIC_KEY_LENGTH)];
+      ByteUtil.putInt32LE(data, 0, LOOKUP_TABLE_TYPE);
+      ByteUtil.putInt64LE(data, DEACTIVATION_SLOT_OFFSET, deactivationSlot);
+      ByteUtil.putInt64LE(data, LAST_EXTENDED_OFFSET, lastExtendedSlot);
+      data[AUTHORITY_OPTION_OFFSET] = authorityOption;
+      if (authorityOption == 1) {
+        System.arraycopy(authority, 0, data, AUTHORITY_OFFSET, PUBLIC_KEY_LENGTH);
+      }
+      for (int a = 0, offset = LOOKUP_TABLE_META_SIZE, id; a < numAccounts; ++a, offset += PUBLIC_KEY_LENGTH) {
+        id = reader.readVarInt();
+        System.arraycopy(dictionary, id * PUBLIC_KEY_LENGTH, data, offset, PUBLIC_KEY_LENGTH);
+      }
+      tables[i] = LazyLookupTable.FACTORY.apply(address, data);
+    }
+    return tables;
+  }
+
+  private static void writeVarInt(final ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static void writeLong(final ByteArrayOutputStream out, final long value) {
+    final byte[] bytes = new byte[Long.BYTES];
+    ByteUtil.putInt64LE(bytes, 0, value);
+    out.writeBytes(bytes);
+  }
+
+  static byte[] encode(final AddressLookupTable[] tables) {
+    final var dictionary = AccountDictionary.createDictionary(tables);
+    final int dictionaryLength = dictionary.size() * PUBLIC_KEY_LENGTH;
+
+    final var out = new ByteArrayOutputStream(HEADER_LENGTH + Integer.BYTES + dictionaryLength + (tables.length << 8));
+    final byte[] header = new byte[HEADER_LENGTH + Integer.BYTES];
+    ByteUtil.putInt32LE(header, 0, MAGIC_V2);
+    ByteUtil.putInt32LE(header, Integer.BYTES, tables.length);
+    ByteUtil.putInt32LE(header, HEADER_LENGTH, dictionary.size());
+    out.writeBytes(header);
+    out.write(dictionary.keys(), 0, dictionaryLength);
+    writeTables(out, tables, dictionary);
+    return out.toByteArray();
+  }
+
+  /**
+   * Writes [numTables][tables], with account ids of an external dictionary.
+   */
+  static void encodeTables(final ByteArrayOutputStream out,
+                           final AddressLookupTable[] tables,
+                           final AccountDictionary dictionary) {
+    final byte[] numTables = new byte[Integer.BYTES];
+    ByteUtil.putInt32LE(numTables, 0, tables.length);
+    out.writeBytes(numTables);
+    writeTables(out, tables, dictionary);
+  }
+
+  private static void writeTables(final ByteArrayOutputStream out,
+                                  final AddressLookupTable[] tables,
+                                  final AccountDictionary dictionary) {
+    for (final var table : tables) {
+      out.writeBytes(table.address().toByteArray());
+      writeLong(out, table.deactivationSlot());
+      writeLong(out, table.lastExtendedSlot());
+      final var authority = table.authority();
+      if (authority == null) {
+        out.write(0);
+      } else {
+        out.write(1);
+        out.writeBytes(authority.toByteArray());
+      }
+      writeVarInt(out, table.numAccounts());
+      LazyLookupTable.forEachAccount(table, (key, offset) -> writeVarInt(out, dictionary.id(key, offset)));
+    }
+  }
+
+  // Written to a temporary file first so that a crash can never leave a partially written cache file behind.
+  static void write(final Path cacheFile, final AddressLookupTable[] tables) throws IOException {
+    final var tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+    try (final var fileChannel = FileChannel.open(tempFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+      final var buffer = ByteBuffer.wrap(encode(tables));
+      while (buffer.hasRemaining()) {
+        fileChannel.write(buffer);
+      }
+      fileChannel.force(false);
+    }
+    Files.move(tempFile, cacheFile, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+}
@@ -0,0 +1,77 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.rpc.json.http.response.AccountInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+import static systems.glam.look.LookupTableCallHandler.BY_UNIQUE_ACCOUNTS_REVERSED;
+
+// Filters the tables of a single getProgramAccounts response as they are decoded, so that only the survivors are
+// retained while the rest of the response is still being read. Stops once its load attempt is abandoned, so that a
+// late response does not register its tables with the table stats.
+final class TableCollector implements Consumer<AddressLookupTable> {
+
+  private final TableStats tableStats;
+  private final LoadAttempt attempt;
+  private final ArrayList<AddressLookupTable> tables;
+  private final ArrayList<AddressLookupTable> secondaryTables;
+  private int numTables;
+
+  TableCollector(final TableStats tableStats, final LoadAttempt attempt) {
+    this.tableStats = tableStats;
+    this.attempt = attempt;
+    this.tables = new ArrayList<>();
+    this.secondaryTables = new ArrayList<>();
+  }
+
+  static TableCollector collect(final TableStats tableStats,
+                                final LoadAttempt attempt,
+                                final List<AccountInfo<AddressLookupTable>> accountInfos) {
+    final var collector = new TableCollector(tableStats, attempt);
+    for (final var accountInfo : accountInfos) {
+      collector.accept(accountInfo.data());
+    }
+    return collector;
+  }
+
+  @Override
+  public void accept(final AddressLookupTable table) {
+    if (attempt.abandoned()) {
+      throw new CancellationException("Abandoned lookup table load attempt.");
+    }
+    ++numTables;
+    if (tableStats.test(table)) {
+      tables.add(table);
+    } else if (tableStats.testSecondary(table)) {
+      secondaryTables.add(table);
+    }
+  }
+
+  void addAll(final TableCollector collector) {
+    tables.addAll(collector.tables);
+    secondaryTables.addAll(collector.secondaryTables);
+    numTables += collector.numTables;
+  }
+
+  /**
+   * @return The number of tables in the response, before filtering.
+   */
+  int numTables() {
+    return numTables;
+  }
+
+  AddressLookupTable[] sortedTables() {
+    final var sorted = tables.toArray(AddressLookupTable[]::new);
+    Arrays.sort(sorted, BY_UNIQUE_ACCOUNTS_REVERSED);
+    return sorted;
+  }
+
+  AddressLookupTable[] secondaryTables() {
+    return secondaryTables.toArray(AddressLookupTable[]::new);
+  }
+}
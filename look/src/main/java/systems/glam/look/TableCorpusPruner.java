@@ -0,0 +1,354 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.core.encoding.ByteUtil;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static java.lang.System.Logger.Level.INFO;
+
+// Removes tables which can never out-score another table in the corpus.
+// Tables must be sorted by their number of unique accounts in descending order, which is preserved.
+final class TableCorpusPruner {
+
+  private static final System.Logger logger = System.getLogger(TableCorpusPruner.class.getName());
+
+  private static final int NUM_HASHES = 32;
+  static final long INDEX_MASK = 0xFFFFFFFFL;
+  private static final int MAX_BUCKET_COMPARISONS = 64;
+  // Dominance postings are built for one shard of the account hash space at a time.
+  private static final int SHARD_BITS = 3;
+  private static final int NUM_SHARDS = 1 << SHARD_BITS;
+
+  private final boolean pruneDominatedTables;
+  private final double nearDuplicateJaccard;
+  private final int rowsPerBand;
+
+  TableCorpusPruner(final boolean pruneDominatedTables, final double nearDuplicateJaccard) {
+    this.pruneDominatedTables = pruneDominatedTables;
+    this.nearDuplicateJaccard = nearDuplicateJaccard;
+    this.rowsPerBand = rowsPerBand(nearDuplicateJaccard);
+  }
+
+  boolean pruneDominatedTables() {
+    return pruneDominatedTables;
+  }
+
+  double nearDuplicateJaccard() {
+    return nearDuplicateJaccard;
+  }
+
+  static TableCorpusPruner createPruner(final LookupTableServiceConfig.RemoteLoadConfig loadConfig) {
+    return new TableCorpusPruner(loadConfig.pruneDominatedTables(), loadConfig.nearDuplicateJaccard());
+  }
+
+  // The largest band size for which pairs at the configured similarity are still likely to share a bucket,
+  // approximated by the LSH threshold (1 / bands) ^ (1 / rows).
+  private static int rowsPerBand(final double jaccard) {
+    int rowsPerBand = 1;
+    for (int rows = 2; rows <= NUM_HASHES; rows <<= 1) {
+      final int bands = NUM_HASHES / rows;
+      if (Math.pow(1.0 / bands, 1.0 / rows) < jaccard) {
+        rowsPerBand = rows;
+      } else {
+        break;
+      }
+    }
+    return rowsPerBand;
+  }
+
+  static long accountHash(final PublicKey account) {
+    return accountHash(account.toByteArray(), 0);
+  }
+
+  static long accountHash(final byte[] key, final int offset) {
+    long h = ByteUtil.getInt64LE(key, offset);
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  static long postingKey(final byte[] key, final int offset) {
+    return (int) accountHash(key, offset);
+  }
+
+  static long[] accountPostings(final AddressLookupTable[] tables) {
+    final long[] offsets = new long[tables.length + 1];
+    for (int i = 0; i < tables.length; ++i) {
+      offsets[i + 1] = offsets[i] + tables[i].numUniqueAccounts();
+    }
+    final long[] postings = new long[Math.toIntExact(offsets[tables.length])];
+    IntStream.range(0, tables.length).parallel().forEach(i -> {
+      final int[] p = {(int) offsets[i]};
+      LazyLookupTable.forEachUniqueAccount(
+          tables[i],
+          (key, offset) -> postings[p[0]++] = (postingKey(key, offset) << 32) | i
+      );
+    });
+    Arrays.parallelSort(postings);
+    return postings;
+  }
+
+  static int firstPosting(final long[] postings, final long key) {
+    final int i = Arrays.binarySearch(postings, key << 32);
+    return i < 0 ? -i - 1 : i;
+  }
+
+  // Table indexes never fill the lower 32 bits, so this is always an insertion point.
+  static int endPosting(final long[] postings, final long key) {
+    return -Arrays.binarySearch(postings, (key << 32) | INDEX_MASK) - 1;
+  }
+
+  private static int intersection(final AddressLookupTable a, final AddressLookupTable b) {
+    final int[] intersection = {0};
+    LazyLookupTable.forEachUniqueAccount(b, (key, offset) -> {
+      if (LazyLookupTable.containsKey(a, key, offset)) {
+        ++intersection[0];
+      }
+    });
+    return intersection[0];
+  }
+
+  private static boolean containsAll(final AddressLookupTable superset, final AddressLookupTable subset) {
+    return intersection(superset, subset) == subset.numUniqueAccounts();
+  }
+
+  private static int shard(final long accountHash) {
+    return (int) (accountHash >>> (Long.SIZE - SHARD_BITS));
+  }
+
+  // Each table is checked for dominance within the shard of its anchor account, the account with the lowest posting
+  // key, which any superset must also contain. Also counts the table accounts per shard.
+  private static byte[] anchorShards(final AddressLookupTable[] tables, final int[] shardCounts) {
+    final byte[] anchorShards = new byte[tables.length];
+    IntStream.range(0, tables.length).parallel().forEach(i -> {
+      final long[] anchor = {Long.MAX_VALUE, 0};
+      LazyLookupTable.forEachUniqueAccount(tables[i], (key, offset) -> {
+        final long h = accountHash(key, offset);
+        final long rank = h & INDEX_MASK;
+        if (rank < anchor[0]) {
+          anchor[0] = rank;
+          anchor[1] = h;
+        }
+        ++shardCounts[(i << SHARD_BITS) + shard(h)];
+      });
+      anchorShards[i] = (byte) shard(anchor[1]);
+    });
+    return anchorShards;
+  }
+
+  private static long[] shardPostings(final AddressLookupTable[] tables,
+                                      final int[] shardCounts,
+                                      final long[] offsets,
+                                      final int shard) {
+    for (int i = 0; i < tables.length; ++i) {
+      offsets[i + 1] = offsets[i] + shardCounts[(i << SHARD_BITS) + shard];
+    }
+    final long[] postings = new long[Math.toIntExact(offsets[tables.length])];
+    IntStream.range(0, tables.length).parallel().forEach(i -> {
+      final int[] p = {(int) offsets[i]};
+      LazyLookupTable.forEachUniqueAccount(tables[i], (key, offset) -> {
+        final long h = accountHash(key, offset);
+        if (shard(h) == shard) {
+          postings[p[0]++] = ((long) (int) h << 32) | i;
+        }
+      });
+    });
+    Arrays.parallelSort(postings);
+    return postings;
+  }
+
+  // A table is dominated if an earlier, and therefore at least as large, table contains all of its accounts.
+  // Candidates are limited to the tables sharing its least common account within the shard of the postings.
+  private static boolean isDominated(final AddressLookupTable[] tables,
+                                     final long[] postings,
+                                     final int shard,
+                                     final int index) {
+    final var table = tables[index];
+    final int[] range = {0, Integer.MAX_VALUE};
+    LazyLookupTable.forEachUniqueAccount(table, (key, offset) -> {
+      final long h = accountHash(key, offset);
+      if (shard(h) == shard) {
+        final long postingKey = (int) h;
+        final int start = firstPosting(postings, postingKey);
+        final int end = endPosting(postings, postingKey);
+        if (end - start < range[1] - range[0]) {
+          range[0] = start;
+          range[1] = end;
+        }
+      }
+    });
+    final int from = range[0];
+    final int to = range[1];
+    if (to - from <= 1) {
+      return false;
+    }
+    for (int i = from, candidate; i < to; ++i) {
+      candidate = (int) (postings[i] & INDEX_MASK);
+      if (candidate >= index) {
+        return false;
+      } else if (containsAll(tables[candidate], table)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean[] dominatedTables(final AddressLookupTable[] tables) {
+    final int numTables = tables.length;
+    final int[] shardCounts = new int[numTables << SHARD_BITS];
+    final byte[] anchorShards = anchorShards(tables, shardCounts);
+    final long[] offsets = new long[numTables + 1];
+    final boolean[] dominated = new boolean[numTables];
+    for (int shard = 0; shard < NUM_SHARDS; ++shard) {
+      final int s = shard;
+      final long[] postings = shardPostings(tables, shardCounts, offsets, s);
+      IntStream.range(1, numTables).parallel()
+          .filter(i -> anchorShards[i] == s)
+          .forEach(i -> dominated[i] = isDominated(tables, postings, s, i));
+    }
+    return dominated;
+  }
+
+  private static int[] minHashSignature(final AddressLookupTable table) {
+    final int[] signature = new int[NUM_HASHES];
+    Arrays.fill(signature, Integer.MAX_VALUE);
+    LazyLookupTable.forEachUniqueAccount(table, (key, offset) -> {
+      final long h = accountHash(key, offset);
+      final int h1 = (int) h;
+      final int h2 = (int) (h >>> 32) | 1;
+      for (int i = 0, hash; i < NUM_HASHES; ++i) {
+        hash = (h1 + (i * h2)) & Integer.MAX_VALUE;
+        if (hash < signature[i]) {
+          signature[i] = hash;
+        }
+      }
+    });
+    return signature;
+  }
+
+  private static double jaccard(final AddressLookupTable a, final AddressLookupTable b) {
+    final int intersection = intersection(a, b);
+    return intersection / (double) (a.numUniqueAccounts() + b.numUniqueAccounts() - intersection);
+  }
+
+  // Orders tables by descending account efficiency and then by index, lower ranks are better.
+  private static long rank(final AddressLookupTable table, final int index) {
+    final float efficiency = (float) SingleTableStats.createStats(table).accountEfficiency();
+    return ((long) (Integer.MAX_VALUE - Float.floatToIntBits(efficiency)) << 32) | index;
+  }
+
+  private boolean[] nearDuplicates(final AddressLookupTable[] tables, final boolean[] pruned) {
+    final int numTables = tables.length;
+    final int[][] signatures = IntStream.range(0, numTables).parallel()
+        .mapToObj(i -> pruned[i] ? null : minHashSignature(tables[i]))
+        .toArray(int[][]::new);
+    final long[] ranks = IntStream.range(0, numTables).parallel().mapToLong(i -> rank(tables[i], i)).toArray();
+
+    final int numBands = NUM_HASHES / rowsPerBand;
+    final long[][] bands = IntStream.range(0, numBands).parallel().mapToObj(band -> {
+      final int from = band * rowsPerBand;
+      final long[] buckets = new long[numTables];
+      int b = 0;
+      for (int i = 0; i < numTables; ++i) {
+        final var signature = signatures[i];
+        if (signature != null) {
+          int bandHash = 1;
+          for (int r = from; r < from + rowsPerBand; ++r) {
+            bandHash = 31 * bandHash + signature[r];
+          }
+          buckets[b++] = ((long) bandHash << 32) | i;
+        }
+      }
+      final long[] sorted = Arrays.copyOf(buckets, b);
+      Arrays.sort(sorted);
+      return sorted;
+    }).toArray(long[][]::new);
+
+    // Pairs of a table and a better table with similar accounts, packed as [worse][better].
+    final long[] similar = IntStream.range(0, numBands).parallel().mapToObj(band -> {
+      final long[] buckets = bands[band];
+      long[] pairs = new long[16];
+      int numPairs = 0;
+      for (int start = 0, end; start < buckets.length; start = end) {
+        final long bucket = buckets[start] >> 32;
+        for (end = start + 1; end < buckets.length && (buckets[end] >> 32) == bucket; ++end) ;
+        for (int i = start; i < end; ++i) {
+          final int a = (int) (buckets[i] & INDEX_MASK);
+          for (int j = start, to = Math.min(end, start + MAX_BUCKET_COMPARISONS); j < to; ++j) {
+            final int b = (int) (buckets[j] & INDEX_MASK);
+            if (ranks[b] < ranks[a] && jaccard(tables[b], tables[a]) >= nearDuplicateJaccard) {
+              if (numPairs == pairs.length) {
+                pairs = Arrays.copyOf(pairs, numPairs << 1);
+              }
+              pairs[numPairs++] = ((long) a << 32) | b;
+            }
+          }
+        }
+      }
+      return Arrays.copyOf(pairs, numPairs);
+    }).flatMapToLong(Arrays::stream).sorted().distinct().toArray();
+
+    // Resolved from the best table down, so that a table is only removed in favor of a table which is retained.
+    final long[] worse = Arrays.stream(similar).map(pair -> ranks[(int) (pair >>> 32)]).distinct().sorted().toArray();
+    final boolean[] duplicates = new boolean[numTables];
+    for (final long rank : worse) {
+      final int a = (int) (rank & INDEX_MASK);
+      for (int p = firstPosting(similar, a), end = endPosting(similar, a); p < end; ++p) {
+        if (!duplicates[(int) (similar[p] & INDEX_MASK)]) {
+          duplicates[a] = true;
+          break;
+        }
+      }
+    }
+    return duplicates;
+  }
+
+  AddressLookupTable[] prune(final AddressLookupTable[] tables) {
+    final int numTables = tables.length;
+    if (numTables < 2 || (!pruneDominatedTables && nearDuplicateJaccard <= 0)) {
+      return tables;
+    }
+    final long start = System.currentTimeMillis();
+
+    final boolean[] pruned = pruneDominatedTables ? dominatedTables(tables) : new boolean[numTables];
+    int numDominated = 0;
+    if (pruneDominatedTables) {
+      for (final boolean dominated : pruned) {
+        if (dominated) {
+          ++numDominated;
+        }
+      }
+    }
+
+    int numNearDuplicates = 0;
+    if (nearDuplicateJaccard > 0) {
+      final boolean[] duplicates = nearDuplicates(tables, pruned);
+      for (int i = 0; i < numTables; ++i) {
+        if (duplicates[i]) {
+          pruned[i] = true;
+          ++numNearDuplicates;
+        }
+      }
+    }
+
+    final var prunedTables = IntStream.range(0, numTables)
+        .filter(i -> !pruned[i])
+        .mapToObj(i -> tables[i])
+        .toArray(AddressLookupTable[]::new);
+
+    final var duration = Duration.ofMillis(System.currentTimeMillis() - start);
+    logger.log(INFO, String.format("""
+            [prunedTables=%d] [dominatedTables=%d] [nearDuplicateTables=%d] [remainingTables=%d] [duration=%s]
+            """,
+        numTables - prunedTables.length, numDominated, numNearDuplicates, prunedTables.length, duration
+    ));
+    return prunedTables;
+  }
+}
@@ -0,0 +1,119 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import static software.sava.core.accounts.lookup.AddressLookupTable.AUTHORITY_OFFSET;
+import static software.sava.core.accounts.lookup.AddressLookupTable.AUTHORITY_OPTION_OFFSET;
+import static systems.glam.look.LookupTableDiscoveryServiceImpl.NUM_PARTITIONS;
+
+// Decodes the tables of a reload, re-using the previously loaded table if its account data is unchanged. Previous
+// tables are indexed by address per partition, which is derived from the raw data, only for the duration of a load.
+final class TableDecodeCache implements BiFunction<PublicKey, byte[], AddressLookupTable> {
+
+  private final LongAdder reusedTables;
+  private volatile Map<PublicKey, LazyLookupTable>[] previousTables;
+
+  TableDecodeCache() {
+    this.reusedTables = new LongAdder();
+  }
+
+  private static int partition(final byte[] data) {
+    if (data.length <= AUTHORITY_OFFSET || data[AUTHORITY_OPTION_OFFSET] == 0) {
+      return 0;
+    } else {
+      final int partition = data[AUTHORITY_OFFSET] & 0xFF;
+      return partition == 0 ? NUM_PARTITIONS - 1 : partition;
+    }
+  }
+
+  private static void index(final Map<PublicKey, LazyLookupTable> index, final AddressLookupTable[] tables) {
+    if (tables != null) {
+      for (final var table : tables) {
+        if (table instanceof LazyLookupTable lazyTable) {
+          index.put(table.address(), lazyTable);
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  void index(final AtomicReferenceArray<AddressLookupTable[]> partitions,
+             final AtomicReferenceArray<AddressLookupTable[]> secondaryPartitions) {
+    final var previousTables = (Map<PublicKey, LazyLookupTable>[]) new Map[NUM_PARTITIONS];
+    for (int partition = 0; partition < NUM_PARTITIONS; ++partition) {
+      final var tables = partitions.get(partition);
+      final var secondaryTables = secondaryPartitions.get(partition);
+      final var index = HashMap.<PublicKey, LazyLookupTable>newHashMap(
+          (tables == null ? 0 : tables.length) + (secondaryTables == null ? 0 : secondaryTables.length)
+      );
+      index(index, tables);
+      index(index, secondaryTables);
+      previousTables[partition] = index;
+    }
+    reusedTables.reset();
+    this.previousTables = previousTables;
+  }
+
+  private static void removeTables(final Map<PublicKey, LazyLookupTable> previous, final AddressLookupTable[] tables) {
+    if (tables != null) {
+      for (final var table : tables) {
+        previous.remove(table.address());
+      }
+    }
+  }
+
+  /**
+   * @return The addresses of the previous tables of a partition which are in neither of its reloaded tiers, such as
+   * tables which were frozen, deactivated or closed since the previous load.
+   */
+  List<PublicKey> removedTables(final int partition,
+                                final AddressLookupTable[] tables,
+                                final AddressLookupTable[] secondaryTables) {
+    final var previousTables = this.previousTables;
+    if (previousTables == null || previousTables[partition].isEmpty()) {
+      return List.of();
+    }
+    final var removed = new HashMap<>(previousTables[partition]);
+    removeTables(removed, tables);
+    removeTables(removed, secondaryTables);
+    return new ArrayList<>(removed.keySet());
+  }
+
+  // Releases the previous tables once the load has replaced them.
+  void clear() {
+    this.previousTables = null;
+  }
+
+  long reusedTables() {
+    return reusedTables.sum();
+  }
+
+  @Override
+  public AddressLookupTable apply(final PublicKey address, final byte[] data) {
+    final var previousTables = this.previousTables;
+    if (previousTables != null) {
+      final var previous = previousTables[partition(data)].get(address);
+      if (previous != null) {
+        if (previous.hasData(data)) {
+          reusedTables.increment();
+          return previous;
+        }
+        final var table = LazyLookupTable.FACTORY.apply(address, data);
+        if (table instanceof LazyLookupTable lazyTable) {
+          lazyTable.inheritSelections(previous);
+        }
+        return table;
+      }
+    }
+    return LazyLookupTable.FACTORY.apply(address, data);
+  }
+}
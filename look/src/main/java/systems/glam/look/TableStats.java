@@ -1,40 +1,27 @@
 package systems.glam.look;
 
-import software.sava.core.accounts.PublicKey;
 import software.sava.core.accounts.lookup.AddressLookupTable;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 
 public interface TableStats extends Predicate<AddressLookupTable> {
 
-  static TableStats createStats(final int minAccountsPerTable, final double minEfficiencyRatio) {
-    final var accountSets = new ConcurrentSkipListSet<Set<PublicKey>>((a, b) -> {
-      final int sizeCompare = Integer.compare(a.size(), b.size());
-      if (sizeCompare == 0) {
-        if (a.containsAll(b)) {
-          return 0;
-        } else {
-          return Integer.compare(a.hashCode(), b.hashCode());
-        }
-      } else {
-        return sizeCompare;
-      }
-    });
+  static TableStats createStats(final int minAccountsPerTable,
+                                final double minEfficiencyRatio,
+                                final int minAccountsPerSecondaryTable) {
     return new TableStatsRecord(
-        accountSets,
+        new AccountSetFingerprints(),
         new LongAdder(),
         minAccountsPerTable,
         minEfficiencyRatio,
+        minAccountsPerSecondaryTable,
         new LongAdder(),
         new LongAdder(),
         new LongAdder(),
         new LongAdder(),
-        HashMap.newHashMap(1 << 21)
+        new LongAdder(),
+        new TableAccountsHistogram()
     );
   }
 
@@ -50,9 +37,27 @@ public interface TableStats extends Predicate<AddressLookupTable> {
     return array[(array.length & 1) == 1 ? array.length / 2 : (array.length / 2) - 1];
   }
 
+  /**
+   * Tables rejected by {@link #test} for not meeting the efficiency or account thresholds, which may still be worth
+   * keeping in the secondary tier.
+   */
+  boolean testSecondary(final AddressLookupTable table);
+
+  /**
+   * Tests the thresholds of {@link #test} for a table which changed since the last load, without recording stats or
+   * checking for duplicate account sets.
+   */
+  boolean testChanged(final AddressLookupTable table);
+
+  /**
+   * Tests the thresholds of {@link #testSecondary} for a table which changed since the last load.
+   */
+  boolean testChangedSecondary(final AddressLookupTable table);
+
+  /**
+   * Available at any moment, including while tables are still being loaded.
+   */
   TableStatsSummary summarize();
 
   void reset();
-
-  Map<PublicKey, SingleTableStats> tableStats();
 }
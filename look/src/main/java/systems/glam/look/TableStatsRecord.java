@@ -1,22 +1,20 @@
 package systems.glam.look;
 
-import software.sava.core.accounts.PublicKey;
 import software.sava.core.accounts.lookup.AddressLookupTable;
 
-import java.util.Arrays;
-import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.atomic.LongAdder;
 
-record TableStatsRecord(Set<Set<PublicKey>> accountSets,
+record TableStatsRecord(AccountSetFingerprints accountSets,
                         LongAdder duplicateAccountSets,
                         int minAccountsPerTable,
                         double minEfficiencyRatio,
+                        int minAccountsPerSecondaryTable,
                         LongAdder emptyTables,
                         LongAdder totalTables,
                         LongAdder inneficientTables,
                         LongAdder belowMinAccounts,
-                        Map<PublicKey, SingleTableStats> tableStats) implements TableStats {
+                        LongAdder secondaryTables,
+                        TableAccountsHistogram accountsHistogram) implements TableStats {
 
   @Override
   public boolean test(final AddressLookupTable table) {
@@ -29,10 +27,8 @@ record TableStatsRecord(Set<Set<PublicKey>> accountSets,
       return false;
     }
 
-    final var stats = SingleTableStats.createStats(table);
-    tableStats.put(table.address(), stats);
-
-    if (stats.accountEfficiency() < minEfficiencyRatio) {
+    accountsHistogram.record(table);
+    if (SingleTableStats.createStats(table).accountEfficiency() < minEfficiencyRatio) {
       inneficientTables.increment();
       if (table.numUniqueAccounts() < minAccountsPerTable) {
         belowMinAccounts.increment();
@@ -42,7 +38,7 @@ record TableStatsRecord(Set<Set<PublicKey>> accountSets,
     } else if (table.numUniqueAccounts() < minAccountsPerTable) {
       belowMinAccounts.increment();
       return false;
-    } else if (accountSets.add(table.uniqueAccounts())) {
+    } else if (accountSets.add(table)) {
       return true;
     } else {
       duplicateAccountSets.increment();
@@ -51,54 +47,51 @@ record TableStatsRecord(Set<Set<PublicKey>> accountSets,
   }
 
   @Override
-  public TableStatsSummary summarize() {
-    double[] efficiencies = new double[tableStats.size()];
-    final long[] numAccounts = new long[efficiencies.length];
-    var iterator = tableStats.values().iterator();
-    for (int i = 0; i < efficiencies.length; ++i) {
-      final var tableStats = iterator.next();
-      efficiencies[i] = tableStats.accountEfficiency();
-      numAccounts[i] = tableStats.numAccounts();
+  public boolean testSecondary(final AddressLookupTable table) {
+    if (minAccountsPerSecondaryTable > 0
+        && table.isActive()
+        && table.numUniqueAccounts() >= minAccountsPerSecondaryTable
+        && (table.numUniqueAccounts() < minAccountsPerTable
+        || SingleTableStats.createStats(table).accountEfficiency() < minEfficiencyRatio)) {
+      secondaryTables.increment();
+      return true;
+    } else {
+      return false;
     }
-    Arrays.sort(efficiencies);
-    Arrays.sort(numAccounts);
-
-    final var efficiencyStats = Arrays.stream(efficiencies).summaryStatistics();
-    final var numWithDuplicates = Arrays.stream(efficiencies).filter(e -> e < 1.0).count();
+  }
 
-    final var numAccountStats = Arrays.stream(numAccounts).summaryStatistics();
-    final long medianNumAccounts = TableStats.median(numAccounts);
+  @Override
+  public boolean testChanged(final AddressLookupTable table) {
+    return table.isActive()
+        && table.numUniqueAccounts() >= minAccountsPerTable
+        && SingleTableStats.createStats(table).accountEfficiency() >= minEfficiencyRatio;
+  }
 
-    iterator = tableStats.values().iterator();
-    for (int i = 0; i < numAccounts.length; ++i) {
-      final var tableStats = iterator.next();
-      numAccounts[i] = tableStats.distinctAccounts();
-    }
-    Arrays.sort(numAccounts);
-    final var numUniqueAccountStats = Arrays.stream(numAccounts).summaryStatistics();
+  @Override
+  public boolean testChangedSecondary(final AddressLookupTable table) {
+    return minAccountsPerSecondaryTable > 0
+        && table.isActive()
+        && table.numUniqueAccounts() >= minAccountsPerSecondaryTable
+        && !testChanged(table);
+  }
 
-    return new TableStatsSummary(
-        totalTables.sum(),
-        tableStats.size(),
-        duplicateAccountSets.sum(),
-        numWithDuplicates,
-        efficiencyStats, TableStats.median(efficiencies),
-        numAccountStats, medianNumAccounts,
-        numUniqueAccountStats, TableStats.median(numAccounts)
-    );
+  @Override
+  public TableStatsSummary summarize() {
+    return accountsHistogram.summarize(totalTables.sum(), duplicateAccountSets.sum());
   }
 
   @Override
   public String toString() {
     return String.format("""
-            [totalTables=%d] [duplicateSets=%d] [totalTables=%d] [emptyTables=%d] [inneficientTables=%d] [belowMinAccounts=%d] [minEfficiencyRatio=%.2f]
+            [totalTables=%d] [duplicateSets=%d] [totalTables=%d] [emptyTables=%d] [inneficientTables=%d] [belowMinAccounts=%d] [secondaryTables=%d] [minEfficiencyRatio=%.2f]
             """,
-        tableStats.size(),
+        accountsHistogram.count(),
         duplicateAccountSets.sum(),
         totalTables.sum(),
         emptyTables.sum(),
         inneficientTables.sum(),
         belowMinAccounts.sum(),
+        secondaryTables.sum(),
         minEfficiencyRatio
     );
   }
@@ -107,6 +100,11 @@ record TableStatsRecord(Set<Set<PublicKey>> accountSets,
   public void reset() {
     accountSets.clear();
     duplicateAccountSets.reset();
+    emptyTables.reset();
+    totalTables.reset();
     inneficientTables.reset();
+    belowMinAccounts.reset();
+    secondaryTables.reset();
+    accountsHistogram.reset();
   }
 }
@@ -0,0 +1,25 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+
+/**
+ * A feed of Address Lookup Table program account changes, such as a {@code programSubscribe} WebSocket subscription.
+ */
+public interface TableUpdateSource extends AutoCloseable {
+
+  interface Listener {
+
+    /**
+     * @param data The raw account data, empty if the account was closed.
+     */
+    void onTableChange(final PublicKey address, final byte[] data);
+  }
+
+  /**
+   * Begins delivering account changes to the listener, reconnecting as needed until closed.
+   */
+  void start(final Listener listener);
+
+  @Override
+  void close();
+}
@@ -0,0 +1,120 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// Buffers streamed table changes, keeping only the latest state per table, and periodically applies them as a batch
+// to the partitions. The corpus and its indexes are only re-published once per publish delay.
+final class TableUpdates implements TableUpdateSource.Listener {
+
+  private static final System.Logger logger = System.getLogger(TableUpdates.class.getName());
+
+  private final TableUpdateSource updateSource;
+  private final Duration applyDelay;
+  private final Duration publishDelay;
+  private final ConcurrentHashMap<PublicKey, byte[]> pendingChanges;
+
+  TableUpdates(final TableUpdateSource updateSource, final Duration applyDelay, final Duration publishDelay) {
+    this.updateSource = updateSource;
+    this.applyDelay = applyDelay;
+    this.publishDelay = publishDelay;
+    this.pendingChanges = new ConcurrentHashMap<>();
+  }
+
+  static TableUpdates createUpdates(final LookupTableServiceConfig.TableUpdateConfig updateConfig,
+                                    final PublicKey altProgram) {
+    final var endpoint = updateConfig.endpoint();
+    return new TableUpdates(
+        endpoint == null ? null : new WebSocketTableUpdateSource(
+            HttpClient.newHttpClient(),
+            endpoint,
+            altProgram,
+            updateConfig.reconnectDelay()
+        ),
+        updateConfig.applyDelay(),
+        updateConfig.publishDelay()
+    );
+  }
+
+  Duration publishDelay() {
+    return publishDelay;
+  }
+
+  @Override
+  public void onTableChange(final PublicKey address, final byte[] data) {
+    pendingChanges.put(address, data);
+  }
+
+  // A closed account has no table data left.
+  static boolean isClosed(final byte[] data) {
+    return data.length < AddressLookupTable.LOOKUP_TABLE_META_SIZE;
+  }
+
+  /**
+   * @return null if the data could not be decoded, which must be skipped rather than applied as a closed table.
+   */
+  static AddressLookupTable decode(final PublicKey address, final byte[] data) {
+    try {
+      return LazyLookupTable.FACTORY.apply(address, data);
+    } catch (final RuntimeException e) {
+      logger.log(WARNING, "Failed to decode lookup table update for " + address, e);
+      return null;
+    }
+  }
+
+  private Map<PublicKey, AddressLookupTable> drainChanges() {
+    final var changes = HashMap.<PublicKey, AddressLookupTable>newHashMap(pendingChanges.size());
+    for (final var address : pendingChanges.keySet()) {
+      final byte[] data = pendingChanges.remove(address);
+      if (data != null) {
+        if (isClosed(data)) {
+          changes.put(address, null);
+        } else {
+          final var table = decode(address, data);
+          if (table != null) {
+            changes.put(address, table);
+          }
+        }
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * @param applyChanges Applies a batch of changed tables, mapped to null if the table was closed.
+   */
+  void run(final Consumer<Map<PublicKey, AddressLookupTable>> applyChanges) {
+    if (updateSource == null) {
+      return;
+    }
+    updateSource.start(this);
+    try {
+      for (final long delayMillis = applyDelay.toMillis(); ; ) {
+        MILLISECONDS.sleep(delayMillis);
+        if (!pendingChanges.isEmpty()) {
+          final long start = System.currentTimeMillis();
+          final var changes = drainChanges();
+          applyChanges.accept(changes);
+          logger.log(INFO, String.format(
+              "[tableUpdates=%d] [duration=%dms]", changes.size(), System.currentTimeMillis() - start
+          ));
+        }
+      }
+    } catch (final InterruptedException e) {
+      // return;
+    } finally {
+      updateSource.close();
+    }
+  }
+}
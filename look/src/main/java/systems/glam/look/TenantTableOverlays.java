@@ -0,0 +1,177 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.rpc.json.http.client.SolanaRpcClient;
+import software.sava.rpc.json.http.response.AccountInfo;
+import software.sava.services.core.remote.call.Call;
+import software.sava.services.core.remote.load_balance.LoadBalancer;
+import software.sava.services.core.request_capacity.context.CallContext;
+import software.sava.services.solana.alt.CachedAddressLookupTable;
+import software.sava.services.solana.remote.call.CallWeights;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// Private lookup tables registered per tenant, kept fresh independently of the corpus reload cycle.
+public final class TenantTableOverlays implements Runnable {
+
+  private static final System.Logger logger = System.getLogger(TenantTableOverlays.class.getName());
+
+  private static final int MAX_TENANT_ID_LENGTH = 64;
+
+  private record Overlay(PublicKey[] addresses, AddressLookupTable[] tables) {
+
+    AddressLookupTable table(final PublicKey address) {
+      for (final var table : tables) {
+        if (table.address().equals(address)) {
+          return table;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final LoadBalancer<SolanaRpcClient> rpcClients;
+  private final CallContext callContext;
+  private final int maxTenants;
+  private final int maxTablesPerTenant;
+  private final Duration refreshDelay;
+  private final Map<String, Overlay> overlays;
+
+  TenantTableOverlays(final LoadBalancer<SolanaRpcClient> rpcClients,
+                      final CallContext callContext,
+                      final int maxTenants,
+                      final int maxTablesPerTenant,
+                      final Duration refreshDelay) {
+    this.rpcClients = rpcClients;
+    this.callContext = callContext;
+    this.maxTenants = maxTenants;
+    this.maxTablesPerTenant = maxTablesPerTenant;
+    this.refreshDelay = refreshDelay;
+    this.overlays = new ConcurrentHashMap<>();
+  }
+
+  static TenantTableOverlays createOverlays(final LoadBalancer<SolanaRpcClient> rpcClients,
+                                            final CallWeights callWeights,
+                                            final LookupTableServiceConfig.OverlayConfig overlayConfig) {
+    return new TenantTableOverlays(
+        rpcClients,
+        CallContext.createContext(callWeights.getMultipleAccounts(), 0, false),
+        overlayConfig.maxTenants(),
+        overlayConfig.maxTablesPerTenant(),
+        overlayConfig.refreshDelay()
+    );
+  }
+
+  public static boolean isValidTenantId(final String tenantId) {
+    return tenantId != null && !tenantId.isBlank() && tenantId.length() <= MAX_TENANT_ID_LENGTH;
+  }
+
+  // Deactivated tables can no longer be used by transactions, so they are dropped from the overlay.
+  private AddressLookupTable[] fetchTables(final PublicKey[] addresses) {
+    final var tables = new ArrayList<AddressLookupTable>(addresses.length);
+    for (int from = 0, to; from < addresses.length; from = to) {
+      to = Math.min(addresses.length, from + SolanaRpcClient.MAX_MULTIPLE_ACCOUNTS);
+      final var batch = Arrays.asList(addresses).subList(from, to);
+      final var accountInfos = Call.createCourteousCall(
+          rpcClients, rpcClient -> rpcClient.getAccounts(batch, CachedAddressLookupTable.FACTORY),
+          callContext,
+          "rpcClient::getTenantTables"
+      ).get();
+      for (final var accountInfo : accountInfos) {
+        if (accountInfo != null && accountInfo.data() != null && accountInfo.data().isActive()) {
+          tables.add(accountInfo.data().withReverseLookup());
+        }
+      }
+    }
+    return tables.toArray(AddressLookupTable[]::new);
+  }
+
+  /**
+   * Replaces the tenant's overlay, an empty list of addresses removes it.
+   *
+   * @return The tables which could be fetched.
+   */
+  public AddressLookupTable[] register(final String tenantId, final List<PublicKey> addresses) {
+    if (!isValidTenantId(tenantId)) {
+      throw new IllegalArgumentException("Invalid tenant id.");
+    }
+    if (addresses.isEmpty()) {
+      overlays.remove(tenantId);
+      return new AddressLookupTable[0];
+    }
+    final var distinctAddresses = addresses.stream().distinct().toArray(PublicKey[]::new);
+    if (distinctAddresses.length > maxTablesPerTenant) {
+      throw new IllegalArgumentException(String.format(
+          "A tenant may register at most %d tables.", maxTablesPerTenant
+      ));
+    }
+    if (!overlays.containsKey(tenantId) && overlays.size() >= maxTenants) {
+      throw new IllegalStateException("Maximum number of tenants has been reached.");
+    }
+    final var tables = fetchTables(distinctAddresses);
+    overlays.put(tenantId, new Overlay(distinctAddresses, tables));
+    return tables;
+  }
+
+  /**
+   * @return Tables registered by the tenant, or null if none have been registered.
+   */
+  public AddressLookupTable[] tables(final String tenantId) {
+    if (tenantId == null) {
+      return null;
+    }
+    final var overlay = overlays.get(tenantId);
+    return overlay == null ? null : overlay.tables;
+  }
+
+  public AddressLookupTable table(final String tenantId, final PublicKey address) {
+    if (tenantId == null) {
+      return null;
+    }
+    final var overlay = overlays.get(tenantId);
+    return overlay == null ? null : overlay.table(address);
+  }
+
+  private void refresh() {
+    for (final var entry : overlays.entrySet()) {
+      final var tenantId = entry.getKey();
+      final var overlay = entry.getValue();
+      try {
+        final var tables = fetchTables(overlay.addresses);
+        // Skip if it was replaced or removed in the meantime.
+        overlays.replace(tenantId, overlay, new Overlay(overlay.addresses, tables));
+      } catch (final RuntimeException ex) {
+        logger.log(WARNING, "Failed to refresh lookup tables for tenant " + tenantId, ex);
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      for (final long delayMillis = refreshDelay.toMillis(); ; ) {
+        MILLISECONDS.sleep(delayMillis);
+        if (!overlays.isEmpty()) {
+          final long start = System.currentTimeMillis();
+          refresh();
+          logger.log(INFO, String.format(
+              "[refreshedTenants=%d] [duration=%dms]",
+              overlays.size(), System.currentTimeMillis() - start
+          ));
+        }
+      }
+    } catch (final InterruptedException e) {
+      // return;
+    }
+  }
+}
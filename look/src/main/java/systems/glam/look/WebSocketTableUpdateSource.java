@@ -0,0 +1,164 @@
+package systems.glam.look;
+
+import software.sava.core.accounts.PublicKey;
+import systems.comodal.jsoniter.FieldBufferPredicate;
+import systems.comodal.jsoniter.JsonIterator;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.System.Logger.Level.INFO;
+import static java.lang.System.Logger.Level.WARNING;
+import static systems.comodal.jsoniter.JsonIterator.fieldEquals;
+
+// Subscribes to account changes of the Address Lookup Table program via a programSubscribe WebSocket subscription.
+final class WebSocketTableUpdateSource implements TableUpdateSource, WebSocket.Listener {
+
+  private static final System.Logger logger = System.getLogger(WebSocketTableUpdateSource.class.getName());
+
+  private final HttpClient httpClient;
+  private final URI endpoint;
+  private final String subscribeRequest;
+  private final Duration reconnectDelay;
+  private final StringBuilder message;
+  private volatile WebSocket webSocket;
+  private volatile boolean closed;
+  private ProgramAccountsStream.AccountParser accountParser;
+
+  WebSocketTableUpdateSource(final HttpClient httpClient,
+                             final URI endpoint,
+                             final PublicKey altProgram,
+                             final Duration reconnectDelay) {
+    this.httpClient = httpClient;
+    this.endpoint = endpoint;
+    this.subscribeRequest = String.format("""
+            {"jsonrpc":"2.0","id":1,"method":"programSubscribe","params":["%s",{"commitment":"confirmed","encoding":"base64"}]}""",
+        altProgram.toBase58()
+    );
+    this.reconnectDelay = reconnectDelay;
+    this.message = new StringBuilder(1_024);
+  }
+
+  @Override
+  public void start(final TableUpdateSource.Listener listener) {
+    this.accountParser = new ProgramAccountsStream.AccountParser(listener::onTableChange);
+    connect();
+  }
+
+  private void connect() {
+    if (closed) {
+      return;
+    }
+    httpClient.newWebSocketBuilder().buildAsync(endpoint, this).whenComplete((webSocket, ex) -> {
+      if (ex != null) {
+        logger.log(WARNING, "Failed to connect to lookup table update stream " + endpoint, ex);
+        reconnect();
+      } else {
+        this.webSocket = webSocket;
+      }
+    });
+  }
+
+  private void reconnect() {
+    if (!closed) {
+      CompletableFuture.runAsync(
+          this::connect,
+          CompletableFuture.delayedExecutor(reconnectDelay.toMillis(), TimeUnit.MILLISECONDS)
+      );
+    }
+  }
+
+  @Override
+  public void onOpen(final WebSocket webSocket) {
+    logger.log(INFO, "Subscribing to lookup table updates from " + endpoint);
+    webSocket.sendText(subscribeRequest, true);
+    webSocket.request(1);
+  }
+
+  @Override
+  public CompletionStage<?> onText(final WebSocket webSocket, final CharSequence data, final boolean last) {
+    message.append(data);
+    if (last) {
+      try {
+        JsonIterator.parse(message.toString()).testObject(messageParser);
+      } catch (final RuntimeException e) {
+        logger.log(WARNING, "Failed to parse lookup table update " + message, e);
+      }
+      message.setLength(0);
+    }
+    webSocket.request(1);
+    return null;
+  }
+
+  // {"method":"programNotification","params":{"result":{"context":{},"value":{"pubkey","account"}},"subscription"}}
+  private final FieldBufferPredicate messageParser = new FieldBufferPredicate() {
+
+    private final FieldBufferPredicate valueParser = (buf, offset, len, ji) -> {
+      if (fieldEquals("value", buf, offset, len)) {
+        accountParser.parse(ji);
+      } else {
+        ji.skip();
+      }
+      return true;
+    };
+
+    private final FieldBufferPredicate resultParser = (buf, offset, len, ji) -> {
+      if (fieldEquals("result", buf, offset, len)) {
+        ji.testObject(valueParser);
+      } else {
+        ji.skip();
+      }
+      return true;
+    };
+
+    @Override
+    public boolean test(final char[] buf, final int offset, final int len, final JsonIterator ji) {
+      if (fieldEquals("params", buf, offset, len)) {
+        ji.testObject(resultParser);
+      } else if (fieldEquals("error", buf, offset, len)) {
+        throw new IllegalStateException("Lookup table subscription failed.");
+      } else {
+        ji.skip();
+      }
+      return true;
+    }
+  };
+
+  @Override
+  public CompletionStage<?> onBinary(final WebSocket webSocket, final ByteBuffer data, final boolean last) {
+    webSocket.request(1);
+    return null;
+  }
+
+  @Override
+  public CompletionStage<?> onClose(final WebSocket webSocket, final int statusCode, final String reason) {
+    logger.log(WARNING, String.format(
+        "Lookup table update stream closed [statusCode=%d] [reason=%s]", statusCode, reason
+    ));
+    message.setLength(0);
+    reconnect();
+    return null;
+  }
+
+  @Override
+  public void onError(final WebSocket webSocket, final Throwable error) {
+    logger.log(WARNING, "Lookup table update stream failed.", error);
+    message.setLength(0);
+    reconnect();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    final var webSocket = this.webSocket;
+    if (webSocket != null) {
+      webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "");
+    }
+  }
+}
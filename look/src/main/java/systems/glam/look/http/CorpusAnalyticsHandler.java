@@ -0,0 +1,63 @@
+package systems.glam.look.http;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import software.sava.services.solana.alt.LookupTableCache;
+import software.sava.services.solana.remote.call.RpcCaller;
+import systems.glam.look.LookupTableDiscoveryService;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+final class CorpusAnalyticsHandler extends LookupTableDiscoveryServiceHandler {
+
+  private static final int DEFAULT_LIMIT = 100;
+
+  private final AtomicBoolean running;
+
+  CorpusAnalyticsHandler(final LookupTableDiscoveryService tableService,
+                         final LookupTableCache tableCache,
+                         final RpcCaller rpcCaller) {
+    super(InvocationType.BLOCKING, tableService, tableCache, rpcCaller);
+    this.running = new AtomicBoolean();
+  }
+
+  @Override
+  public boolean handle(final Request request, final Response response, final Callback callback) {
+    super.setResponseHeaders(response);
+    var report = queryParam(request, "report");
+    if (report == null) {
+      report = "summary";
+    }
+    if (!report.equals("summary") && !report.equals("accounts") && !report.equals("partitions")) {
+      response.setStatus(400);
+      Content.Sink.write(response, true, "Unknown report " + report, callback);
+      return true;
+    }
+    if (!running.compareAndSet(false, true)) {
+      response.setStatus(429);
+      Content.Sink.write(response, true, "Corpus analytics are already running.", callback);
+      return true;
+    }
+    try {
+      final var analytics = tableService.analyzeCorpus(report.equals("accounts") ? intQueryParam(request, "limit", DEFAULT_LIMIT) : 0);
+      final var csv = new StringBuilder(4_096);
+      switch (report) {
+        case "accounts" -> analytics.writeTopAccountsCSV(csv);
+        case "partitions" -> analytics.writePartitionLengthsCSV(csv, false);
+        default -> analytics.writeSummaryCSV(csv);
+      }
+      response.getHeaders().put(HttpHeader.CONTENT_TYPE, "text/csv");
+      Content.Sink.write(response, true, csv.toString(), callback);
+    } catch (final IOException e) {
+      response.setStatus(500);
+      Content.Sink.write(response, true, e.getMessage(), callback);
+    } finally {
+      running.set(false);
+    }
+    return true;
+  }
+}
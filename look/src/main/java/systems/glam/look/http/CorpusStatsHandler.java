@@ -0,0 +1,42 @@
+package systems.glam.look.http;
+
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import software.sava.services.solana.alt.LookupTableCache;
+import software.sava.services.solana.remote.call.RpcCaller;
+import systems.glam.look.LookupTableDiscoveryService;
+
+import static software.sava.services.jetty.handlers.HandlerUtil.JSON_CONTENT;
+
+final class CorpusStatsHandler extends LookupTableDiscoveryServiceHandler {
+
+  CorpusStatsHandler(final LookupTableDiscoveryService tableService,
+                     final LookupTableCache tableCache,
+                     final RpcCaller rpcCaller) {
+    super(InvocationType.NON_BLOCKING, tableService, tableCache, rpcCaller);
+  }
+
+  @Override
+  public boolean handle(final Request request, final Response response, final Callback callback) {
+    super.setResponseHeaders(response);
+    response.getHeaders().put(JSON_CONTENT);
+    final var corpusBudget = tableService.corpusBudget();
+    Content.Sink.write(response, true, String.format("""
+            {
+              "maxBytes": %d,
+              "retainedTables": %d,
+              "retainedBytes": %d,
+              "evictedTables": %d,
+              "evictedBytes": %d
+            }""",
+        corpusBudget.maxBytes(),
+        corpusBudget.retainedTables(),
+        corpusBudget.retainedBytes(),
+        corpusBudget.evictedTables(),
+        corpusBudget.evictedBytes()
+    ), callback);
+    return true;
+  }
+}
@@ -8,6 +8,9 @@ import software.sava.core.accounts.lookup.AddressLookupTable;
 import software.sava.services.solana.alt.LookupTableCache;
 import software.sava.services.solana.remote.call.RpcCaller;
 import systems.glam.look.LookupTableDiscoveryService;
+import systems.glam.look.QueryBudget;
+
+import java.util.Arrays;
 
 import static java.lang.System.Logger.Level.INFO;
 
@@ -22,18 +25,39 @@ abstract class DiscoverTablesHandler extends LookupTableDiscoveryServiceHandler
     super(invocationType, tableService, tableCache, rpcCaller);
   }
 
-  record QueryParams(boolean accountsOnly, boolean stats, boolean reRank, boolean includeProvidedTables) {
+  record QueryParams(boolean accountsOnly,
+                     boolean stats,
+                     boolean reRank,
+                     boolean includeProvidedTables,
+                     long maxLatencyMicros) {
+
+    static final QueryParams DEFAULT = new QueryParams(false, false, false, false, 0);
 
-    static final QueryParams DEFAULT = new QueryParams(false, false, false, false);
+    QueryBudget budget(final long startNanos) {
+      return maxLatencyMicros > 0 ? QueryBudget.createBudget(startNanos, maxLatencyMicros) : null;
+    }
+  }
+
+  private static long parseMaxLatencyMicros(final String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (final NumberFormatException e) {
+      return 0;
+    }
   }
 
   protected final QueryParams queryParams(final Request request) {
+    final var maxLatencyHeader = request.getHeaders().get("X-MAX-LATENCY-MICROS");
+    final long headerMaxLatencyMicros = maxLatencyHeader == null || maxLatencyHeader.isBlank()
+        ? 0
+        : parseMaxLatencyMicros(maxLatencyHeader);
     final var query = request.getHttpURI().getQuery();
     if (query != null && !query.isBlank()) {
       boolean accountsOnly = false;
       boolean stats = false;
       boolean reRank = false;
       boolean includeProvidedTables = false;
+      long maxLatencyMicros = headerMaxLatencyMicros;
       for (int from = 0, equals, and, keyLen; ; from = and + 1) {
         equals = query.indexOf('=', from);
         if (equals < 0) {
@@ -52,17 +76,54 @@ abstract class DiscoverTablesHandler extends LookupTableDiscoveryServiceHandler
           reRank = Boolean.parseBoolean(value);
         } else if (query.regionMatches(true, from, "includeProvidedTables", 0, keyLen)) {
           includeProvidedTables = Boolean.parseBoolean(value);
+        } else if (query.regionMatches(true, from, "maxLatencyMicros", 0, keyLen)) {
+          maxLatencyMicros = parseMaxLatencyMicros(value);
         }
         if (and < 1) {
           break;
         }
       }
-      return new QueryParams(accountsOnly, stats, reRank, includeProvidedTables);
+      return new QueryParams(accountsOnly, stats, reRank, includeProvidedTables, maxLatencyMicros);
+    } else if (headerMaxLatencyMicros > 0) {
+      return new QueryParams(false, false, false, false, headerMaxLatencyMicros);
     } else {
       return QueryParams.DEFAULT;
     }
   }
 
+  static String tenantId(final Request request) {
+    return request.getHeaders().get("X-TENANT-ID");
+  }
+
+  // Tenant tables are scored first, and therefore win ties, followed by any provided tables not already in the overlay.
+  protected final AddressLookupTable[] withTenantTables(final String tenantId, final AddressLookupTable[] include) {
+    final var tenantTables = tableService.tenantOverlays().tables(tenantId);
+    if (tenantTables == null || tenantTables.length == 0) {
+      return include;
+    } else if (include == null || include.length == 0) {
+      return tenantTables;
+    } else {
+      final var joined = Arrays.copyOf(tenantTables, tenantTables.length + include.length);
+      int i = tenantTables.length;
+      INCLUDE:
+      for (final var table : include) {
+        for (final var tenantTable : tenantTables) {
+          if (tenantTable.address().equals(table.address())) {
+            continue INCLUDE;
+          }
+        }
+        joined[i++] = table;
+      }
+      return i == joined.length ? joined : Arrays.copyOfRange(joined, 0, i);
+    }
+  }
+
+  protected static void setCoverageHeader(final Response response, final QueryBudget budget) {
+    if (budget != null) {
+      response.getHeaders().put("X-CORPUS-COVERAGE", String.format("%.4f", budget.corpusCoverage()));
+    }
+  }
+
   protected final void writeResponse(final Response response,
                                      final Callback callback,
                                      final QueryParams queryParams,
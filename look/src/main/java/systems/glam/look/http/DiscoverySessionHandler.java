@@ -0,0 +1,130 @@
+package systems.glam.look.http;
+
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import software.sava.core.accounts.PublicKey;
+import software.sava.core.accounts.lookup.AddressLookupTable;
+import software.sava.rpc.json.PublicKeyEncoding;
+import software.sava.services.solana.alt.LookupTableCache;
+import software.sava.services.solana.remote.call.RpcCaller;
+import systems.comodal.jsoniter.FieldBufferPredicate;
+import systems.comodal.jsoniter.JsonIterator;
+import systems.glam.look.DiscoverySessions;
+import systems.glam.look.LookupTableDiscoveryService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static software.sava.services.jetty.handlers.HandlerUtil.JSON_CONTENT;
+import static systems.comodal.jsoniter.JsonIterator.fieldEquals;
+
+final class DiscoverySessionHandler extends DiscoverTablesHandler {
+
+  private static final String SESSION_ID_HEADER = "X-SESSION-ID";
+
+  DiscoverySessionHandler(final LookupTableDiscoveryService tableService,
+                          final LookupTableCache tableCache,
+                          final RpcCaller rpcCaller) {
+    super(InvocationType.NON_BLOCKING, tableService, tableCache, rpcCaller);
+  }
+
+  private static final class Parser implements FieldBufferPredicate {
+
+    private final List<PublicKey> added = new ArrayList<>();
+    private final List<PublicKey> removed = new ArrayList<>();
+
+    private static void parseAccounts(final JsonIterator ji, final List<PublicKey> accounts) {
+      while (ji.readArray()) {
+        accounts.add(PublicKeyEncoding.parseBase58Encoded(ji));
+      }
+    }
+
+    @Override
+    public boolean test(final char[] buf, final int offset, final int len, final JsonIterator ji) {
+      if (fieldEquals("add", buf, offset, len)) {
+        parseAccounts(ji, added);
+      } else if (fieldEquals("remove", buf, offset, len)) {
+        parseAccounts(ji, removed);
+      } else {
+        ji.skip();
+      }
+      return true;
+    }
+  }
+
+  private static void writeError(final Response response, final Callback callback, final int status, final String msg) {
+    response.setStatus(status);
+    response.getHeaders().put(JSON_CONTENT);
+    Content.Sink.write(response, true, String.format("""
+        {"msg": "%s"}""", escapeJson(msg)), callback
+    );
+  }
+
+  @Override
+  public boolean handle(final Request request, final Response response, final Callback callback) {
+    final long startExchange = System.currentTimeMillis();
+    super.setResponseHeaders(response);
+    final var queryParams = queryParams(request);
+
+    var sessionId = request.getHeaders().get(SESSION_ID_HEADER);
+    if ("DELETE".equals(request.getMethod())) {
+      if (DiscoverySessions.isValidSessionId(sessionId) && tableService.discoverySessions().closeSession(sessionId)) {
+        response.setStatus(204);
+        callback.succeeded();
+      } else {
+        writeError(response, callback, 404, "Unknown session.");
+      }
+      return true;
+    }
+
+    final boolean newSession = sessionId == null || sessionId.isBlank();
+    if (!newSession && !DiscoverySessions.isValidSessionId(sessionId)) {
+      writeError(response, callback, 400, "Invalid X-SESSION-ID header.");
+      return true;
+    }
+
+    try (final var is = Content.Source.asInputStream(request)) {
+      final var body = is.readAllBytes();
+      final var parser = new Parser();
+      if (body.length > 0) {
+        JsonIterator.parse(body).testObject(parser);
+      }
+
+      // Validated before a session is created, so that rejected requests do not hold one until it expires.
+      final long start = System.currentTimeMillis();
+      final AddressLookupTable[] lookupTables;
+      if (newSession) {
+        DiscoverySessions.checkNumAccounts(new HashSet<>(parser.added).size());
+        sessionId = tableService.createSession();
+        try {
+          lookupTables = tableService.updateSession(sessionId, parser.added, parser.removed);
+        } catch (final RuntimeException ex) {
+          tableService.discoverySessions().closeSession(sessionId);
+          throw ex;
+        }
+      } else {
+        lookupTables = tableService.updateSession(sessionId, parser.added, parser.removed);
+      }
+      if (lookupTables == null) {
+        writeError(response, callback, 404, "Unknown or expired session.");
+        return true;
+      }
+      response.getHeaders().put(SESSION_ID_HEADER, sessionId);
+      writeResponse(response, callback, startExchange, queryParams, start, lookupTables);
+      return true;
+    } catch (final IllegalArgumentException ex) {
+      writeError(response, callback, 400, ex.getMessage());
+      return true;
+    } catch (final IllegalStateException ex) {
+      writeError(response, callback, 503, ex.getMessage());
+      return true;
+    } catch (final IOException ex) {
+      writeError(response, callback, 400, "Failed to read request body.");
+      return true;
+    }
+  }
+}
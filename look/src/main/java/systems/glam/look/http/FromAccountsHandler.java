@@ -30,6 +30,7 @@ final class FromAccountsHandler extends DiscoverTablesHandler {
   @Override
   public boolean handle(final Request request, final Response response, final Callback callback) {
     final long startExchange = System.currentTimeMillis();
+    final long startNanos = System.nanoTime();
     super.setResponseHeaders(response);
     final var queryParams = queryParams(request);
 
@@ -42,9 +43,12 @@ final class FromAccountsHandler extends DiscoverTablesHandler {
       }
 
       final long start = System.currentTimeMillis();
+      final var budget = queryParams.budget(startNanos);
+      final var include = withTenantTables(tenantId(request), null);
       final var lookupTables = queryParams.reRank()
-          ? tableService.discoverTablesWithReRank(distinctAccounts)
-          : tableService.discoverTables(distinctAccounts);
+          ? tableService.discoverTablesWithReRank(distinctAccounts, include, budget)
+          : tableService.discoverTables(distinctAccounts, include, budget);
+      setCoverageHeader(response, budget);
       writeResponse(response, callback, startExchange, queryParams, start, lookupTables);
       return true;
     } catch (final IOException ex) {
@@ -220,15 +220,20 @@ class FromRawTxHandler extends DiscoverTablesHandler {
                         final Tx tx,
                         final byte[] txBytes) {
     final var queryParams = queryParams(request);
+    final var budget = queryParams.budget(System.nanoTime());
+    final var tenantId = tenantId(request);
 
     final var skeleton = TransactionSkeleton.deserializeSkeleton(txBytes);
     if (skeleton.isLegacy()) {
       final var accounts = skeleton.parseNonSignerPublicKeys();
       final var programs = skeleton.parseProgramAccounts();
       final long start = System.currentTimeMillis();
+      final var distinctAccounts = LookupTableDiscoveryService.distinctAccounts(accounts, programs);
+      final var include = withTenantTables(tenantId, null);
       final var discoveredTables = queryParams.reRank()
-          ? tableService.discoverTablesWithReRank(accounts, programs)
-          : tableService.discoverTables(accounts, programs);
+          ? tableService.discoverTablesWithReRank(distinctAccounts, programs, include, budget)
+          : tableService.discoverTables(distinctAccounts, programs, include, budget);
+      setCoverageHeader(response, budget);
 
       if (queryParams.stats()) {
         final var txStats = produceStats(
@@ -257,6 +262,11 @@ class FromRawTxHandler extends DiscoverTablesHandler {
           final boolean includeTables = queryParams.includeProvidedTables();
           if (includeTables) {
             for (final var key : lookupTableAccounts) {
+              final var tenantTable = tableService.tenantOverlays().table(tenantId, key);
+              if (tenantTable != null) {
+                lookupTables.put(key, tenantTable);
+                continue;
+              }
               var lookupTable = tableService.scanForTable(key);
               if (lookupTable == null) {
                 if (notCached == null) {
@@ -276,7 +286,12 @@ class FromRawTxHandler extends DiscoverTablesHandler {
             }
           } else {
             for (final var key : lookupTableAccounts) {
-              var lookupTable = tableCache.getTable(key);
+              var lookupTable = tableService.tenantOverlays().table(tenantId, key);
+              if (lookupTable != null) {
+                lookupTables.put(key, lookupTable);
+                continue;
+              }
+              lookupTable = tableCache.getTable(key);
               if (lookupTable == null) {
                 lookupTable = tableService.scanForTable(key);
                 if (lookupTable == null) {
@@ -344,9 +359,11 @@ class FromRawTxHandler extends DiscoverTablesHandler {
 
         final var instructions = skeleton.parseInstructions(accounts);
         final long start = System.currentTimeMillis();
+        final var include = withTenantTables(tenantId, includeInDiscovery);
         final var discoveredTables = queryParams.reRank()
-            ? tableService.discoverTablesWithReRank(instructions, includeInDiscovery)
-            : tableService.discoverTables(instructions, includeInDiscovery);
+            ? tableService.discoverTablesWithReRank(instructions, include, budget)
+            : tableService.discoverTables(instructions, include, budget);
+        setCoverageHeader(response, budget);
 
         if (queryParams.stats()) {
           final var nonSignerAccounts = Arrays.stream(accounts, skeleton.numSignatures(), accounts.length)
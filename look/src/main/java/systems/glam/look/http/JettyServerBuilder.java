@@ -135,7 +135,13 @@ public final class JettyServerBuilder {
     addHandler(handlers, "/v0/alt/discover/tx/sig", new FromTxSigHandler(tableService, tableCache, rpcCaller));
     addHandler(handlers, "/v0/alt/discover/tx/raw", new FromRawTxHandler(tableService, tableCache, rpcCaller));
     addHandler(handlers, "/v0/alt/discover/nonSignerAccounts", new FromAccountsHandler(tableService, tableCache, rpcCaller));
+    addHandler(handlers, "/v0/alt/discover/session", new DiscoverySessionHandler(tableService, tableCache, rpcCaller));
     addHandler(handlers, "/v0/alt/recommend/accounts", new TableRecommendationHandler(tableService, tableCache, rpcCaller));
+    addHandler(handlers, "/v0/alt/propose/tables", new TableProposalHandler(tableService, tableCache, rpcCaller));
+    addHandler(handlers, "/v0/alt/overlay/tables", new TenantOverlayHandler(tableService, tableCache, rpcCaller));
+    addHandler(handlers, "/v0/alt/stats/corpus", new CorpusStatsHandler(tableService, tableCache, rpcCaller));
+    addHandler(handlers, "/v0/alt/stats/load", new LoadStatsHandler(tableService, tableCache, rpcCaller));
+    addHandler(handlers, "/v0/alt/stats/analytics", new CorpusAnalyticsHandler(tableService, tableCache, rpcCaller));
 
     final var rootHandler = new RootJettyHandler(
         Map.copyOf(handlers),
@@ -0,0 +1,56 @@
+package systems.glam.look.http;
+
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import software.sava.services.solana.alt.LookupTableCache;
+import software.sava.services.solana.remote.call.RpcCaller;
+import systems.glam.look.LookupTableDiscoveryService;
+
+import static software.sava.services.jetty.handlers.HandlerUtil.JSON_CONTENT;
+
+final class LoadStatsHandler extends LookupTableDiscoveryServiceHandler {
+
+  LoadStatsHandler(final LookupTableDiscoveryService tableService,
+                     final LookupTableCache tableCache,
+                     final RpcCaller rpcCaller) {
+    super(InvocationType.NON_BLOCKING, tableService, tableCache, rpcCaller);
+  }
+
+  @Override
+  public boolean handle(final Request request, final Response response, final Callback callback) {
+    super.setResponseHeaders(response);
+    response.getHeaders().put(JSON_CONTENT);
+    final var loadMetrics = tableService.remoteLoadMetrics();
+    Content.Sink.write(response, true, String.format("""
+            {
+              "corpusCompleteness": %.4f,
+              "completedLoads": %d,
+              "lastLoadTimestamp": %d,
+              "lastLoadDurationMillis": %d,
+              "lastLoadFailedPartitions": %d,
+              "lastLoadResumedPartitions": %d,
+              "calls": %d,
+              "failedCalls": %d,
+              "timeouts": %d,
+              "retries": %d,
+              "failedPartitions": %d,
+              "fallbackPartitions": %d
+            }""",
+        tableService.corpusCompleteness(),
+        loadMetrics.completedLoads(),
+        loadMetrics.lastLoadTimestamp(),
+        loadMetrics.lastLoadDurationMillis(),
+        loadMetrics.lastLoadFailedPartitions(),
+        loadMetrics.lastLoadResumedPartitions(),
+        loadMetrics.calls(),
+        loadMetrics.failedCalls(),
+        loadMetrics.timeouts(),
+        loadMetrics.retries(),
+        loadMetrics.failedPartitions(),
+        loadMetrics.fallbackPartitions()
+    ), callback);
+    return true;
+  }
+}
@@ -33,6 +33,65 @@ abstract class LookupTableDiscoveryServiceHandler extends BaseJettyHandler {
     this.rpcCaller = rpcCaller;
   }
 
+  // Lets clients tell answers from a partially loaded corpus apart while a cold server is still loading.
+  @Override
+  protected void setResponseHeaders(final Response response) {
+    super.setResponseHeaders(response);
+    response.getHeaders().put("X-CORPUS-COMPLETENESS", String.format("%.4f", tableService.corpusCompleteness()));
+  }
+
+  protected static String queryParam(final Request request, final String name) {
+    final var query = request.getHttpURI().getQuery();
+    if (query != null && !query.isBlank()) {
+      for (final var param : query.split("&")) {
+        final int equals = param.indexOf('=');
+        if (equals == name.length() && param.regionMatches(true, 0, name, 0, equals)) {
+          return param.substring(equals + 1);
+        }
+      }
+    }
+    return null;
+  }
+
+  // Missing or malformed values fall back to the default, and negative values are clamped to zero.
+  protected static int intQueryParam(final Request request, final String name, final int defaultValue) {
+    final var value = queryParam(request, name);
+    if (value != null) {
+      try {
+        return Math.max(0, Integer.parseInt(value));
+      } catch (final NumberFormatException e) {
+        return defaultValue;
+      }
+    }
+    return defaultValue;
+  }
+
+  // Escapes a message, such as that of an exception, for use within a JSON string.
+  protected static String escapeJson(final String msg) {
+    if (msg == null) {
+      return "";
+    }
+    final var escaped = new StringBuilder(msg.length() + 8);
+    for (int i = 0; i < msg.length(); ++i) {
+      final char c = msg.charAt(i);
+      switch (c) {
+        case '"' -> escaped.append("\\\"");
+        case '\\' -> escaped.append("\\\\");
+        case '\n' -> escaped.append("\\n");
+        case '\r' -> escaped.append("\\r");
+        case '\t' -> escaped.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            escaped.append(String.format("\\u%04x", (int) c));
+          } else {
+            escaped.append(c);
+          }
+        }
+      }
+    }
+    return escaped.toString();
+  }
+
   protected final ByteEncoding getEncoding(final Request request,
                                            final Response response,
                                            final Callback callback) {
@@ -69,6 +69,12 @@ public final class LookupTableWebService {
           nativeProgramClient
       );
       executor.execute(tableService);
+      executor.execute(tableService.coOccurrenceSketch());
+      executor.execute(tableService.tenantOverlays());
+      executor.execute(tableService.smallQueryIndex());
+      executor.execute(tableService.discoverySessions());
+      executor.execute(tableService.tableUpdates());
+      executor.execute(tableService.hotTables());
 
       final var tableCacheConfig = serviceConfig.tableCacheConfig();
       final var tableCache = LookupTableCache.createCache(
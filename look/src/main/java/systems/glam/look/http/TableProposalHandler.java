@@ -0,0 +1,37 @@
+package systems.glam.look.http;
+
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import software.sava.services.solana.alt.LookupTableCache;
+import software.sava.services.solana.remote.call.RpcCaller;
+import systems.glam.look.LookupTableDiscoveryService;
+import systems.glam.look.ProposedTable;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static software.sava.services.jetty.handlers.HandlerUtil.JSON_CONTENT;
+
+final class TableProposalHandler extends LookupTableDiscoveryServiceHandler {
+
+  TableProposalHandler(final LookupTableDiscoveryService tableService,
+                       final LookupTableCache tableCache,
+                       final RpcCaller rpcCaller) {
+    super(InvocationType.NON_BLOCKING, tableService, tableCache, rpcCaller);
+  }
+
+  @Override
+  public boolean handle(final Request request, final Response response, final Callback callback) {
+    super.setResponseHeaders(response);
+    response.getHeaders().put(JSON_CONTENT);
+    final var proposals = tableService.coOccurrenceSketch().proposals();
+    final var json = Arrays.stream(proposals)
+        .limit(intQueryParam(request, "limit", Integer.MAX_VALUE))
+        .map(ProposedTable::toJson)
+        .collect(Collectors.joining(",\n", "[\n", "\n]"));
+    Content.Sink.write(response, true, json, callback);
+    return true;
+  }
+}
@@ -0,0 +1,72 @@
+package systems.glam.look.http;
+
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import software.sava.core.accounts.PublicKey;
+import software.sava.rpc.json.PublicKeyEncoding;
+import software.sava.services.solana.alt.LookupTableCache;
+import software.sava.services.solana.remote.call.RpcCaller;
+import systems.comodal.jsoniter.JsonIterator;
+import systems.glam.look.LookupTableDiscoveryService;
+import systems.glam.look.TenantTableOverlays;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static software.sava.services.jetty.handlers.HandlerUtil.JSON_CONTENT;
+
+final class TenantOverlayHandler extends LookupTableDiscoveryServiceHandler {
+
+  TenantOverlayHandler(final LookupTableDiscoveryService tableService,
+                       final LookupTableCache tableCache,
+                       final RpcCaller rpcCaller) {
+    super(InvocationType.BLOCKING, tableService, tableCache, rpcCaller);
+  }
+
+  @Override
+  public boolean handle(final Request request, final Response response, final Callback callback) {
+    super.setResponseHeaders(response);
+    response.getHeaders().put(JSON_CONTENT);
+
+    final var tenantId = DiscoverTablesHandler.tenantId(request);
+    if (!TenantTableOverlays.isValidTenantId(tenantId)) {
+      response.setStatus(400);
+      Content.Sink.write(response, true, """
+          {"msg": "Must provide a valid X-TENANT-ID header."}""", callback
+      );
+      return true;
+    }
+
+    try (final var is = Content.Source.asInputStream(request)) {
+      final var body = is.readAllBytes();
+      final var ji = JsonIterator.parse(body);
+      final var addresses = new ArrayList<PublicKey>();
+      while (ji.readArray()) {
+        addresses.add(PublicKeyEncoding.parseBase58Encoded(ji));
+      }
+
+      final var tables = tableService.tenantOverlays().register(tenantId, addresses);
+      final var json = Arrays.stream(tables)
+          .map(table -> table.address().toBase58())
+          .collect(Collectors.joining("\",\"", "[\"", "\"]"));
+      Content.Sink.write(response, true, tables.length == 0 ? "[]" : json, callback);
+      return true;
+    } catch (final IllegalArgumentException | IllegalStateException ex) {
+      response.setStatus(400);
+      Content.Sink.write(response, true, String.format("""
+          {"msg": "%s"}""", escapeJson(ex.getMessage())), callback
+      );
+      return true;
+    } catch (final IOException ex) {
+      response.setStatus(400);
+      Content.Sink.write(response, true, """
+          {"msg": "Failed to read request body."}""", callback
+      );
+      return true;
+    }
+  }
+}